@@ -16,12 +16,16 @@ import com.facebook.react.defaults.DefaultReactNativeHost
 import expo.modules.ApplicationLifecycleDispatcher
 import expo.modules.ReactNativeHostWrapper
 
+import com.anonymous.echoalarm.modules.AlarmProcess
 import com.anonymous.echoalarm.modules.AlarmSchedulerPackage
+import com.anonymous.echoalarm.modules.AlarmStartupTrace
 import com.anonymous.echoalarm.modules.OverlayPermissionPackage
+import com.anonymous.echoalarm.modules.ToneLibraryPackage
 
 class MainApplication : Application(), ReactApplication {
 
-  override val reactNativeHost: ReactNativeHost = ReactNativeHostWrapper(
+  // Lazy: the :alarm process never builds a React Native host
+  override val reactNativeHost: ReactNativeHost by lazy { ReactNativeHostWrapper(
       this,
       object : DefaultReactNativeHost(this) {
         override fun getPackages(): List<ReactPackage> =
@@ -30,6 +34,7 @@ class MainApplication : Application(), ReactApplication {
               // add(MyReactNativePackage())
                 add(AlarmSchedulerPackage())
                 add(OverlayPermissionPackage())
+                add(ToneLibraryPackage())
             }
 
           override fun getJSMainModuleName(): String = ".expo/.virtual-metro-entry"
@@ -38,13 +43,18 @@ class MainApplication : Application(), ReactApplication {
 
           override val isNewArchEnabled: Boolean = BuildConfig.IS_NEW_ARCHITECTURE_ENABLED
       }
-  )
+  ) }
 
   override val reactHost: ReactHost
     get() = ReactNativeHostWrapper.createReactHost(applicationContext, reactNativeHost)
 
   override fun onCreate() {
     super.onCreate()
+    if (AlarmProcess.isAlarmProcess(this)) {
+      // Fire path only (receivers, sound service, alarm screen): no React Native, no Expo modules
+      AlarmStartupTrace.applicationCreated()
+      return
+    }
     DefaultNewArchitectureEntryPoint.releaseLevel = try {
       ReleaseLevel.valueOf(BuildConfig.REACT_NATIVE_RELEASE_LEVEL.uppercase())
     } catch (e: IllegalArgumentException) {
@@ -52,10 +62,14 @@ class MainApplication : Application(), ReactApplication {
     }
     loadReactNative(this)
     ApplicationLifecycleDispatcher.onApplicationCreate(this)
+    AlarmStartupTrace.applicationCreated()
   }
 
   override fun onConfigurationChanged(newConfig: Configuration) {
     super.onConfigurationChanged(newConfig)
+    if (AlarmProcess.isAlarmProcess(this)) {
+      return
+    }
     ApplicationLifecycleDispatcher.onConfigurationChanged(this, newConfig)
   }
 }
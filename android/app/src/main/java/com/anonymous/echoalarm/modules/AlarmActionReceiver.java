@@ -0,0 +1,105 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.TimeZone;
+
+/**
+ * Snooze and "stop the rest of the cluster", from the alarm notification and the alarm screen.
+ *
+ * Handled entirely in native code on the persisted plan: the sound is stopped right away in
+ * onReceive, and the bookkeeping (snooze alarm, cursor, re-arm, history) runs on the shared
+ * pool under goAsync. Nothing here touches the React host, so a tap costs a journal read and a
+ * few AlarmManager calls, never a JS start.
+ */
+public class AlarmActionReceiver extends BroadcastReceiver {
+
+    static final String ACTION_SNOOZE = "com.anonymous.echoalarm.ACTION_SNOOZE";
+    static final String ACTION_STOP_CLUSTER = "com.anonymous.echoalarm.ACTION_STOP_CLUSTER";
+
+    // Where the action came from (AlarmHistory DISMISS_* source)
+    static final String EXTRA_SOURCE = "SOURCE";
+
+    private static final long ACTION_DEADLINE_MS = 5000;
+
+    /** Explicit intent for one of the actions on the member that is ringing. */
+    static Intent intent(Context context, String action, String clusterId, int alarmIndex, String toneUri, int source) {
+        Intent intent = new Intent(context, AlarmActionReceiver.class);
+        intent.setAction(action);
+        intent.putExtra(AlarmArmer.EXTRA_CLUSTER_ID, clusterId);
+        intent.putExtra(AlarmArmer.EXTRA_ALARM_INDEX, alarmIndex);
+        intent.putExtra(AlarmArmer.EXTRA_TONE_URI, toneUri);
+        intent.putExtra(EXTRA_SOURCE, source);
+        return intent;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        String clusterId = intent.getStringExtra(AlarmArmer.EXTRA_CLUSTER_ID);
+        if (clusterId == null || (!ACTION_SNOOZE.equals(action) && !ACTION_STOP_CLUSTER.equals(action))) {
+            return;
+        }
+        int alarmIndex = intent.getIntExtra(AlarmArmer.EXTRA_ALARM_INDEX, -1);
+        String toneUri = intent.getStringExtra(AlarmArmer.EXTRA_TONE_URI);
+        int source = intent.getIntExtra(EXTRA_SOURCE, AlarmHistory.DISMISS_NOTIFICATION);
+
+        // Silence first, bookkeeping after
+        if (ACTION_SNOOZE.equals(action)) {
+            AlarmSoundService.dismiss(context); // A cluster session keeps waiting for the next member
+        } else {
+            context.stopService(new Intent(context, AlarmSoundService.class));
+        }
+
+        final PendingResult pendingResult = goAsync();
+        AlarmExecutors.runAsync(pendingResult, ACTION_DEADLINE_MS, "AlarmActionReceiver", () -> {
+            if (ACTION_SNOOZE.equals(action)) {
+                snooze(context, clusterId, alarmIndex, toneUri);
+            } else {
+                stopCluster(context, clusterId, source);
+            }
+        });
+    }
+
+    /** Arms the ringing member again {@link AlarmSettings#snoozeMinutes} from now. */
+    static void snooze(Context context, String clusterId, int alarmIndex, String toneUri) {
+        AlarmState cluster = AlarmProfileStore.loadAll(context).get(clusterId);
+        if (cluster == null) {
+            Log.w("AlarmActionReceiver", "Snooze de un clúster que ya no existe: " + clusterId);
+            return;
+        }
+        int minutes = AlarmSettings.snoozeMinutes(context);
+        long atMs = System.currentTimeMillis() + minutes * 60000L;
+        if (AlarmSnoozes.snooze(context, cluster, alarmIndex, toneUri != null ? toneUri : "", atMs)) {
+            AlarmHistory.snoozed(context, clusterId, alarmIndex, toneUri, atMs, minutes);
+            AlarmEvents.post(context, AlarmEvents.SNOOZED, clusterId);
+            Log.d("AlarmActionReceiver", "Miembro " + alarmIndex + " de '" + clusterId + "' pospuesto " + minutes + " min.");
+        }
+    }
+
+    /**
+     * Drops the members of the cluster still to come in this occurrence: a recurring cluster moves
+     * to its next occurrence, a one-off is left finished. Its snooze, if any, goes too.
+     */
+    static void stopCluster(Context context, String clusterId, int source) {
+        AlarmState cluster = AlarmProfileStore.loadAll(context).get(clusterId);
+        if (cluster == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (cluster.recurrence != null) {
+            AlarmProfileStore.save(context, ClusterScheduleEngine.rollForward(cluster, now, TimeZone.getDefault().getID()));
+        } else {
+            AlarmProfileStore.saveNextIndex(context, cluster, cluster.fireTimes.length);
+        }
+        AlarmSnoozes.cancel(context, cluster.slot);
+        AlarmHistory.dismissed(context, source);
+
+        int operations = AlarmCoordinator.rearm(context);
+        AlarmEvents.post(context, AlarmEvents.CLUSTER_STOPPED, clusterId);
+        Log.d("AlarmActionReceiver", "Clúster '" + clusterId + "' detenido (" + operations + " operaciones).");
+    }
+}
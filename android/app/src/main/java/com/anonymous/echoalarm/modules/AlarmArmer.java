@@ -0,0 +1,213 @@
+package com.anonymous.echoalarm.modules;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Builds the AlarmReceiver PendingIntents and registers them with AlarmManager, keeping
+ * {@link RequestCodeRegistry} in sync. Used through {@link AlarmCoordinator}.
+ */
+final class AlarmArmer {
+
+    static final String EXTRA_TONE_URI = "TONE_URI";
+    static final String EXTRA_CLUSTER_ID = "CLUSTER_ID";
+    static final String EXTRA_ALARM_INDEX = "ALARM_INDEX";
+    static final String EXTRA_REQUEST_CODE = "REQUEST_CODE";
+    static final String EXTRA_TRIGGER_AT = "TRIGGER_AT";
+    static final String EXTRA_SLOT = "SLOT";
+
+    /** AlarmReceiver action of the warm-up alarm armed a few seconds before a cluster head. */
+    static final String ACTION_WARM_UP = "com.anonymous.echoalarm.WARM_UP";
+
+    /** AlarmReceiver action of a snoozed member ringing again (see {@link AlarmSnoozes}). */
+    static final String ACTION_SNOOZE = "com.anonymous.echoalarm.SNOOZE";
+
+    private AlarmArmer() {
+    }
+
+    static boolean arm(Context context, AlarmManager alarmManager, int requestCode, long triggerAtMs,
+                       AlarmState cluster, int alarmIndex) {
+        if (alarmManager == null) {
+            return false;
+        }
+
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        String toneUri = cluster.toneUriAt(alarmIndex);
+        if (!toneUri.isEmpty()) {
+            intent.putExtra(EXTRA_TONE_URI, toneUri);
+        }
+        intent.putExtra(EXTRA_CLUSTER_ID, cluster.clusterId);
+        intent.putExtra(EXTRA_ALARM_INDEX, alarmIndex);
+        intent.putExtra(EXTRA_REQUEST_CODE, requestCode);
+        intent.putExtra(EXTRA_TRIGGER_AT, triggerAtMs);
+
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                requestCode,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        try {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMs, pendingIntent);
+            RequestCodeRegistry.record(context, requestCode, triggerAtMs,
+                    RequestCodeAllocator.memberKey(cluster.slot, alarmIndex), ArmedWindowPlanner.signatureOf(cluster, alarmIndex));
+            AlarmHistory.armed(context, cluster, alarmIndex, triggerAtMs);
+            return true;
+        } catch (SecurityException e) {
+            Log.e("AlarmArmer", "Sin permiso para alarma exacta (código " + requestCode + "): " + e.getMessage());
+            AlarmHistory.failed(context, AlarmHistory.FAILURE_ARM_DENIED, toneUri);
+            return false;
+        }
+    }
+
+    static void cancel(Context context, AlarmManager alarmManager, int requestCode) {
+        if (alarmManager == null) {
+            return;
+        }
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                requestCode,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        alarmManager.cancel(pendingIntent);
+        RequestCodeRegistry.remove(context, requestCode);
+    }
+
+    /**
+     * Arms the warm-up for a cluster's head. Uses plain setExact, not the allow-while-idle
+     * variant: in Doze the warm-up may be deferred (the fire then simply runs cold), but it never
+     * uses up the allow-while-idle quota the real fire depends on.
+     */
+    static boolean armWarmUp(Context context, AlarmManager alarmManager, long warmUpAtMs,
+                             AlarmState cluster, int alarmIndex) {
+        if (alarmManager == null) {
+            return false;
+        }
+        Intent intent = warmUpIntent(context, cluster.slot);
+        String toneUri = cluster.toneUriAt(alarmIndex);
+        if (!toneUri.isEmpty()) {
+            intent.putExtra(EXTRA_TONE_URI, toneUri);
+        }
+        intent.putExtra(EXTRA_CLUSTER_ID, cluster.clusterId);
+        intent.putExtra(EXTRA_ALARM_INDEX, alarmIndex);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                cluster.slot,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        try {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, warmUpAtMs, pendingIntent);
+            RequestCodeRegistry.recordWarmUp(context, cluster.slot, warmUpAtMs);
+            return true;
+        } catch (SecurityException e) {
+            Log.e("AlarmArmer", "Sin permiso para el warm-up del slot " + cluster.slot + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    static void cancelWarmUp(Context context, AlarmManager alarmManager, int slot) {
+        if (alarmManager == null) {
+            return;
+        }
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                slot,
+                warmUpIntent(context, slot),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        alarmManager.cancel(pendingIntent);
+        RequestCodeRegistry.removeWarmUp(context, slot);
+    }
+
+    /**
+     * Arms a snoozed member under its cluster slot. Allow-while-idle like a regular member: a
+     * snooze is a real fire.
+     */
+    static boolean armSnooze(Context context, AlarmManager alarmManager, int slot, String clusterId,
+                             int alarmIndex, String toneUri, long triggerAtMs) {
+        if (alarmManager == null) {
+            return false;
+        }
+        Intent intent = snoozeIntent(context, slot);
+        if (toneUri != null && !toneUri.isEmpty()) {
+            intent.putExtra(EXTRA_TONE_URI, toneUri);
+        }
+        intent.putExtra(EXTRA_CLUSTER_ID, clusterId);
+        intent.putExtra(EXTRA_ALARM_INDEX, alarmIndex);
+        intent.putExtra(EXTRA_TRIGGER_AT, triggerAtMs);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                slot,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        try {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAtMs, pendingIntent);
+            return true;
+        } catch (SecurityException e) {
+            Log.e("AlarmArmer", "Sin permiso para el snooze del slot " + slot + ": " + e.getMessage());
+            AlarmHistory.failed(context, AlarmHistory.FAILURE_ARM_DENIED, toneUri);
+            return false;
+        }
+    }
+
+    static void cancelSnooze(Context context, AlarmManager alarmManager, int slot) {
+        if (alarmManager == null) {
+            return;
+        }
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                slot,
+                snoozeIntent(context, slot),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        alarmManager.cancel(pendingIntent);
+    }
+
+    private static Intent snoozeIntent(Context context, int slot) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_SNOOZE);
+        intent.putExtra(EXTRA_SLOT, slot);
+        return intent;
+    }
+
+    private static Intent warmUpIntent(Context context, int slot) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_WARM_UP);
+        intent.putExtra(EXTRA_SLOT, slot);
+        return intent;
+    }
+
+    /**
+     * Cancels every armed alarm. Cost is proportional to the live entries in the registry;
+     * the fixed legacy sweep only runs once on installs that predate the registry.
+     *
+     * @return number of AlarmManager cancel calls issued
+     */
+    static int cancelAll(Context context, AlarmManager alarmManager) {
+        if (!RequestCodeRegistry.isInitialized(context)) {
+            for (int code = 0; code < RequestCodeRegistry.LEGACY_SWEEP_SIZE; code++) {
+                cancel(context, alarmManager, code);
+            }
+            RequestCodeRegistry.clear(context);
+            return RequestCodeRegistry.LEGACY_SWEEP_SIZE;
+        }
+
+        int[] codes = RequestCodeRegistry.liveCodes(context);
+        for (int code : codes) {
+            cancel(context, alarmManager, code);
+        }
+        int[] warmUpSlots = RequestCodeRegistry.warmUpSlots(context);
+        for (int slot : warmUpSlots) {
+            cancelWarmUp(context, alarmManager, slot);
+        }
+        return codes.length + warmUpSlots.length + AlarmSnoozes.cancelAll(context, alarmManager);
+    }
+}
@@ -0,0 +1,185 @@
+package com.anonymous.echoalarm.modules;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Keeps AlarmManager holding only the nearest alarms across every stored cluster.
+ *
+ * All clusters go into a {@link ClusterIndex}; the {@link #ARMED_WINDOW} nearest pending members
+ * are armed under stable codes from {@link RequestCodeAllocator}, and anything else still live in
+ * {@link RequestCodeRegistry} is cancelled. The pass is a diff against the registry: members that
+ * are already armed with the same trigger time and extras are left alone, so an edit only costs
+ * the AlarmManager calls it actually changes. AlarmReceiver calls {@link #rearm} after every
+ * fire, so the window slides forward as the night goes on.
+ *
+ * The main process (JS edits) and the alarm process (fires, boot, clock changes) both re-arm, so
+ * a pass holds a file lock shared by the two.
+ */
+final class AlarmCoordinator {
+
+    /** Alarms kept armed in AlarmManager at once, across all clusters. */
+    static final int ARMED_WINDOW = 8;
+
+    private static final String LOCK_FILE = "alarm_armed.lock";
+
+    private AlarmCoordinator() {
+    }
+
+    /**
+     * Re-arms the window for the current stored state. The decisions are made by
+     * {@link ArmedWindowPlanner}; this applies them to AlarmManager and the registry.
+     *
+     * @return number of AlarmManager set/cancel calls issued
+     */
+    static int rearm(Context context) {
+        return withArmedStateLock(context, () -> rearmLocked(context));
+    }
+
+    /**
+     * Deactivates every cluster: the journal is cleared, then {@link AlarmArmer#cancelAll} runs,
+     * both under the same lock as {@link #rearm}. A fire in the other process re-arms either
+     * before the pass (and is cancelled by it) or after it, from the empty journal.
+     */
+    static int cancelAll(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return withArmedStateLock(context, () -> {
+            AlarmProfileStore.clearAll(context);
+            return AlarmArmer.cancelAll(context, alarmManager);
+        });
+    }
+
+    private static int rearmLocked(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        int operations = 0;
+
+        if (!RequestCodeRegistry.isInitialized(context)) {
+            // Installs that predate the registry: their codes are unknown, sweep once
+            operations += AlarmArmer.cancelAll(context, alarmManager);
+        }
+
+        Map<String, AlarmState> clusters = AlarmProfileStore.loadAll(context);
+        ArmedWindowPlanner.Result window = ArmedWindowPlanner.plan(clusters, System.currentTimeMillis(),
+                ARMED_WINDOW, RequestCodeRegistry.loadAllocator(context), new ArmedWindowPlanner.Target() {
+                    @Override
+                    public int[] liveCodes() {
+                        return RequestCodeRegistry.liveCodes(context);
+                    }
+
+                    @Override
+                    public long memberKeyOf(int code) {
+                        return RequestCodeRegistry.memberKeyOf(context, code);
+                    }
+
+                    @Override
+                    public long triggerTimeOf(int code) {
+                        return RequestCodeRegistry.triggerTimeOf(context, code);
+                    }
+
+                    @Override
+                    public int signatureOf(int code) {
+                        return RequestCodeRegistry.signatureOf(context, code);
+                    }
+
+                    @Override
+                    public void cancel(int code) {
+                        AlarmArmer.cancel(context, alarmManager, code);
+                    }
+
+                    @Override
+                    public void arm(int code, long triggerAtMs, AlarmState cluster, int memberIndex) {
+                        AlarmArmer.arm(context, alarmManager, code, triggerAtMs, cluster, memberIndex);
+                    }
+                });
+        operations += window.cancelled + window.armed;
+
+        // Warm-up alarms ahead of each cluster head (its cursor member), also diffed
+        int warmUps = rearmWarmUps(context, alarmManager, window.bySlot, window.index, window.wanted,
+                window.times, window.slots, window.members);
+        operations += warmUps;
+
+        // Snoozes of clusters that were cancelled or replaced since
+        operations += AlarmSnoozes.dropOrphans(context, alarmManager, clusters);
+
+        Log.d("AlarmCoordinator", clusters.size() + " clústeres, " + window.wanted + " en ventana, "
+                + window.armed + " armadas, " + window.cancelled + " canceladas, " + warmUps + " ops de warm-up.");
+        return operations;
+    }
+
+    /**
+     * Runs {@code work} holding the armed-state lock of both processes. Registry and snoozes
+     * write through to their files as they change, so the other process reads them complete
+     * once it gets the lock. Without the lock file (I/O error) the pass still runs, guarded
+     * within this process only.
+     */
+    private static synchronized int withArmedStateLock(Context context, IntSupplier work) {
+        RandomAccessFile lockFile = null;
+        FileLock lock = null;
+        try {
+            lockFile = new RandomAccessFile(new File(context.getFilesDir(), LOCK_FILE), "rw");
+            lock = lockFile.getChannel().lock();
+        } catch (IOException e) {
+            Log.w("AlarmCoordinator", "Sin lock entre procesos: " + e.getMessage());
+        }
+        try {
+            return work.getAsInt();
+        } finally {
+            try {
+                if (lock != null) {
+                    lock.release();
+                }
+                if (lockFile != null) {
+                    lockFile.close();
+                }
+            } catch (IOException e) {
+                Log.w("AlarmCoordinator", "Error liberando el lock: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Keeps one warm-up alarm per cluster whose head is in the armed window, {@link
+     * AlarmSettings#warmUpSeconds} before it. Heads whose warm-up time already passed get none.
+     *
+     * @return number of AlarmManager set/cancel calls issued
+     */
+    private static int rearmWarmUps(Context context, AlarmManager alarmManager, AlarmState[] bySlot,
+                                    ClusterIndex index, int wanted, long[] times, int[] slots, int[] members) {
+        long leadMs = AlarmSettings.warmUpSeconds(context) * 1000L;
+        long now = System.currentTimeMillis();
+        long[] warmUpAt = new long[bySlot.length];
+        int[] headMember = new int[bySlot.length];
+        if (leadMs > 0) {
+            for (int i = 0; i < wanted; i++) {
+                if (members[i] == index.cursorOf(slots[i]) && times[i] - leadMs > now) {
+                    warmUpAt[slots[i]] = times[i] - leadMs;
+                    headMember[slots[i]] = members[i];
+                }
+            }
+        }
+
+        int operations = 0;
+        for (int slot : RequestCodeRegistry.warmUpSlots(context)) {
+            if (slot >= warmUpAt.length || warmUpAt[slot] == 0L) {
+                AlarmArmer.cancelWarmUp(context, alarmManager, slot);
+                operations++;
+            }
+        }
+        for (int slot = 0; slot < warmUpAt.length; slot++) {
+            if (warmUpAt[slot] == 0L || RequestCodeRegistry.warmUpTimeOf(context, slot) == warmUpAt[slot]) {
+                continue;
+            }
+            AlarmArmer.armWarmUp(context, alarmManager, warmUpAt[slot], bySlot[slot], headMember[slot]);
+            operations++;
+        }
+        return operations;
+    }
+}
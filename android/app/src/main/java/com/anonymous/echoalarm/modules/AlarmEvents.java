@@ -0,0 +1,266 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pushes alarm state changes from the receivers and the service to JS as
+ * {@link #EVENT_STATE_CHANGED} device events, so the UI does not have to poll.
+ *
+ * Changes are coalesced: the first one schedules a flush {@link #COALESCE_MS} later and every
+ * change until then only adds its reason and cluster to the pending delta, so a fire (receiver,
+ * cursor, re-arm, service start) or a restore of many clusters reaches JS as one event. The
+ * flush reads the current state of the touched clusters (a journal read, on the background
+ * pool), so a delta always carries the latest values. Nothing is queued while no React context
+ * with a listener is attached; JS reads the full state when it (re)subscribes.
+ *
+ * The receivers and the service run in the alarm process ({@link AlarmProcess}), which has no
+ * React context: there the flush sends the delta to the main process as a package-private
+ * {@link #ACTION_FORWARD} broadcast, and the main process posts it again as if it were its own.
+ * A delta sent while the main process is not running is simply lost, like any other.
+ */
+final class AlarmEvents {
+
+    static final String EVENT_STATE_CHANGED = "AlarmStateChanged";
+
+    // Reasons, in the "reasons" array of an event
+    static final String FIRED = "fired";
+    static final String RINGING = "ringing";
+    static final String STOPPED = "stopped";
+    static final String RESTORED = "restored";
+    static final String TIME_CHANGED = "timeChanged";
+    static final String SNOOZED = "snoozed";
+    static final String CLUSTER_STOPPED = "clusterStopped";
+
+    static final long COALESCE_MS = 250;
+
+    // Alarm process -> main process
+    static final String ACTION_FORWARD = "com.anonymous.echoalarm.ALARM_STATE_FORWARD";
+    private static final String EXTRA_REASONS = "REASONS";
+    private static final String EXTRA_CLUSTER_IDS = "CLUSTER_IDS";
+    private static final String EXTRA_ALL = "ALL";
+    private static final String EXTRA_RINGING = "RINGING";
+
+    private static ReactApplicationContext reactContext;
+    private static int listenerCount;
+    private static BroadcastReceiver forwardReceiver;
+    // Set in the alarm process once something was posted: where the flush forwards to
+    private static Context forwardContext;
+
+    // Pending delta, guarded by the class lock
+    private static final Set<String> reasons = new LinkedHashSet<>();
+    private static final Set<String> clusterIds = new LinkedHashSet<>();
+    private static boolean allClusters;
+    private static Boolean ringing;
+    private static boolean flushScheduled;
+
+    private AlarmEvents() {
+    }
+
+    static synchronized void attach(ReactApplicationContext context) {
+        reactContext = context;
+        if (forwardReceiver != null) {
+            return;
+        }
+        forwardReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context receiverContext, Intent intent) {
+                receiveForwarded(intent);
+            }
+        };
+        IntentFilter filter = new IntentFilter(ACTION_FORWARD);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.getApplicationContext().registerReceiver(forwardReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.getApplicationContext().registerReceiver(forwardReceiver, filter);
+        }
+    }
+
+    static synchronized void detach(ReactApplicationContext context) {
+        if (reactContext == context) {
+            reactContext = null;
+            listenerCount = 0;
+            clearPending();
+            if (forwardReceiver != null) {
+                context.getApplicationContext().unregisterReceiver(forwardReceiver);
+                forwardReceiver = null;
+            }
+        }
+    }
+
+    static synchronized void listenersChanged(int delta) {
+        listenerCount = Math.max(0, listenerCount + delta);
+        if (listenerCount == 0) {
+            clearPending();
+        }
+    }
+
+    /** A change to one cluster (null for none in particular). */
+    static void post(Context context, String reason, String clusterId) {
+        post(context, new String[]{reason}, clusterId != null ? new String[]{clusterId} : new String[0], false, null);
+    }
+
+    /** A change that may touch every stored cluster (restore, clock or zone change). */
+    static void postAll(Context context, String reason) {
+        post(context, new String[]{reason}, new String[0], true, null);
+    }
+
+    /** The service started or stopped sounding. */
+    static void postRinging(Context context, boolean isRinging) {
+        post(context, new String[]{isRinging ? RINGING : STOPPED}, new String[0], false, isRinging);
+    }
+
+    private static void post(Context context, String[] newReasons, String[] newClusterIds, boolean all,
+                             Boolean isRinging) {
+        synchronized (AlarmEvents.class) {
+            if (!isListening()) {
+                if (!AlarmProcess.isAlarmProcess(context)) {
+                    return;
+                }
+                forwardContext = context.getApplicationContext();
+            }
+            reasons.addAll(Arrays.asList(newReasons));
+            clusterIds.addAll(Arrays.asList(newClusterIds));
+            allClusters |= all;
+            if (isRinging != null) {
+                ringing = isRinging;
+            }
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        AlarmExecutors.schedule(AlarmEvents::flush, COALESCE_MS);
+    }
+
+    /** Main process: a delta flushed by the alarm process. */
+    private static void receiveForwarded(Intent intent) {
+        String[] forwardedReasons = intent.getStringArrayExtra(EXTRA_REASONS);
+        String[] forwardedIds = intent.getStringArrayExtra(EXTRA_CLUSTER_IDS);
+        ReactApplicationContext context;
+        synchronized (AlarmEvents.class) {
+            context = reactContext;
+        }
+        if (context == null || forwardedReasons == null) {
+            return;
+        }
+        post(context, forwardedReasons, forwardedIds != null ? forwardedIds : new String[0],
+                intent.getBooleanExtra(EXTRA_ALL, false),
+                intent.hasExtra(EXTRA_RINGING) ? intent.getBooleanExtra(EXTRA_RINGING, false) : null);
+    }
+
+    private static void flush() {
+        ReactApplicationContext context;
+        Context forwardTo;
+        String[] flushedReasons;
+        String[] touched;
+        boolean all;
+        Boolean flushedRinging;
+        synchronized (AlarmEvents.class) {
+            flushScheduled = false;
+            context = isListening() ? reactContext : null;
+            forwardTo = forwardContext;
+            if ((context == null && forwardTo == null) || reasons.isEmpty()) {
+                clearPending();
+                return;
+            }
+            flushedReasons = reasons.toArray(new String[0]);
+            touched = clusterIds.toArray(new String[0]);
+            all = allClusters;
+            flushedRinging = ringing;
+            clearPending();
+        }
+
+        if (context == null) {
+            forward(forwardTo, flushedReasons, touched, all, flushedRinging);
+            return;
+        }
+        try {
+            context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(EVENT_STATE_CHANGED, delta(context, flushedReasons, touched, all, flushedRinging));
+        } catch (RuntimeException e) {
+            // The instance went away between the check and the emit
+            Log.w("AlarmEvents", "Evento descartado: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {reasons, active, nextFireTime, clusters: [{clusterId, nextIndex, alarmCount, nextFireTime}
+     * or {clusterId, removed: true}], ringing?}; clusters lists the touched ones, or all of them.
+     */
+    private static WritableMap delta(Context context, String[] flushedReasons, String[] touched, boolean all,
+                                     Boolean flushedRinging) {
+        long now = System.currentTimeMillis();
+        Map<String, AlarmState> stored = AlarmProfileStore.loadAll(context);
+        ClusterIndex index = ArmedWindowPlanner.buildIndex(stored, now);
+
+        WritableMap event = Arguments.createMap();
+        WritableArray reasonArray = Arguments.createArray();
+        for (String reason : flushedReasons) {
+            reasonArray.pushString(reason);
+        }
+        event.putArray("reasons", reasonArray);
+        event.putBoolean("active", !index.isEmpty());
+        event.putDouble("nextFireTime", index.isEmpty() ? -1 : index.peekTime());
+        if (flushedRinging != null) {
+            event.putBoolean("ringing", flushedRinging);
+        }
+
+        WritableArray clusters = Arguments.createArray();
+        Iterable<String> ids = all ? stored.keySet() : Arrays.asList(touched);
+        for (String clusterId : ids) {
+            AlarmState state = stored.get(clusterId);
+            WritableMap cluster = Arguments.createMap();
+            cluster.putString("clusterId", clusterId);
+            if (state == null) {
+                cluster.putBoolean("removed", true);
+            } else {
+                int next = Math.max(state.nextIndex, state.plan().firstDueIndex(now));
+                cluster.putInt("nextIndex", next);
+                cluster.putInt("alarmCount", state.fireTimes.length);
+                cluster.putDouble("nextFireTime", next < state.fireTimes.length ? state.fireTimes[next] : -1);
+            }
+            clusters.pushMap(cluster);
+        }
+        event.putArray("clusters", clusters);
+        return event;
+    }
+
+    private static void forward(Context context, String[] flushedReasons, String[] touched, boolean all,
+                                Boolean flushedRinging) {
+        Intent intent = new Intent(ACTION_FORWARD).setPackage(context.getPackageName());
+        intent.putExtra(EXTRA_REASONS, flushedReasons);
+        intent.putExtra(EXTRA_CLUSTER_IDS, touched);
+        intent.putExtra(EXTRA_ALL, all);
+        if (flushedRinging != null) {
+            intent.putExtra(EXTRA_RINGING, flushedRinging.booleanValue());
+        }
+        context.sendBroadcast(intent);
+    }
+
+    private static boolean isListening() {
+        return reactContext != null && listenerCount > 0 && reactContext.hasActiveReactInstance();
+    }
+
+    private static void clearPending() {
+        reasons.clear();
+        clusterIds.clear();
+        allClusters = false;
+        ringing = null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.BroadcastReceiver;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared background threads for the native alarm code: a small bounded pool for restore and
+ * cache work, a per-core pool for tone analysis, and a watchdog that enforces deadlines on
+ * {@code goAsync()} broadcasts and hands delayed tasks to the pool when they are due.
+ */
+final class AlarmExecutors {
+
+    private static final int POOL_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 32;
+
+    private static final ThreadPoolExecutor BACKGROUND = new ThreadPoolExecutor(
+            POOL_THREADS, POOL_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), namedFactory("EchoAlarmBg"));
+
+    /** CPU-bound tone analysis: one worker per core, bounded backlog. */
+    private static final int ANALYSIS_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final int ANALYSIS_QUEUE_CAPACITY = 256;
+
+    private static final ThreadPoolExecutor ANALYSIS = new ThreadPoolExecutor(
+            ANALYSIS_THREADS, ANALYSIS_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(ANALYSIS_QUEUE_CAPACITY), namedFactory("EchoAlarmAnalysis"));
+
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(namedFactory("EchoAlarmWatchdog"));
+
+    static {
+        BACKGROUND.allowCoreThreadTimeOut(true);
+        ANALYSIS.allowCoreThreadTimeOut(true);
+    }
+
+    private AlarmExecutors() {
+    }
+
+    static ThreadPoolExecutor background() {
+        return BACKGROUND;
+    }
+
+    static ThreadPoolExecutor analysis() {
+        return ANALYSIS;
+    }
+
+    /**
+     * Runs {@code work} on the background pool for a {@code goAsync()} broadcast and finishes the
+     * PendingResult exactly once: when the work ends or, at the latest, {@code deadlineMs} after
+     * the submit. The deadline counts from the submit, time queued behind other work included: at
+     * the deadline running work is interrupted, and work still queued runs once it leaves the
+     * queue, outside the already finished broadcast. Keeps receivers clear of the broadcast ANR
+     * timeout.
+     */
+    static void runAsync(final BroadcastReceiver.PendingResult pendingResult, long deadlineMs,
+                         final String tag, final Runnable work) {
+        runAsync(pendingResult, deadlineMs, tag, work, null);
+    }
+
+    /**
+     * As above; {@code onTimeout} (if any) runs when the deadline interrupted the work or the pool
+     * turned it away, e.g. to try again later. With it, work still queued at the deadline is
+     * dropped instead of run late.
+     */
+    static void runAsync(final BroadcastReceiver.PendingResult pendingResult, final long deadlineMs,
+                         final String tag, final Runnable work, final Runnable onTimeout) {
+        final AtomicBoolean finished = new AtomicBoolean();
+        final Runnable finish = () -> {
+            if (finished.compareAndSet(false, true)) {
+                pendingResult.finish();
+            }
+        };
+        // The worker while the work runs. Both flags and the interrupt happen under its lock, so
+        // the watchdog never interrupts a thread that has moved on to the pool's next task
+        final AtomicReference<Thread> worker = new AtomicReference<>();
+        final AtomicBoolean over = new AtomicBoolean(); // The work ended, or the deadline passed
+
+        final ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+            synchronized (worker) {
+                if (!over.compareAndSet(false, true)) {
+                    return;
+                }
+                Thread thread = worker.get();
+                if (thread != null) {
+                    Log.w(tag, "Plazo de " + deadlineMs + " ms agotado, se interrumpe.");
+                    thread.interrupt();
+                } else {
+                    Log.w(tag, "Plazo de " + deadlineMs + " ms agotado en la cola"
+                            + (onTimeout != null ? ", no se ejecuta." : ", se ejecuta fuera del broadcast."));
+                }
+            }
+            finish.run();
+            if (onTimeout != null) {
+                onTimeout.run();
+            }
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+
+        try {
+            BACKGROUND.execute(() -> {
+                synchronized (worker) {
+                    if (!over.get()) {
+                        worker.set(Thread.currentThread());
+                    } else if (onTimeout != null) {
+                        return; // Dropped at the deadline: onTimeout took over
+                    } // Else late: runs uninterrupted, the broadcast is already finished
+                }
+                try {
+                    work.run();
+                } finally {
+                    watchdog.cancel(false);
+                    synchronized (worker) {
+                        worker.set(null);
+                        over.set(true);
+                    }
+                    finish.run();
+                    Thread.interrupted(); // Must not leak into the pool's next task
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            watchdog.cancel(false);
+            synchronized (worker) {
+                if (!over.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+            Log.e(tag, "Pool de fondo lleno, trabajo descartado.");
+            finish.run();
+            if (onTimeout != null) {
+                onTimeout.run();
+            }
+        }
+    }
+
+    /**
+     * Runs a short task (e.g. an event flush) on the background pool after {@code delayMs}. The
+     * watchdog only times it, so its own thread stays free for deadlines; if the pool is full the
+     * task waits another {@code delayMs}.
+     */
+    static void schedule(final Runnable task, final long delayMs) {
+        WATCHDOG.schedule(() -> {
+            try {
+                BACKGROUND.execute(task);
+            } catch (RejectedExecutionException e) {
+                schedule(task, delayMs);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory namedFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
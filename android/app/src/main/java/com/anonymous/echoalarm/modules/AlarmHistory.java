@@ -0,0 +1,75 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Android entry point to the {@link AlarmHistoryLog} in the app's files dir. Recording is
+ * best-effort: an I/O error is logged and never gets in the way of a fire. Appends are a single
+ * 32-byte write under a file lock, cheap enough to do inline from the receiver and the service.
+ */
+final class AlarmHistory {
+
+    private static final String HISTORY_DIR = "history";
+
+    // DISMISS detail: where the alarm was stopped
+    static final int DISMISS_SCREEN = 1;
+    static final int DISMISS_NOTIFICATION = 2;
+    static final int DISMISS_APP = 3;
+
+    // FAILURE detail
+    static final int FAILURE_ARM_DENIED = 1;
+    static final int FAILURE_PLAYBACK = 2;
+    static final int FAILURE_ENGINE_FALLBACK = 3;
+    static final int FAILURE_SCREEN = 4;
+
+    private static AlarmHistoryLog log;
+
+    private AlarmHistory() {
+    }
+
+    static void armed(Context context, AlarmState cluster, int alarmIndex, long triggerAtMs) {
+        record(context, AlarmHistoryLog.ARM, triggerAtMs, cluster.clusterId, alarmIndex,
+                cluster.toneUriAt(alarmIndex), 0);
+    }
+
+    /** A fire reached the receiver at {@code receivedAtMs}; {@code detail} is its delay after the scheduled time. */
+    static void fired(Context context, String clusterId, int alarmIndex, String toneUri, long triggerAtMs,
+                      long receivedAtMs) {
+        long lateness = triggerAtMs > 0 ? Math.max(0, receivedAtMs - triggerAtMs) : 0;
+        record(context, AlarmHistoryLog.FIRE, triggerAtMs, clusterId, alarmIndex, toneUri,
+                (int) Math.min(Integer.MAX_VALUE, lateness));
+    }
+
+    /** A member was snoozed until {@code untilMs}; {@code detail} is the snooze length in minutes. */
+    static void snoozed(Context context, String clusterId, int alarmIndex, String toneUri, long untilMs, int minutes) {
+        record(context, AlarmHistoryLog.SNOOZE, untilMs, clusterId, alarmIndex, toneUri, minutes);
+    }
+
+    static void dismissed(Context context, int source) {
+        record(context, AlarmHistoryLog.DISMISS, 0, null, -1, null, source);
+    }
+
+    static void failed(Context context, int failure, String toneUri) {
+        record(context, AlarmHistoryLog.FAILURE, 0, null, -1, toneUri, failure);
+    }
+
+    static void record(Context context, byte type, long scheduledAtMs, String clusterId, int alarmIndex,
+                       String toneUri, int detail) {
+        try {
+            log(context).append(type, System.currentTimeMillis(), scheduledAtMs, clusterId, alarmIndex, toneUri, detail);
+        } catch (IOException e) {
+            Log.e("AlarmHistory", "Error escribiendo el historial: " + e.getMessage());
+        }
+    }
+
+    static synchronized AlarmHistoryLog log(Context context) {
+        if (log == null) {
+            log = new AlarmHistoryLog(new File(context.getApplicationContext().getFilesDir(), HISTORY_DIR));
+        }
+        return log;
+    }
+}
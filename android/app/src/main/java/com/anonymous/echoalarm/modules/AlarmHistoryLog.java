@@ -0,0 +1,245 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Append-only history of what the alarms did: every arm, fire, snooze, dismiss and failure, as
+ * fixed-size records in a directory of segment files.
+ *
+ * <pre>
+ * segment : int magic, short version, short reserved, record*
+ * record  : long atMs, long scheduledAtMs, int clusterHash, int toneHash, int detail,
+ *           short member, byte type, byte reserved          (32 bytes)
+ * </pre>
+ *
+ * Writes go to the newest segment; once it reaches {@code segmentBytes} the next append opens a
+ * new one, and the oldest segments are deleted beyond {@code maxSegments}, so the log is
+ * bounded (about 16k records with the defaults). A torn record at the end of a segment is
+ * ignored on read and cut off before the next append. Tones are stored as the hash of their
+ * URI; the URIs themselves go once each to a small side dictionary. Both app processes append,
+ * so appends hold a file lock in the directory and every call lists the segments again instead
+ * of trusting what this process saw last. Pure Java, no Android dependencies.
+ */
+public final class AlarmHistoryLog {
+
+    public static final byte ARM = 1;
+    public static final byte FIRE = 2;
+    public static final byte SNOOZE = 3;
+    public static final byte DISMISS = 4;
+    public static final byte FAILURE = 5;
+
+    public static final int RECORD_BYTES = 32;
+
+    static final int SEGMENT_BYTES = 64 * 1024;
+    static final int MAX_SEGMENTS = 8;
+
+    private static final int MAGIC = 0x45434848; // "ECHH"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String TONE_DICTIONARY = "tones";
+    private static final String LOCK_FILE = "lock";
+
+    /** One history record, as handed to a {@link Visitor}. */
+    public interface Visitor {
+        void record(byte type, long atMs, long scheduledAtMs, int clusterHash, int member, int toneHash, int detail);
+    }
+
+    private final File dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    // Sequence numbers of the segments on disk, oldest first (listed again on every call)
+    private long[] segments;
+    private Map<Integer, String> tones;
+    private long tonesLength = -1; // Dictionary size when tones was read
+
+    public AlarmHistoryLog(File dir) {
+        this(dir, SEGMENT_BYTES, MAX_SEGMENTS);
+    }
+
+    AlarmHistoryLog(File dir, int segmentBytes, int maxSegments) {
+        this.dir = dir;
+        this.segmentBytes = Math.max(HEADER_BYTES + RECORD_BYTES, segmentBytes);
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    /** Hash stored for a cluster id or tone URI; 0 for null or empty. */
+    public static int hashOf(String value) {
+        return value == null || value.isEmpty() ? 0 : value.hashCode();
+    }
+
+    public synchronized void append(byte type, long atMs, long scheduledAtMs, String clusterId, int member,
+                                    String toneUri, int detail) throws IOException {
+        ensureDir();
+        try (RandomAccessFile lock = new RandomAccessFile(new File(dir, LOCK_FILE), "rw")) {
+            lock.getChannel().lock(); // Released with the file
+            loadSegments(); // After the lock: the other process may have rotated meanwhile
+            appendLocked(type, atMs, scheduledAtMs, clusterId, member, toneUri, detail);
+        }
+    }
+
+    private void appendLocked(byte type, long atMs, long scheduledAtMs, String clusterId, int member,
+                              String toneUri, int detail) throws IOException {
+        int toneHash = hashOf(toneUri);
+        if (toneHash != 0 && !toneUri.equals(tones.get(toneHash))) {
+            appendTone(toneHash, toneUri);
+        }
+
+        File file = segmentFile(segments.length > 0 ? segments[segments.length - 1] : 0);
+        if (segments.length == 0 || file.length() >= segmentBytes) {
+            file = rotate();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(atMs).putLong(scheduledAtMs).putInt(hashOf(clusterId)).putInt(toneHash).putInt(detail)
+                .putShort((short) member).put(type).put((byte) 0);
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            long length = out.length();
+            long aligned = length < HEADER_BYTES
+                    ? 0 : length - (length - HEADER_BYTES) % RECORD_BYTES;
+            if (aligned == 0) {
+                // Header lost with a torn first write: start the segment over
+                out.setLength(0);
+                out.write(header());
+                aligned = HEADER_BYTES;
+            } else if (aligned != length) {
+                out.setLength(aligned); // Drop a torn record
+            }
+            out.seek(aligned);
+            out.write(record.array());
+        }
+    }
+
+    /** Visits every record, oldest segment first and in append order within a segment. */
+    public synchronized void scan(Visitor visitor) throws IOException {
+        loadSegments();
+        for (long sequence : segments) {
+            byte[] bytes;
+            try {
+                bytes = StoreFiles.readFully(segmentFile(sequence));
+            } catch (IOException e) {
+                continue; // Deleted by a rotation in between, or unreadable: skip it
+            }
+            if (bytes.length < HEADER_BYTES || ByteBuffer.wrap(bytes).getInt() != MAGIC) {
+                continue;
+            }
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            for (int offset = HEADER_BYTES; offset + RECORD_BYTES <= bytes.length; offset += RECORD_BYTES) {
+                in.position(offset);
+                long atMs = in.getLong();
+                long scheduledAtMs = in.getLong();
+                int clusterHash = in.getInt();
+                int toneHash = in.getInt();
+                int detail = in.getInt();
+                int member = in.getShort();
+                byte type = in.get();
+                visitor.record(type, atMs, scheduledAtMs, clusterHash, member, toneHash, detail);
+            }
+        }
+    }
+
+    /** URI of a tone hash seen by {@link #append}, or null if unknown. */
+    public synchronized String toneOf(int toneHash) throws IOException {
+        loadSegments();
+        return tones.get(toneHash);
+    }
+
+    private File rotate() throws IOException {
+        long next = segments.length > 0 ? segments[segments.length - 1] + 1 : 1;
+        File file = segmentFile(next);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(header());
+        }
+        long[] grown = Arrays.copyOf(segments, segments.length + 1);
+        grown[segments.length] = next;
+
+        int drop = Math.max(0, grown.length - maxSegments);
+        for (int i = 0; i < drop; i++) {
+            segmentFile(grown[i]).delete();
+        }
+        segments = Arrays.copyOfRange(grown, drop, grown.length);
+        return file;
+    }
+
+    private void ensureDir() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create history directory " + dir);
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        ensureDir();
+        String[] names = dir.list();
+        long[] found = new long[names != null ? names.length : 0];
+        int count = 0;
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX)) {
+                    try {
+                        long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length()));
+                        found[count++] = sequence;
+                    } catch (NumberFormatException ignored) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+        segments = Arrays.copyOf(found, count);
+        Arrays.sort(segments);
+        long length = new File(dir, TONE_DICTIONARY).length();
+        if (tones == null || length != tonesLength) {
+            tonesLength = length;
+            tones = readTones();
+        }
+    }
+
+    private Map<Integer, String> readTones() throws IOException {
+        Map<Integer, String> map = new HashMap<>();
+        File file = new File(dir, TONE_DICTIONARY);
+        if (!file.exists()) {
+            return map;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(StoreFiles.readFully(file)));
+        try {
+            while (true) {
+                int hash = in.readInt();
+                map.put(hash, in.readUTF());
+            }
+        } catch (EOFException e) {
+            // End of the dictionary, or a torn last entry
+        }
+        return map;
+    }
+
+    private void appendTone(int toneHash, String toneUri) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(dir, TONE_DICTIONARY), true))) {
+            out.writeInt(toneHash);
+            out.writeUTF(toneUri);
+        }
+        tones.put(toneHash, toneUri);
+        tonesLength = new File(dir, TONE_DICTIONARY).length();
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(dir, SEGMENT_PREFIX + String.format(Locale.ROOT, "%08d", sequence));
+    }
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putShort(VERSION).putShort((short) 0).array();
+    }
+}
@@ -0,0 +1,307 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Aggregate queries over an {@link AlarmHistoryLog}, so JS receives a handful of numbers instead
+ * of the records. Each query is one sequential scan.
+ *
+ * <p>Only one tone sounds at a time, so the log reads as a sequence of wake-ups: a FIRE starts
+ * (or continues) a wake-up, a DISMISS ends it. A fire that is followed by another fire without a
+ * DISMISS or SNOOZE in between was slept through, as is one still unanswered
+ * {@link #UNANSWERED_MS} later. Time to dismiss is measured from the first fire of the wake-up,
+ * which is how long it actually took to get up. Pure Java.
+ */
+public final class AlarmHistoryStats {
+
+    /** A fire with no answer after this long was slept through, and ends its wake-up. */
+    public static final long UNANSWERED_MS = 60 * ClusterScheduleEngine.MINUTE_MS;
+
+    private static final long DAY_MS = ClusterScheduleEngine.DAY_MS;
+
+    /** Event counts since a point in time, e.g. overnight. */
+    public static final class Summary {
+        public int armed;
+        public int fired;
+        public int snoozed;
+        /** Wake-ups ended by a dismiss. */
+        public int dismissed;
+        public int failures;
+        public long firstFireAtMs = -1;
+        public long lastDismissAtMs = -1;
+        /** Largest delay of a fire after its scheduled time. */
+        public long maxLatenessMs;
+        public int sleptThrough;
+    }
+
+    /** Time-to-dismiss distribution of one local week (Monday to Sunday). */
+    public static final class Week {
+        public final long startMs;
+        /** Sorted time-to-dismiss of the wake-ups that ended that week. */
+        public final long[] dismissMs;
+        public final int fires;
+
+        Week(long startMs, long[] dismissMs, int fires) {
+            this.startMs = startMs;
+            this.dismissMs = dismissMs;
+            this.fires = fires;
+        }
+    }
+
+    /** How one tone fares: fires, and how many of them ended in a dismiss or snooze or were slept through. */
+    public static final class ToneCount {
+        public final int toneHash;
+        public int fires;
+        public int answered;
+        public int sleptThrough;
+
+        ToneCount(int toneHash) {
+            this.toneHash = toneHash;
+        }
+    }
+
+    private AlarmHistoryStats() {
+    }
+
+    public static Summary summary(AlarmHistoryLog log, long sinceMs, long nowMs) throws IOException {
+        final Summary summary = new Summary();
+        new WakeUpScanner(nowMs) {
+            @Override
+            void onRecord(byte type, long atMs, long scheduledAtMs, int detail) {
+                if (atMs < sinceMs) {
+                    return;
+                }
+                switch (type) {
+                    case AlarmHistoryLog.ARM:
+                        summary.armed++;
+                        break;
+                    case AlarmHistoryLog.FIRE:
+                        summary.fired++;
+                        if (summary.firstFireAtMs < 0) {
+                            summary.firstFireAtMs = atMs;
+                        }
+                        summary.maxLatenessMs = Math.max(summary.maxLatenessMs, detail);
+                        break;
+                    case AlarmHistoryLog.SNOOZE:
+                        summary.snoozed++;
+                        break;
+                    case AlarmHistoryLog.FAILURE:
+                        summary.failures++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            @Override
+            void onSleptThrough(int toneHash, long fireAtMs) {
+                if (fireAtMs >= sinceMs) {
+                    summary.sleptThrough++;
+                }
+            }
+
+            @Override
+            void onDismissed(long firstFireAtMs, long dismissAtMs, int fireCount) {
+                // Counted per wake-up: the screen and the app may both report the same stop
+                if (dismissAtMs >= sinceMs) {
+                    summary.dismissed++;
+                    summary.lastDismissAtMs = dismissAtMs;
+                }
+            }
+        }.scan(log);
+        return summary;
+    }
+
+    /**
+     * Time to dismiss per local week for the last {@code weeks} weeks (the current one included),
+     * newest first. Weeks without wake-ups are returned empty.
+     */
+    public static List<Week> dismissByWeek(AlarmHistoryLog log, int weeks, long nowMs, String timeZoneId)
+            throws IOException {
+        final TimeZone zone = TimeZone.getTimeZone(timeZoneId);
+        final long[] starts = new long[Math.max(1, weeks)];
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(weekStart(nowMs, zone));
+        for (int w = 0; w < starts.length; w++) {
+            starts[w] = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, -7);
+        }
+
+        final long[][] samples = new long[starts.length][];
+        final int[] counts = new int[starts.length];
+        final int[] fires = new int[starts.length];
+        new WakeUpScanner(nowMs) {
+            @Override
+            void onDismissed(long firstFireAtMs, long dismissAtMs, int fireCount) {
+                int w = weekOf(starts, dismissAtMs);
+                if (w < 0) {
+                    return;
+                }
+                if (samples[w] == null) {
+                    samples[w] = new long[16];
+                } else if (counts[w] == samples[w].length) {
+                    samples[w] = Arrays.copyOf(samples[w], counts[w] * 2);
+                }
+                samples[w][counts[w]++] = dismissAtMs - firstFireAtMs;
+                fires[w] += fireCount;
+            }
+        }.scan(log);
+
+        List<Week> result = new ArrayList<>(starts.length);
+        for (int w = 0; w < starts.length; w++) {
+            long[] sorted = samples[w] != null ? Arrays.copyOf(samples[w], counts[w]) : new long[0];
+            Arrays.sort(sorted);
+            result.add(new Week(starts[w], sorted, fires[w]));
+        }
+        return result;
+    }
+
+    /** Tones by how often they were slept through (most first), at most {@code limit}. */
+    public static List<ToneCount> sleptThrough(AlarmHistoryLog log, int limit, long nowMs) throws IOException {
+        final Map<Integer, ToneCount> byTone = new HashMap<>();
+        new WakeUpScanner(nowMs) {
+            @Override
+            void onFire(int toneHash) {
+                tone(toneHash).fires++;
+            }
+
+            @Override
+            void onAnswered(int toneHash) {
+                tone(toneHash).answered++;
+            }
+
+            @Override
+            void onSleptThrough(int toneHash, long fireAtMs) {
+                tone(toneHash).sleptThrough++;
+            }
+
+            private ToneCount tone(int toneHash) {
+                ToneCount count = byTone.get(toneHash);
+                if (count == null) {
+                    count = new ToneCount(toneHash);
+                    byTone.put(toneHash, count);
+                }
+                return count;
+            }
+        }.scan(log);
+
+        List<ToneCount> tones = new ArrayList<>();
+        for (ToneCount count : byTone.values()) {
+            if (count.sleptThrough > 0) {
+                tones.add(count);
+            }
+        }
+        Collections.sort(tones, (a, b) -> a.sleptThrough != b.sleptThrough
+                ? Integer.compare(b.sleptThrough, a.sleptThrough)
+                : Integer.compare(b.fires, a.fires));
+        return tones.size() > limit ? new ArrayList<>(tones.subList(0, Math.max(0, limit))) : tones;
+    }
+
+    /** Local Monday 00:00 of the week containing {@code timeMs}. */
+    static long weekStart(long timeMs, TimeZone zone) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(timeMs);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        int sinceMonday = Math.floorMod(calendar.get(Calendar.DAY_OF_WEEK) - Calendar.MONDAY, 7);
+        calendar.add(Calendar.DAY_OF_MONTH, -sinceMonday);
+        return calendar.getTimeInMillis();
+    }
+
+    /** Index in {@code starts} (newest first, one week apart) of the week holding {@code timeMs}, or -1. */
+    private static int weekOf(long[] starts, long timeMs) {
+        for (int w = 0; w < starts.length; w++) {
+            if (timeMs >= starts[w]) {
+                // A DST week is an hour short or long; 8 days is a safe upper bound for the newest one
+                return w > 0 || timeMs < starts[0] + 8 * DAY_MS ? w : -1;
+            }
+        }
+        return -1;
+    }
+
+    /** Walks the log once and turns FIRE / SNOOZE / DISMISS records into wake-up callbacks. */
+    private abstract static class WakeUpScanner implements AlarmHistoryLog.Visitor {
+        private final long nowMs;
+        private long wakeUpStartMs = -1;
+        private long wakeUpLastMs;
+        private int wakeUpFires;
+        // Fire currently sounding, if any
+        private long pendingFireAtMs = -1;
+        private int pendingTone;
+
+        WakeUpScanner(long nowMs) {
+            this.nowMs = nowMs;
+        }
+
+        void onRecord(byte type, long atMs, long scheduledAtMs, int detail) {
+        }
+
+        void onFire(int toneHash) {
+        }
+
+        void onAnswered(int toneHash) {
+        }
+
+        void onSleptThrough(int toneHash, long fireAtMs) {
+        }
+
+        void onDismissed(long firstFireAtMs, long dismissAtMs, int fireCount) {
+        }
+
+        final void scan(AlarmHistoryLog log) throws IOException {
+            log.scan(this);
+            if (pendingFireAtMs >= 0 && nowMs - pendingFireAtMs > UNANSWERED_MS) {
+                onSleptThrough(pendingTone, pendingFireAtMs);
+            }
+        }
+
+        @Override
+        public final void record(byte type, long atMs, long scheduledAtMs, int clusterHash, int member,
+                                 int toneHash, int detail) {
+            onRecord(type, atMs, scheduledAtMs, detail);
+            switch (type) {
+                case AlarmHistoryLog.FIRE:
+                    if (pendingFireAtMs >= 0) {
+                        // The previous tone rang on until this one replaced it
+                        onSleptThrough(pendingTone, pendingFireAtMs);
+                    }
+                    if (wakeUpStartMs < 0 || atMs - wakeUpLastMs > UNANSWERED_MS) {
+                        // Nothing for a long while (never dismissed): this fire starts a new wake-up
+                        wakeUpStartMs = atMs;
+                        wakeUpFires = 0;
+                    }
+                    wakeUpFires++;
+                    wakeUpLastMs = atMs;
+                    pendingFireAtMs = atMs;
+                    pendingTone = toneHash;
+                    onFire(toneHash);
+                    break;
+                case AlarmHistoryLog.SNOOZE:
+                case AlarmHistoryLog.DISMISS:
+                    if (pendingFireAtMs >= 0) {
+                        onAnswered(pendingTone);
+                        pendingFireAtMs = -1;
+                    }
+                    wakeUpLastMs = atMs;
+                    // A snooze keeps the wake-up going; only a dismiss ends it
+                    if (type == AlarmHistoryLog.DISMISS && wakeUpStartMs >= 0) {
+                        onDismissed(wakeUpStartMs, atMs, wakeUpFires);
+                        wakeUpStartMs = -1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Small versioned binary store for the {@link AlarmState} of every cluster, replacing the
+ * EchoAlarmPrefs JSON string.
+ *
+ * <pre>
+ * header : int magic, short version, short reserved
+ * record : int length, byte type, payload, int crc32(type + payload)
+ * </pre>
+ *
+ * A CLUSTER record holds the whole state of one named cluster (profile, fire plan, tone table,
+ * cursor, and optionally its recurrence rule and occurrence window as a trailing section that older
+ * builds ignore) and is appended when the cluster is saved; CURSOR and REMOVE records are appended
+ * on every fire / cancel (a CURSOR carries the {@link AlarmState#planStamp} it was computed against
+ * and is skipped if the cluster was saved with another plan since), and a TONES record swaps a
+ * cluster's tone URIs (for their local copies) only if its tone table is still the one the swap was
+ * computed from. Version 1 files (one unnamed cluster) are read as the
+ * {@link AlarmState#DEFAULT_CLUSTER_ID} cluster. Replay stops at the first torn or corrupt record,
+ * so a process death mid-append keeps the last good state, and the next append cuts that tail off
+ * before writing behind it. Snapshots are written to a temporary file, synced and renamed over the
+ * journal, which is atomic on the same filesystem. Once the appended tail grows past
+ * {@link #COMPACT_THRESHOLD_BYTES} it is folded back into a single snapshot. Writers from different
+ * processes are serialized by a file lock on a side {@code .lock} file, so a compaction never drops
+ * a record appended by the other process; readers need no lock, since a snapshot replaces the
+ * journal by rename. The lock file also notes where the last write ended and where its record
+ * starts: while the journal still ends there, an append only checks that record, and the whole file
+ * is checked again only after a write that did not finish (or one by a build that predates the
+ * note). Pure Java, no Android dependencies.
+ */
+public final class AlarmJournal {
+
+    private static final int MAGIC = 0x45434841; // "ECHA"
+    private static final short VERSION = 2;
+    private static final int HEADER_BYTES = 8;
+
+    // Version 1 records (single unnamed cluster)
+    private static final byte TYPE_SNAPSHOT_V1 = 1;
+    private static final byte TYPE_CURSOR_V1 = 2;
+    private static final byte TYPE_CLEAR_V1 = 3;
+
+    private static final byte TYPE_CLUSTER = 4;
+    private static final byte TYPE_CURSOR = 5;
+    private static final byte TYPE_REMOVE = 6;
+    private static final byte TYPE_TONES = 7;
+
+    private static final byte FLAG_ACTIVE = 1;
+    private static final byte FLAG_CHAINED = 1 << 1;
+
+    // Bit 6 (0x40) of the recurrence type byte: the rule follows the device's zone. Builds that
+    // predate it do not know the combined type and keep such clusters as one-offs.
+    private static final int RULE_FOLLOWS_DEVICE = 0x40;
+
+    static final int COMPACT_THRESHOLD_BYTES = 16 * 1024;
+
+    private final File file;
+    private final File tmpFile;
+    private final File lockFile;
+
+    public AlarmJournal(File file) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.lockFile = new File(file.getPath() + ".lock");
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /** Replays the journal into the stored clusters, in insertion order. Empty if there is none. */
+    public synchronized Map<String, AlarmState> read() throws IOException {
+        Map<String, AlarmState> clusters = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return clusters;
+        }
+        replay(StoreFiles.readFully(file), clusters);
+
+        // Version 1 could mark the cluster inactive instead of removing it
+        Iterator<AlarmState> it = clusters.values().iterator();
+        while (it.hasNext()) {
+            if (!it.next().active) {
+                it.remove();
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Applies the intact records of {@code bytes} to {@code clusters} (only checks them if null)
+     * and returns where they end: the length of the file, or the start of a torn or corrupt tail.
+     * Zero if there is not even a header.
+     */
+    private int replay(byte[] bytes, Map<String, AlarmState> clusters) throws IOException {
+        if (bytes.length < HEADER_BYTES) {
+            return 0;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an alarm journal: " + file);
+        }
+        short version = in.readShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported alarm journal version " + version);
+        }
+        in.readShort(); // reserved
+
+        int offset = HEADER_BYTES;
+        while (true) {
+            int end = recordEnd(bytes, offset);
+            if (end < 0) {
+                break; // Torn or corrupt tail, keep what we had
+            }
+            if (clusters != null) {
+                int length = end - offset - 8;
+                DataInputStream payload = new DataInputStream(
+                        new ByteArrayInputStream(bytes, offset + 5, length - 1));
+                apply(clusters, bytes[offset + 4], payload);
+            }
+            offset = end;
+        }
+        return offset;
+    }
+
+    /** End of the intact records of {@code bytes} from {@code offset} on. */
+    private static int recordsEnd(byte[] bytes, int offset) {
+        for (int end = recordEnd(bytes, offset); end >= 0; end = recordEnd(bytes, offset)) {
+            offset = end;
+        }
+        return offset;
+    }
+
+    /** End of the record at {@code offset}, or -1 if there is none or it is torn or corrupt. */
+    private static int recordEnd(byte[] bytes, int offset) {
+        if (offset + 4 > bytes.length) {
+            return -1;
+        }
+        int length = readInt(bytes, offset);
+        int end = offset + 4 + length + 4;
+        if (length < 1 || end > bytes.length || end < 0) {
+            return -1; // Torn
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset + 4, length);
+        return (int) crc.getValue() == readInt(bytes, offset + 4 + length) ? end : -1;
+    }
+
+    private static void apply(Map<String, AlarmState> clusters, byte type, DataInputStream payload)
+            throws IOException {
+        switch (type) {
+            case TYPE_CLUSTER: {
+                String clusterId = payload.readUTF();
+                int slot = payload.readInt();
+                AlarmState state = decodeSnapshot(payload);
+                state.clusterId = clusterId;
+                state.slot = slot;
+                clusters.put(clusterId, state);
+                break;
+            }
+            case TYPE_CURSOR: {
+                AlarmState state = clusters.get(payload.readUTF());
+                int nextIndex = payload.readInt();
+                // Records from builds without the stamp apply to whatever plan is stored
+                boolean samePlan = payload.available() < 4 || state == null || payload.readInt() == state.planStamp();
+                if (state != null && samePlan) {
+                    state.nextIndex = nextIndex;
+                }
+                break;
+            }
+            case TYPE_REMOVE:
+                clusters.remove(payload.readUTF());
+                break;
+            case TYPE_TONES: {
+                AlarmState state = clusters.get(payload.readUTF());
+                int count = payload.readInt();
+                String[] from = new String[count];
+                String[] to = new String[count];
+                for (int i = 0; i < count; i++) {
+                    from[i] = payload.readUTF();
+                    to[i] = payload.readUTF();
+                }
+                if (state != null && Arrays.equals(state.toneUris, from)) {
+                    state.toneUris = to;
+                }
+                break;
+            }
+            case TYPE_SNAPSHOT_V1:
+                clusters.put(AlarmState.DEFAULT_CLUSTER_ID, decodeSnapshot(payload));
+                break;
+            case TYPE_CURSOR_V1: {
+                AlarmState state = clusters.get(AlarmState.DEFAULT_CLUSTER_ID);
+                if (state != null) {
+                    state.nextIndex = payload.readInt();
+                }
+                break;
+            }
+            case TYPE_CLEAR_V1: {
+                AlarmState state = clusters.get(AlarmState.DEFAULT_CLUSTER_ID);
+                if (state != null) {
+                    state.active = false;
+                }
+                break;
+            }
+            default:
+                // Unknown record from a newer build: skip it
+                break;
+        }
+    }
+
+    /** Atomically replaces the journal with one CLUSTER record per entry of {@code clusters}. */
+    public synchronized void writeSnapshot(Collection<AlarmState> clusters) throws IOException {
+        try (WriterLock lock = new WriterLock()) {
+            snapshot(lock, clusters);
+        }
+    }
+
+    private void snapshot(WriterLock lock, Collection<AlarmState> clusters) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        int lastRecord = HEADER_BYTES;
+        for (AlarmState state : clusters) {
+            out.flush();
+            lastRecord = buffer.size();
+            writeRecord(out, TYPE_CLUSTER, encodeCluster(state));
+        }
+        out.flush();
+
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(buffer.toByteArray());
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        lock.wrote(buffer.size(), lastRecord);
+    }
+
+    /** Adds or replaces one cluster. */
+    public synchronized void appendCluster(AlarmState state) throws IOException {
+        try (WriterLock lock = new WriterLock()) {
+            if (!file.exists()) {
+                snapshot(lock, Collections.singletonList(state));
+                return;
+            }
+            append(lock, TYPE_CLUSTER, encodeCluster(state));
+        }
+    }
+
+    /**
+     * Appends a new next-index cursor for {@code cluster}, which must be the state the index was
+     * computed from: the record only applies while the stored cluster still has that plan.
+     */
+    public synchronized void appendCursor(AlarmState cluster, int nextIndex) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(cluster.clusterId.length() + 10);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeUTF(cluster.clusterId);
+        out.writeInt(nextIndex);
+        out.writeInt(cluster.planStamp());
+        out.flush();
+        try (WriterLock lock = new WriterLock()) {
+            append(lock, TYPE_CURSOR, payload.toByteArray());
+        }
+    }
+
+    /** Drops a cluster. */
+    public synchronized void appendRemove(String clusterId) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(clusterId.length() + 2);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeUTF(clusterId);
+        out.flush();
+        try (WriterLock lock = new WriterLock()) {
+            append(lock, TYPE_REMOVE, payload.toByteArray());
+        }
+    }
+
+    /**
+     * Replaces a cluster's tone URIs {@code from} with {@code to}, keeping the rest of the stored
+     * cluster (cursor included) as it is at replay. Skipped at replay if the cluster was saved
+     * with another tone table in between.
+     */
+    public synchronized void appendToneSwap(String clusterId, String[] from, String[] to) throws IOException {
+        if (from.length != to.length) {
+            throw new IllegalArgumentException("Tone tables differ in length");
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64 * (from.length + 1));
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeUTF(clusterId);
+        out.writeInt(from.length);
+        for (int i = 0; i < from.length; i++) {
+            out.writeUTF(from[i] != null ? from[i] : "");
+            out.writeUTF(to[i] != null ? to[i] : "");
+        }
+        out.flush();
+        try (WriterLock lock = new WriterLock()) {
+            append(lock, TYPE_TONES, payload.toByteArray());
+        }
+    }
+
+    /**
+     * The writer lock shared with other processes, on the side {@code .lock} file, which also
+     * holds where the last write left the journal: its end and the start of its last record.
+     * Callers hold the instance monitor, so no other thread of this process holds it already.
+     */
+    private final class WriterLock implements Closeable {
+        private final RandomAccessFile raf;
+
+        WriterLock() throws IOException {
+            raf = new RandomAccessFile(lockFile, "rw");
+            try {
+                raf.getChannel().lock();
+            } catch (IOException | RuntimeException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        /**
+         * End of {@code journal} if it still ends where the last write left it and that write's
+         * record is intact; -1 if the whole journal has to be checked.
+         */
+        int intactEnd(RandomAccessFile journal) throws IOException {
+            if (raf.length() < 8) {
+                return -1;
+            }
+            raf.seek(0);
+            int end = raf.readInt();
+            int lastRecord = raf.readInt();
+            if (end < HEADER_BYTES || lastRecord < HEADER_BYTES || lastRecord > end || journal.length() != end) {
+                return -1;
+            }
+            byte[] tail = new byte[end - lastRecord];
+            journal.seek(lastRecord);
+            journal.readFully(tail);
+            return recordsEnd(tail, 0) == tail.length ? end : -1;
+        }
+
+        void wrote(int end, int lastRecord) throws IOException {
+            raf.seek(0);
+            raf.writeInt(end);
+            raf.writeInt(lastRecord);
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close(); // Releases the lock
+        }
+    }
+
+    /**
+     * Appends one record; the caller holds the writer lock. A torn or corrupt tail left by a
+     * crash is cut off first: replay stops there, so anything written after it would be lost.
+     */
+    private void append(WriterLock lock, byte type, byte[] payload) throws IOException {
+        if (!file.exists()) {
+            return; // Nothing to update
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length + 9);
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeRecord(out, type, payload);
+        out.flush();
+
+        int end;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            end = lock.intactEnd(raf);
+            if (end < 0) {
+                // A write that did not finish, or no note yet: check every record once
+                end = replay(StoreFiles.readFully(file), null); // Small: compaction keeps it near the threshold
+            }
+            if (end < HEADER_BYTES) {
+                return; // No header to append to
+            }
+            if (raf.length() != end) {
+                raf.setLength(end); // Drop the bad tail
+            }
+            raf.seek(end);
+            raf.write(buffer.toByteArray());
+            raf.getFD().sync();
+        }
+        lock.wrote(end + buffer.size(), end);
+
+        if (end + buffer.size() > COMPACT_THRESHOLD_BYTES) {
+            snapshot(lock, read().values());
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length + 1);
+        out.writeByte(type);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static byte[] encodeCluster(AlarmState state) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128 + state.fireTimes.length * 12);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeUTF(state.clusterId);
+        out.writeInt(state.slot);
+
+        byte flags = 0;
+        if (state.active) {
+            flags |= FLAG_ACTIVE;
+        }
+        if (state.chainedMode) {
+            flags |= FLAG_CHAINED;
+        }
+        out.writeByte(flags);
+        out.writeLong(state.baseTimeMs);
+        out.writeInt(state.interval);
+        out.writeInt(state.alarmCount);
+        out.writeInt(state.nextIndex);
+
+        // Fire plan
+        out.writeInt(state.fireTimes.length);
+        for (int i = 0; i < state.fireTimes.length; i++) {
+            out.writeLong(state.fireTimes[i]);
+            out.writeInt(state.toneIndices[i]);
+        }
+
+        // Tone table
+        out.writeInt(state.toneUris.length);
+        for (int i = 0; i < state.toneUris.length; i++) {
+            out.writeUTF(state.toneUris[i] != null ? state.toneUris[i] : "");
+            String name = i < state.toneNames.length ? state.toneNames[i] : null;
+            out.writeUTF(name != null ? name : "");
+        }
+
+        // Optional trailing section: recurrence and its materialized occurrences
+        RecurrenceRule rule = state.recurrence;
+        if (rule != null) {
+            out.writeByte(rule.type | (rule.followsDevice ? RULE_FOLLOWS_DEVICE : 0));
+            out.writeShort(rule.minuteOfDay);
+            out.writeByte(rule.weekdays);
+            out.writeShort(rule.everyDays);
+            out.writeLong(rule.anchorDay);
+            out.writeUTF(rule.timeZoneId);
+            out.writeShort(state.upcoming.length);
+            for (long occurrence : state.upcoming) {
+                out.writeLong(occurrence);
+            }
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static AlarmState decodeSnapshot(DataInputStream in) throws IOException {
+        AlarmState state = new AlarmState();
+        byte flags = in.readByte();
+        state.active = (flags & FLAG_ACTIVE) != 0;
+        state.chainedMode = (flags & FLAG_CHAINED) != 0;
+        state.baseTimeMs = in.readLong();
+        state.interval = in.readInt();
+        state.alarmCount = in.readInt();
+        state.nextIndex = in.readInt();
+
+        int planSize = in.readInt();
+        state.fireTimes = new long[planSize];
+        state.toneIndices = new int[planSize];
+        for (int i = 0; i < planSize; i++) {
+            state.fireTimes[i] = in.readLong();
+            state.toneIndices[i] = in.readInt();
+        }
+
+        int toneCount = in.readInt();
+        state.toneUris = new String[toneCount];
+        state.toneNames = new String[toneCount];
+        for (int i = 0; i < toneCount; i++) {
+            state.toneUris[i] = in.readUTF();
+            state.toneNames[i] = in.readUTF();
+        }
+
+        if (in.available() > 0) {
+            int type = in.readByte();
+            int minuteOfDay = in.readShort();
+            int weekdays = in.readByte();
+            int everyDays = in.readShort();
+            long anchorDay = in.readLong();
+            String timeZoneId = in.readUTF();
+            state.upcoming = new long[in.readShort()];
+            for (int i = 0; i < state.upcoming.length; i++) {
+                state.upcoming[i] = in.readLong();
+            }
+            try {
+                state.recurrence = RecurrenceRule.of(type & ~RULE_FOLLOWS_DEVICE, minuteOfDay, weekdays, everyDays,
+                        anchorDay, timeZoneId, (type & RULE_FOLLOWS_DEVICE) != 0);
+            } catch (IllegalArgumentException e) {
+                // Rule kind from a newer build: keep the cluster as a one-off
+                state.upcoming = new long[0];
+            }
+        }
+        return state;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24)
+                | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,107 @@
+package com.anonymous.echoalarm.modules;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Which process this is. The fire path (receivers, AlarmSoundService, AlarmScreenActivity) is
+ * declared in the {@link #ALARM_PROCESS_SUFFIX} process, which MainApplication starts without
+ * React Native; a build with {@code -PechoAlarm.singleProcess=true} puts it back in the main
+ * process. State written from both processes goes through files with their own locks
+ * (AlarmJournal, AlarmHistoryLog, AlarmCoordinator and the {@link #sharedState} files), never
+ * through SharedPreferences, which each process caches on its own.
+ */
+public final class AlarmProcess {
+
+    public static final String ALARM_PROCESS_SUFFIX = ":alarm";
+
+    private static String processName;
+    private static final Map<String, SharedStateFile> sharedStates = new HashMap<>();
+
+    private AlarmProcess() {
+    }
+
+    /** True in the dedicated alarm process, false in the main (React Native) process. */
+    public static boolean isAlarmProcess(Context context) {
+        return name(context).endsWith(ALARM_PROCESS_SUFFIX);
+    }
+
+    static synchronized String name(Context context) {
+        if (processName == null) {
+            String name = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? Application.getProcessName() : readCmdline();
+            processName = name != null && !name.isEmpty() ? name : context.getPackageName();
+        }
+        return processName;
+    }
+
+    /**
+     * The {@link SharedStateFile} {@code name} in the files dir, which both processes read and
+     * write. Values an older build kept in the SharedPreferences of the same name are moved
+     * into it the first time.
+     */
+    static synchronized SharedStateFile sharedState(Context context, String name, boolean sync) {
+        SharedStateFile state = sharedStates.get(name);
+        if (state == null) {
+            Context appContext = context.getApplicationContext();
+            state = new SharedStateFile(new File(appContext.getFilesDir(), name + ".state"), sync);
+            migratePrefs(appContext, name, state);
+            sharedStates.put(name, state);
+        }
+        return state;
+    }
+
+    private static void migratePrefs(Context context, String name, SharedStateFile state) {
+        SharedPreferences prefs = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        Map<String, ?> legacy = prefs.getAll();
+        if (legacy.isEmpty()) {
+            return;
+        }
+        try {
+            state.edit(editor -> {
+                if (state.exists()) {
+                    return; // The other process moved them first
+                }
+                for (Map.Entry<String, ?> entry : legacy.entrySet()) {
+                    Object value = entry.getValue();
+                    if (value instanceof Long) {
+                        editor.putLong(entry.getKey(), (Long) value);
+                    } else if (value instanceof Integer) {
+                        editor.putInt(entry.getKey(), (Integer) value);
+                    } else if (value instanceof Boolean) {
+                        editor.putBoolean(entry.getKey(), (Boolean) value);
+                    } else if (value instanceof String) {
+                        editor.putString(entry.getKey(), (String) value);
+                    }
+                }
+            });
+            prefs.edit().clear().commit();
+        } catch (IOException e) {
+            Log.e("AlarmProcess", "Error migrando " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static String readCmdline() {
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            byte[] bytes = new byte[256];
+            int length = Math.max(0, in.read(bytes));
+            int end = 0;
+            while (end < length && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, 0, end, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Android entry point to the persisted clusters. Backed by {@link AlarmJournal} in the app's
+ * files dir; installs that still have the old "EchoAlarmPrefs" JSON profile are migrated on
+ * first read into the {@link AlarmState#DEFAULT_CLUSTER_ID} cluster.
+ */
+final class AlarmProfileStore {
+
+    static final String LEGACY_PREFS_NAME = "EchoAlarmPrefs";
+    private static final String JOURNAL_FILE = "alarm_state.journal";
+
+    private static AlarmJournal journal;
+
+    private AlarmProfileStore() {
+    }
+
+    /** Every active cluster, keyed by cluster id. Empty when nothing is stored or readable. */
+    static Map<String, AlarmState> loadAll(Context context) {
+        AlarmJournal store = journal(context);
+        try {
+            return store.exists() ? store.read() : migrateLegacyPrefs(context, store);
+        } catch (IOException e) {
+            Log.e("AlarmProfileStore", "Error leyendo el journal: " + e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /** Adds or replaces a cluster. */
+    static void save(Context context, AlarmState state) {
+        try {
+            journal(context).appendCluster(state);
+        } catch (IOException e) {
+            Log.e("AlarmProfileStore", "Error guardando el journal: " + e.getMessage());
+        }
+    }
+
+    /** Moves the cursor of {@code cluster}, as loaded; ignored if its plan was replaced since. */
+    static void saveNextIndex(Context context, AlarmState cluster, int nextIndex) {
+        try {
+            journal(context).appendCursor(cluster, nextIndex);
+        } catch (IOException e) {
+            Log.e("AlarmProfileStore", "Error guardando el cursor: " + e.getMessage());
+        }
+    }
+
+    /** Swaps a cluster's tone URIs in place, unless its tone table is no longer {@code from}. */
+    static void swapToneUris(Context context, String clusterId, String[] from, String[] to) {
+        try {
+            journal(context).appendToneSwap(clusterId, from, to);
+        } catch (IOException e) {
+            Log.e("AlarmProfileStore", "Error guardando los tonos: " + e.getMessage());
+        }
+    }
+
+    static void remove(Context context, String clusterId) {
+        try {
+            journal(context).appendRemove(clusterId);
+        } catch (IOException e) {
+            Log.e("AlarmProfileStore", "Error eliminando el clúster: " + e.getMessage());
+        }
+    }
+
+    static void clearAll(Context context) {
+        try {
+            journal(context).writeSnapshot(Collections.<AlarmState>emptyList());
+        } catch (IOException e) {
+            Log.e("AlarmProfileStore", "Error desactivando los clústeres: " + e.getMessage());
+        }
+    }
+
+    /** Slot of an existing cluster, or the lowest slot not used by any other cluster. */
+    static int slotFor(Map<String, AlarmState> clusters, String clusterId) {
+        AlarmState existing = clusters.get(clusterId);
+        if (existing != null) {
+            return existing.slot;
+        }
+        BitSet used = new BitSet();
+        for (AlarmState state : clusters.values()) {
+            used.set(state.slot);
+        }
+        return used.nextClearBit(0);
+    }
+
+    private static synchronized AlarmJournal journal(Context context) {
+        if (journal == null) {
+            journal = new AlarmJournal(new File(context.getApplicationContext().getFilesDir(), JOURNAL_FILE));
+        }
+        return journal;
+    }
+
+    /** One-time conversion of the old SharedPreferences + JSON profile into the journal. */
+    private static Map<String, AlarmState> migrateLegacyPrefs(Context context, AlarmJournal store) throws IOException {
+        Map<String, AlarmState> clusters = new LinkedHashMap<>();
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        String wakeTimeIso = prefs.getString("wakeTime", null);
+        if (!prefs.getBoolean("isAlarmActive", false) || wakeTimeIso == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return clusters;
+        }
+
+        long baseTimeMs;
+        try {
+            baseTimeMs = ClusterScheduleEngine.parseWakeTime(wakeTimeIso);
+        } catch (Exception e) {
+            Log.e("AlarmProfileStore", "Error parseando fecha guardada: " + e.getMessage());
+            return clusters;
+        }
+        int interval = prefs.getInt("interval", 1);
+        int alarmCount = prefs.getInt("alarmCount", 1);
+
+        String[] toneUris = new String[0];
+        String[] toneNames = new String[0];
+        try {
+            JSONArray jsonArray = new JSONArray(prefs.getString("tonePool", "[]"));
+            toneUris = new String[jsonArray.length()];
+            toneNames = new String[jsonArray.length()];
+            for (int i = 0; i < jsonArray.length(); i++) {
+                JSONObject tone = jsonArray.getJSONObject(i);
+                toneUris[i] = tone.optString("uri", "");
+                toneNames[i] = tone.optString("name", "");
+            }
+        } catch (Exception e) {
+            Log.e("AlarmProfileStore", "Error leyendo JSON de tonos: " + e.getMessage());
+        }
+
+        ClusterPlan plan = ClusterScheduleEngine.buildPlan(baseTimeMs, interval, alarmCount, toneUris.length);
+        AlarmState state = AlarmState.of(AlarmState.DEFAULT_CLUSTER_ID, 0, plan, baseTimeMs, interval,
+                alarmCount, toneUris, toneNames, prefs.getBoolean("chainedMode", false));
+        state.nextIndex = prefs.getInt("nextIndex", 0);
+        clusters.put(state.clusterId, state);
+
+        store.writeSnapshot(clusters.values());
+        prefs.edit().clear().apply();
+        Log.i("AlarmProfileStore", "Perfil migrado de EchoAlarmPrefs al journal.");
+        return clusters;
+    }
+}
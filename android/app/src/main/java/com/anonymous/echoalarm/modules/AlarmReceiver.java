@@ -5,22 +5,152 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ComponentName;
 import android.os.Build;
+import android.util.Log;
+
+import java.util.TimeZone;
 
 public class AlarmReceiver extends BroadcastReceiver{
 
+    private static final long BOOKKEEPING_DEADLINE_MS = 8000;
+
     @Override
     public void onReceive(Context context, Intent intent) {
+        if (AlarmArmer.ACTION_WARM_UP.equals(intent.getAction())) {
+            warmUp(context, intent);
+            return;
+        }
+
+        AlarmStartupTrace.fired();
+
+        long receivedAtMs = System.currentTimeMillis();
+        String clusterId = intent.getStringExtra(AlarmArmer.EXTRA_CLUSTER_ID);
+        int alarmIndex = intent.getIntExtra(AlarmArmer.EXTRA_ALARM_INDEX, -1);
+        long triggerAtMs = intent.getLongExtra(AlarmArmer.EXTRA_TRIGGER_AT, -1L);
+        int requestCode = intent.getIntExtra(AlarmArmer.EXTRA_REQUEST_CODE, -1);
+        String toneUri = intent.getStringExtra(AlarmArmer.EXTRA_TONE_URI);
+
+        // A snoozed member ringing again: played like any fire, but the cursor is left alone
+        boolean snoozed = AlarmArmer.ACTION_SNOOZE.equals(intent.getAction());
+        int snoozeSlot = intent.getIntExtra(AlarmArmer.EXTRA_SLOT, -1);
+
+        // A cluster session already played this member from its own timer: this is the safety net
+        if (!snoozed && AlarmSoundService.firedInSession(clusterId, triggerAtMs)) {
+            Log.d("AlarmReceiver", "Member " + alarmIndex + " of '" + clusterId + "' already fired in session.");
+            forgetCode(context, requestCode, triggerAtMs);
+            return;
+        }
+
+        // 0. Open the latency record for this fire (scheduled time vs. each stage of the wake-up path)
+        int latencySlot = -1;
+        if (triggerAtMs > 0) {
+            latencySlot = FireLatencyLog.begin(context, triggerAtMs);
+            FireLatencyLog.mark(context, latencySlot, FireLatencyRing.STAGE_RECEIVER);
+        }
+
         // 1. Create the intent to initialize reproduction system
         Intent serviceIntent = new Intent(context, AlarmSoundService.class);
+        serviceIntent.putExtra(FireLatencyLog.EXTRA_LATENCY_SLOT, latencySlot);
+        serviceIntent.putExtra(AlarmArmer.EXTRA_CLUSTER_ID, clusterId);
+        serviceIntent.putExtra(AlarmArmer.EXTRA_ALARM_INDEX, alarmIndex);
 
         // 2. Recover the URI from the tone that were attached to AlarmSchedulerModule (TONE_URI)
-        String toneUri = intent.getStringExtra("TONE_URI");
-        serviceIntent.putExtra("TONE_URI", toneUri);
+        serviceIntent.putExtra(AlarmArmer.EXTRA_TONE_URI, toneUri);
 
-        // 3. Start the service in foreground
+        // 3. Start the service in foreground; the wake lock keeps the CPU up until it is playing
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            AlarmWakeLock.acquire(context, latencySlot);
             context.startForegroundService(serviceIntent);
         }
 
+        // 4. Bookkeeping off the main thread, which the service needs next to start the sound
+        final PendingResult pendingResult = goAsync();
+        AlarmExecutors.runAsync(pendingResult, BOOKKEEPING_DEADLINE_MS, "AlarmReceiver", () -> {
+            if (snoozed) {
+                AlarmSnoozes.fired(context, snoozeSlot);
+            }
+            // History: one FIRE record per delivered alarm, with its delay after the scheduled time
+            AlarmHistory.fired(context, clusterId, alarmIndex, toneUri, triggerAtMs, receivedAtMs);
+
+            // Advance the cluster cursor before the spent code leaves the registry: a re-arm in
+            // between would otherwise see the member still due and unarmed, and arm it again
+            if (!snoozed) {
+                moveCursor(context, clusterId, alarmIndex);
+            }
+            // This PendingIntent is spent: drop it from the registry of live codes, unless a re-arm
+            // (e.g. after a clock or zone change) already reused the code for another trigger time
+            forgetCode(context, requestCode, triggerAtMs);
+            if (!snoozed) {
+                AlarmCoordinator.rearm(context);
+            }
+
+            // Tell the UI (coalesced with the service's ringing event)
+            AlarmEvents.post(context, AlarmEvents.FIRED, clusterId);
+        });
+    }
+
+    /**
+     * Warm-up alarm a few seconds before a cluster head: brings the process up and lets the
+     * service prepare the tone and notification, so the real fire only has to start them.
+     * The cursor, the window and the latency ring are left to the real fire.
+     */
+    private void warmUp(Context context, Intent intent) {
+        RequestCodeRegistry.removeWarmUp(context, intent.getIntExtra(AlarmArmer.EXTRA_SLOT, -1));
+
+        Intent serviceIntent = new Intent(context, AlarmSoundService.class);
+        serviceIntent.setAction(AlarmSoundService.ACTION_WARM_UP);
+        serviceIntent.putExtra(AlarmArmer.EXTRA_TONE_URI, intent.getStringExtra(AlarmArmer.EXTRA_TONE_URI));
+        serviceIntent.putExtra(AlarmArmer.EXTRA_CLUSTER_ID, intent.getStringExtra(AlarmArmer.EXTRA_CLUSTER_ID));
+        serviceIntent.putExtra(AlarmArmer.EXTRA_ALARM_INDEX, intent.getIntExtra(AlarmArmer.EXTRA_ALARM_INDEX, -1));
+        try {
+            // Plain start (no foreground): the exact alarm's temporary allowlist covers it
+            context.startService(serviceIntent);
+        } catch (IllegalStateException e) {
+            // Background start refused: the real fire simply takes the cold path
+            Log.w("AlarmReceiver", "Warm-up skipped: " + e.getMessage());
+        }
+    }
+
+    private static void forgetCode(Context context, int requestCode, long triggerAtMs) {
+        if (requestCode >= 0 && RequestCodeRegistry.triggerTimeOf(context, requestCode) == triggerAtMs) {
+            RequestCodeRegistry.remove(context, requestCode);
+        }
+    }
+
+    /** Moves the cursor past a fired member and re-arms; also used by in-process session fires. */
+    static void advanceCluster(Context context, String clusterId, int firedIndex) {
+        moveCursor(context, clusterId, firedIndex);
+        AlarmCoordinator.rearm(context);
+    }
+
+    /**
+     * Saves the cursor past a fired member, or rolls a finished recurring cluster forward. Fires
+     * of this process are handled on a pool, so the read and the write are done under one lock
+     * and the cursor never moves back.
+     */
+    private static synchronized void moveCursor(Context context, String clusterId, int firedIndex) {
+        if (clusterId == null) {
+            return;
+        }
+        AlarmState cluster = AlarmProfileStore.loadAll(context).get(clusterId);
+        if (cluster == null) {
+            return;
+        }
+        // Skip members that are no longer due (e.g. the device was off or this fire was very late)
+        long now = System.currentTimeMillis();
+        int next = Math.max(firedIndex + 1, cluster.plan().firstDueIndex(now));
+        if (next <= cluster.nextIndex) {
+            return; // A later member already moved it
+        }
+        if (next < cluster.fireTimes.length) {
+            AlarmProfileStore.saveNextIndex(context, cluster, next);
+        } else if (cluster.recurrence != null) {
+            // Last member: move to the next occurrence from the precomputed window, no rule scan
+            AlarmState rolled = ClusterScheduleEngine.rollForward(cluster, now, TimeZone.getDefault().getID());
+            AlarmProfileStore.save(context, rolled);
+            Log.d("AlarmReceiver", "Cluster '" + clusterId + "' finished, next occurrence at " + rolled.baseTimeMs);
+        } else {
+            AlarmProfileStore.saveNextIndex(context, cluster, next);
+            Log.d("AlarmReceiver", "Cluster '" + clusterId + "' finished.");
+        }
     }
 }
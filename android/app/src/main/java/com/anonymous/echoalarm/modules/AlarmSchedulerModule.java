@@ -1,179 +1,467 @@
 package com.anonymous.echoalarm.modules;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
-import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import com.anonymous.echoalarm.specs.NativeAlarmSchedulerSpec;
 
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TimeZone;
 
-public class AlarmSchedulerModule extends ReactContextBaseJavaModule {
+/**
+ * TurboModule "AlarmScheduler"; the typed spec lives in src/specs/NativeAlarmScheduler.js and
+ * codegen generates {@link NativeAlarmSchedulerSpec} from it.
+ */
+public class AlarmSchedulerModule extends NativeAlarmSchedulerSpec {
 
     private final ReactApplicationContext reactContext;
 
     public AlarmSchedulerModule(ReactApplicationContext reactContext) {
+        super(reactContext);
         this.reactContext = reactContext;
+        AlarmEvents.attach(reactContext);
+    }
+
+    @Override
+    public void invalidate() {
+        AlarmEvents.detach(reactContext);
+        super.invalidate();
+    }
+
+    /** NativeEventEmitter: los eventos AlarmStateChanged solo se emiten mientras haya oyentes en JS. */
+    @Override
+    public void addListener(String eventName) {
+        AlarmEvents.listenersChanged(1);
+    }
+
+    @Override
+    public void removeListeners(double count) {
+        AlarmEvents.listenersChanged(-(int) count);
     }
 
     @NonNull
     @Override
     public String getName() {
-        return "AlarmScheduler";
+        return NAME;
+    }
+
+    /** Síncrono (JSI): próxima alarma pendiente de cualquier clúster, en ms epoch, o -1. */
+    @Override
+    public double getNextFireTime() {
+        ClusterIndex index = ArmedWindowPlanner.buildIndex(AlarmProfileStore.loadAll(reactContext), System.currentTimeMillis());
+        return index.isEmpty() ? -1 : index.peekTime();
+    }
+
+    /** Síncrono (JSI): true si algún clúster guardado tiene alarmas pendientes. */
+    @Override
+    public boolean isActive() {
+        return !ArmedWindowPlanner.buildIndex(AlarmProfileStore.loadAll(reactContext), System.currentTimeMillis()).isEmpty();
     }
 
-    @ReactMethod
+    @Override
     public void setAlarmCluster(ReadableMap profileJSON) {
         Log.d("AlarmScheduler", "Recibiendo orden de activar clúster...");
 
-        String wakeTimeIso = profileJSON.getString("wakeTime");
-        int interval = profileJSON.getInt("interval");
-        int alarmCount = profileJSON.getInt("alarmCount");
-        ReadableArray tonePool = profileJSON.getArray("tonePool");
+        AlarmState state = stateFromProfile(profileJSON, AlarmProfileStore.loadAll(reactContext));
 
-        // Persistence
-        saveAlarmData(wakeTimeIso, interval, alarmCount, tonePool);
+        // Persistence (with the zone its wall times refer to, for TimeChangeReceiver)
+        AlarmProfileStore.save(reactContext, state);
+        AlarmSettings.setDeviceTimeZone(reactContext, TimeZone.getDefault().getID());
+        Log.d("AlarmScheduler", "Clúster '" + state.clusterId + "' guardado en el journal.");
 
-        // Schedule the tasks
-        scheduleAlarms(wakeTimeIso, interval, alarmCount, tonePool);
+        // Schedule the tasks: solo las más próximas de todos los clústeres
+        AlarmCoordinator.rearm(reactContext);
+
+        // Pre-flight en segundo plano: copia local de los tonos (y PCM pre-decodificado si se usa AudioTrack)
+        ToneResolver.prepareAsync(reactContext, Collections.singletonList(state));
     }
 
-    @ReactMethod
-    public void cancelAllAlarms() {
-        AlarmManager alarmManager = (AlarmManager) reactContext.getSystemService(Context.ALARM_SERVICE);
-        Intent intent = new Intent(reactContext, AlarmReceiver.class);
-
-        for (int i = 0; i < 50; i++) {
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    reactContext,
-                    i,
-                    intent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            if (alarmManager != null) {
-                alarmManager.cancel(pendingIntent);
+    /**
+     * Aplica un lote de cambios de clúster con un solo re-armado. Cada elemento es un perfil como
+     * el de setAlarmCluster, o {clusterId, cancel: true} para quitar ese clúster. Solo se emiten
+     * los set/cancel de AlarmManager que cambian algo; resuelve {clusters, operations}.
+     */
+    @Override
+    public void applyClusterChanges(ReadableArray changes, Promise promise) {
+        try {
+            Map<String, AlarmState> clusters = AlarmProfileStore.loadAll(reactContext);
+            Map<String, AlarmState> saved = new LinkedHashMap<>();
+
+            for (int i = 0; i < changes.size(); i++) {
+                ReadableMap change = Objects.requireNonNull(changes.getMap(i));
+                if (change.hasKey("cancel") && change.getBoolean("cancel")) {
+                    String clusterId = change.hasKey("clusterId") ? change.getString("clusterId") : AlarmState.DEFAULT_CLUSTER_ID;
+                    if (clusters.remove(clusterId) != null) {
+                        AlarmProfileStore.remove(reactContext, clusterId);
+                    }
+                    saved.remove(clusterId);
+                    continue;
+                }
+                AlarmState state = stateFromProfile(change, clusters);
+                clusters.put(state.clusterId, state);
+                AlarmProfileStore.save(reactContext, state);
+                saved.put(state.clusterId, state);
             }
+
+            AlarmSettings.setDeviceTimeZone(reactContext, TimeZone.getDefault().getID());
+            int operations = AlarmCoordinator.rearm(reactContext);
+            Log.d("AlarmScheduler", changes.size() + " cambios aplicados con " + operations + " operaciones.");
+
+            // Pre-flight de todos los pools guardados en una sola tarea
+            ToneResolver.prepareAsync(reactContext, saved.values());
+
+            WritableMap result = Arguments.createMap();
+            result.putInt("clusters", clusters.size());
+            result.putInt("operations", operations);
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e("AlarmScheduler", "Error aplicando cambios: " + e.getMessage());
+            promise.reject("E_APPLY", e.getMessage());
         }
-        Log.d("AlarmScheduler", "Todas las alarmas canceladas.");
     }
 
-    private void scheduleAlarms(String wakeTimeIso, int interval, int alarmCount, ReadableArray tonePool) {
-        AlarmManager alarmManager = (AlarmManager) reactContext.getSystemService(Context.ALARM_SERVICE);
+    @Override
+    public void cancelCluster(String clusterId) {
+        AlarmProfileStore.remove(reactContext, clusterId);
+        AlarmCoordinator.rearm(reactContext);
+        Log.d("AlarmScheduler", "Clúster '" + clusterId + "' cancelado.");
+    }
 
-        long triggerTimeMs = 0;
+    @Override
+    public void cancelAllAlarms() {
+        // Journal vaciado y códigos registrados cancelados bajo el mismo lock: sin el journal vacío
+        // BootReceiver, o un disparo en el proceso :alarm, volvería a armar un clúster desactivado
+        int cancelled = AlarmCoordinator.cancelAll(reactContext);
+        Log.d("AlarmScheduler", "Todas las alarmas canceladas (" + cancelled + ").");
+    }
 
+    private long parseWakeTime(String wakeTimeIso) {
         // --- CORRECCIÓN DE PARSEO ---
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 // Instant.parse es mucho más robusto para formatos UTC ("Z")
-                triggerTimeMs = Instant.parse(wakeTimeIso).toEpochMilli();
+                return ClusterScheduleEngine.parseWakeTime(wakeTimeIso);
             } else {
                 // Fallback para móviles muy viejos (opcional)
-                triggerTimeMs = System.currentTimeMillis() + 60000;
+                return System.currentTimeMillis() + 60000;
             }
         } catch (Exception e) {
             Log.e("AlarmScheduler", "Error parseando fecha: " + e.getMessage());
-            triggerTimeMs = System.currentTimeMillis() + 60000; // Solo si falla, usa el minuto
+            return System.currentTimeMillis() + 60000; // Solo si falla, usa el minuto
         }
+    }
 
-        for (int i = 0; i < alarmCount; i++) {
-            long currentTriggerTime = triggerTimeMs + ((long) i * interval * 60 * 1000);
+    /** Perfil de JS a estado, reutilizando el slot del clúster si ya existe en {@code clusters}. */
+    private AlarmState stateFromProfile(ReadableMap profileJSON, Map<String, AlarmState> clusters) {
+        String wakeTimeIso = profileJSON.getString("wakeTime");
+        int interval = profileJSON.getInt("interval");
+        int alarmCount = profileJSON.getInt("alarmCount");
+        ReadableArray tonePool = profileJSON.getArray("tonePool");
+        // Opcional: solo se registra la siguiente alarma y AlarmReceiver encadena el resto
+        boolean chainedMode = profileJSON.hasKey("chainedMode") && profileJSON.getBoolean("chainedMode");
+        // Opcional: varios clústeres con nombre (laborables, fin de semana, turnos...)
+        String clusterId = profileJSON.hasKey("clusterId") ? profileJSON.getString("clusterId") : AlarmState.DEFAULT_CLUSTER_ID;
+
+        long triggerTimeMs = parseWakeTime(wakeTimeIso);
+        int slot = AlarmProfileStore.slotFor(clusters, clusterId);
+
+        // Opcional: repetición (diaria, días de la semana, cada N días) en la zona horaria del perfil
+        RecurrenceRule recurrence = profileJSON.hasKey("recurrence")
+                ? parseRecurrence(profileJSON.getMap("recurrence"), triggerTimeMs) : null;
+        if (recurrence == null) {
+            return buildState(clusterId, slot, triggerTimeMs, interval, alarmCount, tonePool, chainedMode);
+        }
+        // La primera ocurrencia es la primera que cumple la regla desde wakeTime (y que no haya pasado ya)
+        long firstMs = ClusterScheduleEngine.firstOccurrence(recurrence, triggerTimeMs, System.currentTimeMillis(),
+                interval, alarmCount);
+        AlarmState state = buildState(clusterId, slot, firstMs, interval, alarmCount, tonePool, chainedMode);
+        state.recurrence = recurrence;
+        state.upcoming = OccurrenceWindow.fill(recurrence, firstMs);
+        return state;
+    }
 
-            String toneUri = "";
-            if (tonePool != null && tonePool.size() > 0) {
-                int toneIndex = i % tonePool.size();
-                toneUri = Objects.requireNonNull(tonePool.getMap(toneIndex)).getString("uri");
+    /**
+     * {type: 'daily' | 'weekdays' | 'everyNDays', days?, every?, timeZone?}; null si no es válida.
+     * Sin timeZone la regla sigue la zona del dispositivo (TimeChangeReceiver la mueve si cambia).
+     */
+    private RecurrenceRule parseRecurrence(ReadableMap map, long firstFireMs) {
+        if (map == null || !map.hasKey("type")) {
+            return null;
+        }
+        boolean explicitZone = map.hasKey("timeZone");
+        String timeZoneId = explicitZone ? map.getString("timeZone") : TimeZone.getDefault().getID();
+        String type = Objects.requireNonNull(map.getString("type"));
+        try {
+            RecurrenceRule rule;
+            switch (type) {
+                case "daily":
+                    rule = RecurrenceRule.daily(firstFireMs, timeZoneId);
+                    break;
+                case "weekdays": {
+                    ReadableArray days = map.hasKey("days") ? map.getArray("days") : null;
+                    int mask = 0;
+                    for (int i = 0; days != null && i < days.size(); i++) {
+                        mask |= 1 << days.getInt(i);
+                    }
+                    rule = RecurrenceRule.weekly(mask, firstFireMs, timeZoneId);
+                    break;
+                }
+                case "everyNDays":
+                    rule = RecurrenceRule.everyNDays(map.hasKey("every") ? map.getInt("every") : 1, firstFireMs, timeZoneId);
+                    break;
+                default:
+                    Log.e("AlarmScheduler", "Tipo de repetición desconocido: " + type);
+                    return null;
             }
+            return explicitZone ? rule : rule.followingDevice();
+        } catch (IllegalArgumentException e) {
+            Log.e("AlarmScheduler", "Repetición no válida: " + e.getMessage());
+            return null;
+        }
+    }
 
-            Intent intent = new Intent(reactContext, AlarmReceiver.class);
-            intent.putExtra("TONE_URI", toneUri);
-
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    reactContext,
-                    i,
-                    intent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            if (alarmManager != null) {
-                alarmManager.setExactAndAllowWhileIdle(
-                        AlarmManager.RTC_WAKEUP,
-                        currentTriggerTime,
-                        pendingIntent
-                );
-            }
+    private AlarmState buildState(String clusterId, int slot, long triggerTimeMs, int interval, int alarmCount, ReadableArray tonePool, boolean chainedMode) {
+        int toneCount = tonePool != null ? tonePool.size() : 0;
+        String[] toneUris = new String[toneCount];
+        String[] toneNames = new String[toneCount];
+        for (int t = 0; t < toneCount; t++) {
+            ReadableMap toneMap = Objects.requireNonNull(tonePool.getMap(t));
+            toneUris[t] = toneMap.hasKey("uri") ? toneMap.getString("uri") : "";
+            toneNames[t] = toneMap.hasKey("name") ? toneMap.getString("name") : "";
         }
 
+        ClusterPlan plan = ClusterScheduleEngine.buildPlan(triggerTimeMs, interval, alarmCount, toneCount);
+        AlarmState state = AlarmState.of(clusterId, slot, plan, triggerTimeMs, interval, alarmCount, toneUris, toneNames, chainedMode);
+        // Un plan nuevo no hace sonar los miembros que ya pasaron, aunque sigan dentro del margen de DUE_GRACE_MS
+        state.nextIndex = plan.firstPendingIndex(System.currentTimeMillis());
+        return state;
     }
 
-    private void saveAlarmData(String wakeTimeIso, int interval, int alarmCount, ReadableArray tonePool) {
-        SharedPreferences sharedPreferences = reactContext.getSharedPreferences("EchoAlarmPrefs", Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
+    @Override
+    public void stopCurrentSound() {
+        try {
+            // Creamos un intent apuntando AL MISMO servicio que está sonando
+            Intent intent = new Intent(reactContext, AlarmSoundService.class);
 
-        editor.putString("wakeTime", wakeTimeIso);
-        editor.putInt("interval", interval);
-        editor.putInt("alarmCount", alarmCount);
+            // stopService le dice a Android: "Mata este servicio ya"
+            reactContext.stopService(intent);
+            AlarmHistory.dismissed(reactContext, AlarmHistory.DISMISS_APP);
 
-        // --- MEJORA: Serialización segura con org.json ---
-        JSONArray jsonArray = new JSONArray();
+            Log.d("AlarmScheduler", "Orden de parar sonido enviada desde JS");
+        } catch (Exception e) {
+            Log.e("AlarmScheduler", "Error al intentar parar el sonido: " + e.getMessage());
+        }
+    }
 
-        if (tonePool != null) {
-            for (int i = 0; i < tonePool.size(); i++) {
-                try {
-                    ReadableMap toneMap = tonePool.getMap(i);
-                    JSONObject jsonObject = new JSONObject();
+    /**
+     * Latencias de disparo (ms desde la hora programada) por etapa: receiver, service, audio,
+     * screen, wakeRelease y warmed, cada una con p50, p95, max y count sobre los últimos disparos
+     * registrados, más wakeLockHeld (ms que se mantuvo el wake lock de cada disparo) y la
+     * latencia de audio separada en audioWarm / audioCold según hubo warm-up o no.
+     */
+    @Override
+    public void getFireLatencyStats(Promise promise) {
+        FireLatencyRing ring = FireLatencyLog.ring(reactContext);
+        if (ring == null) {
+            promise.reject("E_LATENCY", "Ring de latencias no disponible");
+            return;
+        }
+        WritableMap result = Arguments.createMap();
+        for (int stage = 0; stage < FireLatencyRing.STAGE_COUNT; stage++) {
+            result.putMap(FireLatencyRing.STAGE_NAMES[stage], latencyStats(ring.latencies(stage)));
+        }
+        // Tiempo que se mantuvo el wake lock de cada disparo (receiver -> liberación)
+        result.putMap("wakeLockHeld", latencyStats(ring.spans(FireLatencyRing.STAGE_RECEIVER, FireLatencyRing.STAGE_WAKE_RELEASE)));
+        // Latencia de audio de los disparos con warm-up previo frente a los disparos en frío
+        result.putMap("audioWarm", latencyStats(ring.spansWhere(FireLatencyRing.SCHEDULED,
+                FireLatencyRing.STAGE_AUDIO, FireLatencyRing.STAGE_WARMED, true)));
+        result.putMap("audioCold", latencyStats(ring.spansWhere(FireLatencyRing.SCHEDULED,
+                FireLatencyRing.STAGE_AUDIO, FireLatencyRing.STAGE_WARMED, false)));
+        promise.resolve(result);
+    }
 
-                    // Guardamos la URI de forma segura
-                    if (toneMap != null && toneMap.hasKey("uri")) {
-                        jsonObject.put("uri", toneMap.getString("uri"));
-                    }
+    private static WritableMap latencyStats(long[] sorted) {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("p50", FireLatencyRing.percentile(sorted, 50));
+        stats.putDouble("p95", FireLatencyRing.percentile(sorted, 95));
+        stats.putDouble("max", sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+        stats.putInt("count", sorted.length);
+        return stats;
+    }
 
+    /** Analiza en segundo plano (duración, nivel, códec, decodificable) los tonos del pool. */
+    @Override
+    public void analyzeTones(ReadableArray uris) {
+        List<String> toneUris = new ArrayList<>(uris.size());
+        for (int i = 0; i < uris.size(); i++) {
+            toneUris.add(uris.getString(i));
+        }
+        ToneAnalyzer.analyze(reactContext, toneUris);
+    }
 
-                    if (toneMap != null && toneMap.hasKey("name")) {
-                        jsonObject.put("name", toneMap.getString("name"));
-                    }
+    /** Página del último pool analizado: {total, items}. */
+    @Override
+    public void getToneAnalysis(double offset, double limit, Promise promise) {
+        WritableArray items = Arguments.createArray();
+        for (ToneAnalyzer.Result result : ToneAnalyzer.page((int) offset, (int) limit)) {
+            WritableMap item = Arguments.createMap();
+            item.putString("uri", result.uri);
+            item.putString("status", result.done ? "done" : "pending");
+            if (result.done) {
+                item.putDouble("durationMs", result.durationMs);
+                item.putDouble("peak", result.peak);
+                item.putDouble("rms", result.rms);
+                item.putString("codec", result.codec);
+                item.putBoolean("decodesCleanly", result.decodesCleanly);
+                item.putBoolean("silent", result.isSilent());
+                item.putString("error", result.error);
+            }
+            items.pushMap(item);
+        }
+        WritableMap page = Arguments.createMap();
+        page.putInt("total", ToneAnalyzer.requestedCount());
+        page.putArray("items", items);
+        promise.resolve(page);
+    }
 
-                    jsonArray.put(jsonObject);
-                } catch (Exception e) {
-                    Log.e("AlarmScheduler", "Error al guardar tono JSON: " + e.getMessage());
-                }
+    /**
+     * Motor de reproducción: "audiotrack" (PCM sobre AudioTrack pre-creado) o "mediaplayer".
+     * Se aplica la próxima vez que arranque AlarmSoundService.
+     */
+    @Override
+    public void setPlaybackEngine(String engine) {
+        AlarmSettings.setPlaybackEngine(reactContext, engine);
+        Log.d("AlarmScheduler", "Motor de reproducción: " + AlarmSettings.playbackEngine(reactContext));
+
+        if (AlarmSettings.ENGINE_AUDIO_TRACK.equals(AlarmSettings.playbackEngine(reactContext))) {
+            // Una sola tarea con los tonos de todos los clústeres
+            List<String> toneUris = new ArrayList<>();
+            for (AlarmState state : AlarmProfileStore.loadAll(reactContext).values()) {
+                toneUris.addAll(Arrays.asList(state.toneUris));
             }
+            ToneDecodeCache.prefetch(reactContext, toneUris.toArray(new String[0]));
         }
-        // Guardamos el array convertido a String de forma segura
-        editor.putString("tonePool", jsonArray.toString());
+    }
 
-        editor.putBoolean("isAlarmActive", true);
-        editor.apply();
+    /**
+     * Segundos de warm-up antes de la cabeza de cada clúster (0 lo desactiva): se arranca el
+     * proceso, se prepara el reproductor y se construye la notificación antes de la hora.
+     */
+    @Override
+    public void setWarmUpSeconds(double seconds) {
+        AlarmSettings.setWarmUpSeconds(reactContext, (int) seconds);
+        int operations = AlarmCoordinator.rearm(reactContext);
+        Log.d("AlarmScheduler", "Warm-up: " + AlarmSettings.warmUpSeconds(reactContext) + " s (" + operations + " operaciones).");
+    }
 
-        Log.d("AlarmScheduler", "Datos guardados en SharedPreferences para reinicio.");
+    /** Minutos que pospone el botón POSPONER (notificación y pantalla de alarma). */
+    @Override
+    public void setSnoozeMinutes(double minutes) {
+        AlarmSettings.setSnoozeMinutes(reactContext, (int) minutes);
     }
 
-    @ReactMethod
-    public void stopCurrentSound() {
+    /**
+     * Modo sesión (0 lo desactiva): tras un disparo, AlarmSoundService sigue en primer plano y
+     * dispara él mismo el siguiente miembro del clúster si llega en menos de estos segundos, sin
+     * otro despertar de AlarmManager (que se queda armado como red de seguridad).
+     */
+    @Override
+    public void setSessionMaxGapSeconds(double seconds) {
+        AlarmSettings.setSessionMaxGapSeconds(reactContext, (int) seconds);
+        Log.d("AlarmScheduler", "Sesión de clúster: hasta " + AlarmSettings.sessionMaxGapSeconds(reactContext) + " s entre miembros.");
+    }
+
+    /**
+     * Resumen del historial desde sinceMs (p. ej. la noche anterior): armed, fired, snoozed,
+     * dismissed (despertares terminados), failures, sleptThrough, firstFireAt, lastDismissAt
+     * (-1 si no hubo) y maxLatenessMs.
+     */
+    @Override
+    public void getHistorySummary(double sinceMs, Promise promise) {
         try {
-            // Creamos un intent apuntando AL MISMO servicio que está sonando
-            Intent intent = new Intent(reactContext, AlarmSoundService.class);
+            AlarmHistoryStats.Summary summary = AlarmHistoryStats.summary(
+                    AlarmHistory.log(reactContext), (long) sinceMs, System.currentTimeMillis());
+            WritableMap result = Arguments.createMap();
+            result.putInt("armed", summary.armed);
+            result.putInt("fired", summary.fired);
+            result.putInt("snoozed", summary.snoozed);
+            result.putInt("dismissed", summary.dismissed);
+            result.putInt("failures", summary.failures);
+            result.putInt("sleptThrough", summary.sleptThrough);
+            result.putDouble("firstFireAt", summary.firstFireAtMs);
+            result.putDouble("lastDismissAt", summary.lastDismissAtMs);
+            result.putDouble("maxLatenessMs", summary.maxLatenessMs);
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject("E_HISTORY", e.getMessage());
+        }
+    }
 
-            // stopService le dice a Android: "Mata este servicio ya"
-            reactContext.stopService(intent);
+    /**
+     * Tiempo hasta apagar la alarma (desde el primer disparo del despertar) por semana local,
+     * la más reciente primero: {weeks: [{weekStart, p50, p90, max, count, fires}]}.
+     */
+    @Override
+    public void getDismissStatsByWeek(double weeks, Promise promise) {
+        try {
+            WritableArray items = Arguments.createArray();
+            for (AlarmHistoryStats.Week week : AlarmHistoryStats.dismissByWeek(AlarmHistory.log(reactContext),
+                    (int) weeks, System.currentTimeMillis(), TimeZone.getDefault().getID())) {
+                long[] sorted = week.dismissMs;
+                WritableMap item = Arguments.createMap();
+                item.putDouble("weekStart", week.startMs);
+                item.putDouble("p50", FireLatencyRing.percentile(sorted, 50));
+                item.putDouble("p90", FireLatencyRing.percentile(sorted, 90));
+                item.putDouble("max", sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+                item.putInt("count", sorted.length);
+                item.putInt("fires", week.fires);
+                items.pushMap(item);
+            }
+            WritableMap result = Arguments.createMap();
+            result.putArray("weeks", items);
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject("E_HISTORY", e.getMessage());
+        }
+    }
 
-            Log.d("AlarmScheduler", "Orden de parar sonido enviada desde JS");
+    /** Tonos con más disparos sin respuesta: {tones: [{uri, fires, answered, sleptThrough}]}. */
+    @Override
+    public void getSleptThroughTones(double limit, Promise promise) {
+        try {
+            AlarmHistoryLog log = AlarmHistory.log(reactContext);
+            WritableArray items = Arguments.createArray();
+            for (AlarmHistoryStats.ToneCount tone : AlarmHistoryStats.sleptThrough(log, (int) limit,
+                    System.currentTimeMillis())) {
+                WritableMap item = Arguments.createMap();
+                item.putString("uri", log.toneOf(tone.toneHash));
+                item.putInt("fires", tone.fires);
+                item.putInt("answered", tone.answered);
+                item.putInt("sleptThrough", tone.sleptThrough);
+                items.pushMap(item);
+            }
+            WritableMap result = Arguments.createMap();
+            result.putArray("tones", items);
+            promise.resolve(result);
         } catch (Exception e) {
-            Log.e("AlarmScheduler", "Error al intentar parar el sonido: " + e.getMessage());
+            promise.reject("E_HISTORY", e.getMessage());
         }
     }
 
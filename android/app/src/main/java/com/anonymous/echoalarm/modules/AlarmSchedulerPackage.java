@@ -3,28 +3,41 @@ package com.anonymous.echoalarm.modules;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
-public class AlarmSchedulerPackage implements ReactPackage {
+public class AlarmSchedulerPackage extends BaseReactPackage {
 
-    @NonNull
+    @Nullable
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public NativeModule getModule(@NonNull String name, @NonNull ReactApplicationContext reactContext) {
+        // Registra el módulo que acabamos de crear (TurboModule)
+        if (AlarmSchedulerModule.NAME.equals(name)) {
+            return new AlarmSchedulerModule(reactContext);
+        }
+        return null;
     }
 
+    @NonNull
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        // Registra el módulo que acabamos de crear
-        modules.add(new AlarmSchedulerModule(reactContext));
-        return modules;
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> modules = new HashMap<>();
+            modules.put(AlarmSchedulerModule.NAME, new ReactModuleInfo(
+                    AlarmSchedulerModule.NAME,
+                    AlarmSchedulerModule.class.getName(),
+                    false, // canOverrideExistingModule
+                    false, // needsEagerInit
+                    false, // isCxxModule
+                    true   // isTurboModule
+            ));
+            return modules;
+        };
     }
 }
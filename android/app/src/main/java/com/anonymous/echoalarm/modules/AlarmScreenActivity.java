@@ -3,9 +3,9 @@ package com.anonymous.echoalarm.modules;
 import android.annotation.SuppressLint;
 import android.app.KeyguardManager;
 import android.content.Context;
-import android.content.Intent;
 import android.os.Build;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.Button;
 
@@ -38,6 +38,18 @@ public class AlarmScreenActivity extends AppCompatActivity {
 
         setContentView(com.anonymous.echoalarm.R.layout.activity_alarm_screen);
 
+        // Latency: mark the first frame of the alarm screen for this fire
+        final int latencySlot = getIntent().getIntExtra(FireLatencyLog.EXTRA_LATENCY_SLOT, -1);
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                FireLatencyLog.mark(AlarmScreenActivity.this, latencySlot, FireLatencyRing.STAGE_SCREEN);
+                return true;
+            }
+        });
+
         //Found the button
         Button stopButton = findViewById(R.id.stop_alarm_button);
 
@@ -45,18 +57,41 @@ public class AlarmScreenActivity extends AppCompatActivity {
         stopButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Intent serviceIntent = new Intent(AlarmScreenActivity.this, AlarmSoundService.class);
-                stopService(serviceIntent);
+                AlarmHistory.dismissed(AlarmScreenActivity.this, AlarmHistory.DISMISS_SCREEN);
+                AlarmSoundService.dismiss(AlarmScreenActivity.this);
                 finish(); // Close the activity and return
             }
         });
+
+        // Snooze and stop-cluster: handled natively by AlarmActionReceiver on the stored plan
+        final String clusterId = getIntent().getStringExtra(AlarmArmer.EXTRA_CLUSTER_ID);
+        final int alarmIndex = getIntent().getIntExtra(AlarmArmer.EXTRA_ALARM_INDEX, -1);
+        final String toneUri = getIntent().getStringExtra(AlarmArmer.EXTRA_TONE_URI);
+        Button snoozeButton = findViewById(R.id.snooze_alarm_button);
+        Button stopClusterButton = findViewById(R.id.stop_cluster_button);
+        if (clusterId == null) {
+            snoozeButton.setVisibility(View.GONE);
+            stopClusterButton.setVisibility(View.GONE);
+            return;
+        }
+        snoozeButton.setText("POSPONER " + AlarmSettings.snoozeMinutes(this) + " MIN");
+        snoozeButton.setOnClickListener(v -> {
+            sendBroadcast(AlarmActionReceiver.intent(this, AlarmActionReceiver.ACTION_SNOOZE,
+                    clusterId, alarmIndex, toneUri, AlarmHistory.DISMISS_SCREEN));
+            finish();
+        });
+        stopClusterButton.setOnClickListener(v -> {
+            sendBroadcast(AlarmActionReceiver.intent(this, AlarmActionReceiver.ACTION_STOP_CLUSTER,
+                    clusterId, alarmIndex, toneUri, AlarmHistory.DISMISS_SCREEN));
+            finish();
+        });
     }
     
     @Override
     public void onBackPressed() {
-        // 1. Kill the Sound Service(MediaPlayer)
-        Intent stopIntent = new Intent(this, AlarmSoundService.class);
-        stopService(stopIntent);
+        // 1. Stop the sound (a cluster session keeps the service up for its next member)
+        AlarmHistory.dismissed(this, AlarmHistory.DISMISS_SCREEN);
+        AlarmSoundService.dismiss(this);
 
         super.onBackPressed();
     }
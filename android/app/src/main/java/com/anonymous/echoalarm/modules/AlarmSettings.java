@@ -0,0 +1,112 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Device-wide alarm options that are not part of a cluster profile ("EchoAlarmSettings"), in a
+ * {@link SharedStateFile}: JS sets them in the main process, the fire path reads them in the
+ * alarm process.
+ */
+final class AlarmSettings {
+
+    private static final String STATE_NAME = "EchoAlarmSettings";
+
+    static final String ENGINE_MEDIA_PLAYER = "mediaplayer";
+    static final String ENGINE_AUDIO_TRACK = "audiotrack";
+
+    private static final String KEY_PLAYBACK_ENGINE = "playbackEngine";
+    private static final String KEY_WARM_UP_SECONDS = "warmUpSeconds";
+    private static final String KEY_DEVICE_TIME_ZONE = "deviceTimeZone";
+    private static final String KEY_SESSION_MAX_GAP_SECONDS = "sessionMaxGapSeconds";
+    private static final String KEY_SNOOZE_MINUTES = "snoozeMinutes";
+
+    /** Upper bound for the warm-up lead; longer leads only keep a prepared player around. */
+    static final int MAX_WARM_UP_SECONDS = 120;
+
+    /** Upper bound for the session gap; longer gaps are cheaper as separate AlarmManager wake-ups. */
+    static final int MAX_SESSION_GAP_SECONDS = 600;
+
+    static final int DEFAULT_SNOOZE_MINUTES = 5;
+    static final int MAX_SNOOZE_MINUTES = 60;
+
+    private AlarmSettings() {
+    }
+
+    static String playbackEngine(Context context) {
+        return values(context).getString(KEY_PLAYBACK_ENGINE, ENGINE_MEDIA_PLAYER);
+    }
+
+    static void setPlaybackEngine(Context context, String engine) {
+        String value = ENGINE_AUDIO_TRACK.equals(engine) ? ENGINE_AUDIO_TRACK : ENGINE_MEDIA_PLAYER;
+        edit(context, editor -> editor.putString(KEY_PLAYBACK_ENGINE, value));
+    }
+
+    /** Seconds before each cluster head to warm up the player; 0 disables warm-up. */
+    static int warmUpSeconds(Context context) {
+        return values(context).getInt(KEY_WARM_UP_SECONDS, 0);
+    }
+
+    static void setWarmUpSeconds(Context context, int seconds) {
+        int value = Math.max(0, Math.min(MAX_WARM_UP_SECONDS, seconds));
+        edit(context, editor -> editor.putInt(KEY_WARM_UP_SECONDS, value));
+    }
+
+    /**
+     * Longest gap to the next member that a cluster session bridges in-process (AlarmSoundService
+     * stays in the foreground and fires it from a timer); 0 disables sessions.
+     */
+    static int sessionMaxGapSeconds(Context context) {
+        return values(context).getInt(KEY_SESSION_MAX_GAP_SECONDS, 0);
+    }
+
+    static void setSessionMaxGapSeconds(Context context, int seconds) {
+        int value = Math.max(0, Math.min(MAX_SESSION_GAP_SECONDS, seconds));
+        edit(context, editor -> editor.putInt(KEY_SESSION_MAX_GAP_SECONDS, value));
+    }
+
+    /** Minutes a snooze (notification or alarm screen) puts the ringing member off. */
+    static int snoozeMinutes(Context context) {
+        return values(context).getInt(KEY_SNOOZE_MINUTES, DEFAULT_SNOOZE_MINUTES);
+    }
+
+    static void setSnoozeMinutes(Context context, int minutes) {
+        int value = Math.max(1, Math.min(MAX_SNOOZE_MINUTES, minutes));
+        edit(context, editor -> editor.putInt(KEY_SNOOZE_MINUTES, value));
+    }
+
+    /** Zone the stored clusters' wall times refer to; null until a cluster is first set. */
+    static String deviceTimeZone(Context context) {
+        return values(context).getString(KEY_DEVICE_TIME_ZONE, null);
+    }
+
+    static void setDeviceTimeZone(Context context, String timeZoneId) {
+        if (!timeZoneId.equals(deviceTimeZone(context))) {
+            edit(context, editor -> editor.putString(KEY_DEVICE_TIME_ZONE, timeZoneId));
+        }
+    }
+
+    private static SharedStateFile.Values values(Context context) {
+        try {
+            return state(context).read();
+        } catch (IOException e) {
+            Log.e("AlarmSettings", "Error leyendo los ajustes: " + e.getMessage());
+            return SharedStateFile.EMPTY;
+        }
+    }
+
+    private static void edit(Context context, Consumer<SharedStateFile.Editor> edit) {
+        try {
+            state(context).edit(edit);
+        } catch (IOException e) {
+            Log.e("AlarmSettings", "Error guardando los ajustes: " + e.getMessage());
+        }
+    }
+
+    private static SharedStateFile state(Context context) {
+        return AlarmProcess.sharedState(context, STATE_NAME, true);
+    }
+}
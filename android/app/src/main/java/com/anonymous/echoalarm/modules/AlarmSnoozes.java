@@ -0,0 +1,144 @@
+package com.anonymous.echoalarm.modules;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Pending snoozes ("EchoAlarmSnoozes"), at most one per cluster slot: the member that was
+ * snoozed, its tone and when it rings again. Each one is armed as its own AlarmReceiver alarm
+ * ({@link AlarmArmer#armSnooze}), outside the armed window and the request-code registry, so
+ * re-arming the window never touches it. Kept in their own {@link SharedStateFile} so a reboot,
+ * which clears the registry, can arm them again ({@link #restore}).
+ */
+final class AlarmSnoozes {
+
+    private static final String STATE_NAME = "EchoAlarmSnoozes";
+    private static final String AT_PREFIX = "at_";
+    private static final String CLUSTER_PREFIX = "cluster_";
+    private static final String MEMBER_PREFIX = "member_";
+    private static final String TONE_PREFIX = "tone_";
+
+    private AlarmSnoozes() {
+    }
+
+    /** Rings {@code alarmIndex} of {@code cluster} again at {@code atMs}, replacing the slot's pending snooze. */
+    static boolean snooze(Context context, AlarmState cluster, int alarmIndex, String toneUri, long atMs) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (!AlarmArmer.armSnooze(context, alarmManager, cluster.slot, cluster.clusterId, alarmIndex, toneUri, atMs)) {
+            return false;
+        }
+        edit(context, editor -> editor
+                .putLong(AT_PREFIX + cluster.slot, atMs)
+                .putString(CLUSTER_PREFIX + cluster.slot, cluster.clusterId)
+                .putInt(MEMBER_PREFIX + cluster.slot, alarmIndex)
+                .putString(TONE_PREFIX + cluster.slot, toneUri));
+        return true;
+    }
+
+    /** The snooze of a slot fired: forget it. */
+    static void fired(Context context, int slot) {
+        edit(context, editor -> forget(editor, slot));
+    }
+
+    static void cancel(Context context, int slot) {
+        if (values(context).contains(AT_PREFIX + slot)) {
+            AlarmArmer.cancelSnooze(context, (AlarmManager) context.getSystemService(Context.ALARM_SERVICE), slot);
+            fired(context, slot);
+        }
+    }
+
+    /**
+     * Cancels snoozes whose cluster is gone or now sits in another slot (cancelled or replaced).
+     *
+     * @return number of AlarmManager cancel calls issued
+     */
+    static int dropOrphans(Context context, AlarmManager alarmManager, Map<String, AlarmState> clusters) {
+        int[] operations = {0};
+        edit(context, editor -> {
+            for (int slot : slots(editor)) {
+                AlarmState cluster = clusters.get(editor.getString(CLUSTER_PREFIX + slot, ""));
+                if (cluster == null || cluster.slot != slot) {
+                    AlarmArmer.cancelSnooze(context, alarmManager, slot);
+                    forget(editor, slot);
+                    operations[0]++;
+                }
+            }
+        });
+        return operations[0];
+    }
+
+    static int cancelAll(Context context, AlarmManager alarmManager) {
+        int[] operations = {0};
+        edit(context, editor -> {
+            for (int slot : slots(editor)) {
+                AlarmArmer.cancelSnooze(context, alarmManager, slot);
+                operations[0]++;
+            }
+            editor.clear();
+        });
+        return operations[0];
+    }
+
+    /** After a reboot: arms the snoozes still ahead again and drops the ones that passed. */
+    static void restore(Context context, long nowMs) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        edit(context, editor -> {
+            for (int slot : slots(editor)) {
+                long atMs = editor.getLong(AT_PREFIX + slot, 0L);
+                if (atMs <= nowMs || !AlarmArmer.armSnooze(context, alarmManager, slot,
+                        editor.getString(CLUSTER_PREFIX + slot, null), editor.getInt(MEMBER_PREFIX + slot, -1),
+                        editor.getString(TONE_PREFIX + slot, ""), atMs)) {
+                    Log.d("AlarmSnoozes", "Snooze del slot " + slot + " descartado tras reinicio.");
+                    forget(editor, slot);
+                }
+            }
+        });
+    }
+
+    private static int[] slots(SharedStateFile.Values values) {
+        Set<String> keys = values.keys();
+        int[] slots = new int[keys.size()];
+        int count = 0;
+        for (String key : keys) {
+            if (key.startsWith(AT_PREFIX)) {
+                slots[count++] = Integer.parseInt(key.substring(AT_PREFIX.length()));
+            }
+        }
+        return Arrays.copyOf(slots, count);
+    }
+
+    private static SharedStateFile.Editor forget(SharedStateFile.Editor editor, int slot) {
+        return editor.remove(AT_PREFIX + slot)
+                .remove(CLUSTER_PREFIX + slot)
+                .remove(MEMBER_PREFIX + slot)
+                .remove(TONE_PREFIX + slot);
+    }
+
+    private static SharedStateFile.Values values(Context context) {
+        try {
+            return state(context).read();
+        } catch (IOException e) {
+            Log.e("AlarmSnoozes", "Error leyendo los snoozes: " + e.getMessage());
+            return SharedStateFile.EMPTY;
+        }
+    }
+
+    private static void edit(Context context, Consumer<SharedStateFile.Editor> edit) {
+        try {
+            state(context).edit(edit);
+        } catch (IOException e) {
+            Log.e("AlarmSnoozes", "Error guardando los snoozes: " + e.getMessage());
+        }
+    }
+
+    private static SharedStateFile state(Context context) {
+        return AlarmProcess.sharedState(context, STATE_NAME, true);
+    }
+}
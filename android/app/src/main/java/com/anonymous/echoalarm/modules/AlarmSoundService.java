@@ -6,56 +6,430 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
-import android.media.AudioAttributes;
-import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
 
 import androidx.core.app.NotificationCompat;
 
 import com.anonymous.echoalarm.R;
 
+/**
+ * Foreground service that plays a fired alarm until it is dismissed.
+ *
+ * Cluster sessions ({@link AlarmSettings#sessionMaxGapSeconds} &gt; 0): after a fire the service
+ * stays in the foreground and plays the next member of the same cluster itself, from a Handler
+ * timer under a session wake lock, as long as that member is due within the configured gap. A
+ * dense cluster then costs one AlarmManager wake-up and one cold start instead of one per
+ * member. Dismissing a member only silences it while the session waits for the next one. The
+ * members stay armed in AlarmManager as a safety net: if the process dies, the regular path
+ * fires them; if the session got there first, AlarmReceiver drops the duplicate
+ * ({@link #firedInSession}). One session runs at a time, for the cluster that fired last.
+ */
 public class AlarmSoundService extends Service {
 
-    private MediaPlayer mediaPlayer;
-    private static final String ACTION_DISMISS = "DISMISS_ALARM";
+    private TonePlayerPair players;
+    private PcmAlarmPlayer pcmPlayer;
+    static final String ACTION_DISMISS = "DISMISS_ALARM";
+    static final String ACTION_WARM_UP = "WARM_UP_ALARM";
+    // Set on the notification's stop action, so only that path records a DISMISS_NOTIFICATION
+    private static final String EXTRA_FROM_NOTIFICATION = "FROM_NOTIFICATION";
+    private static final String CHANNEL_ID = "CLUSTER_ALARM_CHANNEL";
+    // A warm-up with no fire behind it (cluster cancelled or moved) stops after this grace period
+    private static final long WARM_UP_GRACE_MS = 60000;
+    // The session wake lock outlives the expected next fire by this much, in case the timer is late
+    private static final long SESSION_LOCK_MARGIN_MS = 30000;
+
+    // Last member fired in-process by a session (cluster and scheduled time), guarded by the class lock
+    private static String sessionFiredClusterId;
+    private static long sessionFiredAtMs;
+    // A session is waiting for its next member (read by dismiss() from other components)
+    private static volatile boolean sessionPending;
+
+    // Time-to-first-audio instrumentation (elapsedRealtime at onStartCommand)
+    private long startCommandAtMs;
+    // FireLatencyRing record of the fire being played, -1 if unknown
+    private volatile int latencySlot = -1;
+
+    // Warm-up state: tone the player was prepared for and notification built ahead of the fire
+    private String warmToneUri;
+    private String warmClusterId;
+    private int warmAlarmIndex = -1;
+    private Notification warmNotification;
+    private boolean firing;
+    // Bumped whenever the pending session fire is dropped; stale timer callbacks compare against it
+    private int sessionGeneration;
+    private long sessionNextAtMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable warmUpExpiry = () -> {
+        if (!firing && !sessionPending) {
+            Log.d("AlarmSoundService", "Warm-up expired without a fire.");
+            stopSelf();
+        }
+    };
     
     @Override
     public void onCreate() {
         super.onCreate();
 
-        // 1. Initialize media player
-        mediaPlayer = new MediaPlayer();
-
-        mediaPlayer.setLooping(true);
-
-        // 2. Configure AudioAttributes
-        mediaPlayer.setAudioAttributes(
-                new AudioAttributes.Builder()
-                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                        .setUsage(AudioAttributes.USAGE_ALARM)
-                        .build()
-        );
+        // Optional low-latency engine: the AudioTrack is created here, before the first fire
+        if (AlarmSettings.ENGINE_AUDIO_TRACK.equals(AlarmSettings.playbackEngine(this))) {
+            try {
+                pcmPlayer = new PcmAlarmPlayer();
+                return;
+            } catch (Exception e) {
+                Log.e("AlarmSoundService", "AudioTrack engine unavailable, using MediaPlayer: " + e.getMessage());
+                pcmPlayer = null;
+            }
+        }
+        // MediaPlayer engine: two players, so a new tone hands off from the ringing one without a gap
+        players = new TonePlayerPair(this);
     }
 
-    @SuppressLint({"ForegroundServiceType", "NotificationTrampoline"})
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
 
         if (intent != null && ACTION_DISMISS.equals(intent.getAction())) {
             Log.d("AlarmSoundService", "Stop media media player.");
+            if (firing && intent.getBooleanExtra(EXTRA_FROM_NOTIFICATION, false)) {
+                AlarmHistory.dismissed(this, AlarmHistory.DISMISS_NOTIFICATION);
+            }
+            AlarmWakeLock.release(this, "dismiss");
+            if (firing && sessionPending) {
+                silence(); // The session keeps the service up for the next member
+                return START_NOT_STICKY;
+            }
             stopSelf(); // Esto mata el servicio y para la música
             return START_NOT_STICKY;
         }
 
-        // ------------------ 1. CHANNEL CREATION ------------------
-        final String CHANNEL_ID = "CLUSTER_ALARM_CHANNEL";
+        if (intent != null && ACTION_WARM_UP.equals(intent.getAction())) {
+            warmUp(intent.getStringExtra(AlarmArmer.EXTRA_TONE_URI), intent.getStringExtra(AlarmArmer.EXTRA_CLUSTER_ID),
+                    intent.getIntExtra(AlarmArmer.EXTRA_ALARM_INDEX, -1));
+            return START_NOT_STICKY;
+        }
+
+        // A fire from AlarmManager replaces any session fire still pending
+        sessionGeneration++;
+        int latencySlot = intent != null ? intent.getIntExtra(FireLatencyLog.EXTRA_LATENCY_SLOT, -1) : -1;
+        String clusterId = intent != null ? intent.getStringExtra(AlarmArmer.EXTRA_CLUSTER_ID) : null;
+        int alarmIndex = intent != null ? intent.getIntExtra(AlarmArmer.EXTRA_ALARM_INDEX, -1) : -1;
+        ring(clusterId, alarmIndex, intent != null ? intent.getStringExtra(AlarmArmer.EXTRA_TONE_URI) : null, latencySlot);
+        continueSession(clusterId, alarmIndex);
+
+        // START_STICKY: Tells Android that, if the system kills the service, try to restart it
+        return START_STICKY;
+    }
+
+    /**
+     * Starts sounding a member: foreground notification, alarm screen and playback, reusing what
+     * a warm-up prepared for the same tone.
+     */
+    @SuppressLint({"ForegroundServiceType", "NotificationTrampoline"})
+    private void ring(String clusterId, int alarmIndex, String toneUriString, int latencySlot) {
+        firing = true;
+        AlarmEvents.postRinging(this, true);
+        handler.removeCallbacks(warmUpExpiry);
+        startCommandAtMs = SystemClock.elapsedRealtime();
+        this.latencySlot = latencySlot;
+        FireLatencyLog.mark(this, latencySlot, FireLatencyRing.STAGE_SERVICE);
+
+        Uri toneUri = toneUriOf(toneUriString);
+        if (toneUriString == null || toneUriString.isEmpty()) {
+            Log.e("AlarmSoundService", "TONE_URI is null. Cannot play tone. Fallback to default tone");
+        }
+
+        // A warm-up for this same tone already prepared the player and built the notification
+        boolean warm = warmNotification != null && toneUri.toString().equals(warmToneUri)
+                && alarmIndex == warmAlarmIndex && clusterId != null && clusterId.equals(warmClusterId);
+        if (warm) {
+            FireLatencyLog.mark(this, latencySlot, FireLatencyRing.STAGE_WARMED);
+        }
+
+        // The AudioTrack engine starts decoding right away (from the primed cache entry when warm)
+        if (pcmPlayer != null) {
+            startPcmPlayback(toneUri);
+        }
+
+        // ------------------ 1-2. CHANNEL, NOTIFICATION AND ALARM SCREEN ------------------
+        Notification notification = warm ? warmNotification
+                : buildNotification(latencySlot, clusterId, alarmIndex, toneUriString);
+        warmNotification = null;
+
+        // ------------------ 3. FOREGROUND SERVICE LAUNCH ------------------
+        // Calls this method and attaches the notification. This is what prevents Android from killing the service!
+        startForeground(1, notification);
+
+        try {
+            startActivity(alarmScreenIntent(latencySlot, clusterId, alarmIndex, toneUriString));
+        } catch (Exception e) {
+            Log.e("AlarmSoundService", "Fallo al forzar activity: " + e.getMessage());
+            AlarmHistory.failed(this, AlarmHistory.FAILURE_SCREEN, toneUri.toString());
+        }
+
+        // ------------------ 4. MEDIA PLAYBACK START (Media Player) ------------------
+        // A tone already ringing (back-to-back members) crossfades into this one
+        if (pcmPlayer == null) {
+            startMediaPlayback(toneUri);
+        }
+        warmToneUri = null;
+    }
+
+    /** The tone's URI; the system alarm tone if the member has none. */
+    private static Uri toneUriOf(String toneUriString) {
+        // If the URI is not null, we load the audio from the user's path
+        if (toneUriString != null && !toneUriString.isEmpty()) {
+            return Uri.parse(toneUriString);
+        }
+        return Settings.System.DEFAULT_ALARM_ALERT_URI;
+    }
+
+    // ------------------ CLUSTER SESSION ------------------
+
+    /**
+     * True if a session in this process already played the member of {@code clusterId} scheduled
+     * at {@code triggerAtMs} (or a later one), so its AlarmManager alarm is only the safety net.
+     */
+    static synchronized boolean firedInSession(String clusterId, long triggerAtMs) {
+        return clusterId != null && clusterId.equals(sessionFiredClusterId) && triggerAtMs <= sessionFiredAtMs;
+    }
+
+    private static synchronized void markFiredInSession(String clusterId, long triggerAtMs) {
+        sessionFiredClusterId = clusterId;
+        sessionFiredAtMs = triggerAtMs;
+    }
+
+    /**
+     * Dismisses the ringing member from the alarm screen: silences it if a session is waiting for
+     * the next member, otherwise stops the service.
+     */
+    static void dismiss(Context context) {
+        if (sessionPending) {
+            Intent intent = new Intent(context, AlarmSoundService.class);
+            intent.setAction(ACTION_DISMISS);
+            context.startService(intent);
+        } else {
+            context.stopService(new Intent(context, AlarmSoundService.class));
+        }
+    }
 
+    /**
+     * After member {@code firedIndex} of {@code clusterId} started ringing: looks up the next member
+     * off the main thread, primes its tone while this one rings, and schedules it in-process if it
+     * is due within the session gap, or ends the session.
+     */
+    private void continueSession(String clusterId, int firedIndex) {
+        long maxGapMs = AlarmSettings.sessionMaxGapSeconds(this) * 1000L;
+        if (clusterId == null || firedIndex < 0) {
+            endSession();
+            return;
+        }
+        final int generation = sessionGeneration;
+        try {
+            AlarmExecutors.background().execute(() -> {
+                AlarmState cluster = AlarmProfileStore.loadAll(this).get(clusterId);
+                long now = System.currentTimeMillis();
+                int following = cluster != null ? Math.max(firedIndex + 1, cluster.plan().firstPendingIndex(now)) : -1;
+                String followingTone = following >= 0 && following < cluster.fireTimes.length
+                        ? cluster.toneUriAt(following) : null;
+                int next = cluster != null && maxGapMs > 0 ? cluster.plan().sessionNext(firedIndex, now, maxGapMs) : -1;
+                long nextAtMs = next >= 0 ? cluster.fireTimes[next] : 0L;
+                handler.post(() -> {
+                    if (generation != sessionGeneration) {
+                        return; // Superseded by another fire, or the service is gone
+                    }
+                    if (followingTone != null && firing) {
+                        // Back-to-back members then switch tones with no prepare
+                        primeTone(toneUriOf(followingTone));
+                    }
+                    if (next < 0) {
+                        endSession();
+                    } else {
+                        scheduleSessionFire(clusterId, next, nextAtMs);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            endSession(); // The safety net fires the rest
+        }
+    }
+
+    private void scheduleSessionFire(String clusterId, int index, long atMs) {
+        final int generation = ++sessionGeneration;
+        sessionPending = true;
+        sessionNextAtMs = atMs;
+        long delayMs = Math.max(0L, atMs - System.currentTimeMillis());
+        // Handler time stops in deep sleep: the session lock keeps the CPU up until the fire
+        AlarmWakeLock.holdSession(this, delayMs + SESSION_LOCK_MARGIN_MS);
+        handler.postDelayed(() -> {
+            if (generation == sessionGeneration) {
+                verifySessionFire(clusterId, index, atMs, generation);
+            }
+        }, delayMs);
+        Log.d("AlarmSoundService", "Session: member " + index + " of '" + clusterId + "' in " + delayMs + " ms");
+    }
+
+    /** Checks the member is still stored with the same time (not cancelled or edited) before playing it. */
+    private void verifySessionFire(String clusterId, int index, long atMs, int generation) {
+        try {
+            AlarmExecutors.background().execute(() -> {
+                AlarmState cluster = AlarmProfileStore.loadAll(this).get(clusterId);
+                boolean due = cluster != null && index < cluster.fireTimes.length && cluster.fireTimes[index] == atMs;
+                String toneUri = due ? cluster.toneUriAt(index) : null;
+                handler.post(() -> {
+                    if (generation != sessionGeneration) {
+                        return;
+                    }
+                    if (due) {
+                        fireSessionMember(clusterId, index, atMs, toneUri);
+                    } else {
+                        Log.d("AlarmSoundService", "Session: cluster '" + clusterId + "' changed, ending session.");
+                        endSession();
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            endSession();
+        }
+    }
+
+    /** Plays a member from the session timer: the in-process equivalent of AlarmReceiver. */
+    private void fireSessionMember(String clusterId, int index, long atMs, String toneUri) {
+        markFiredInSession(clusterId, atMs);
+        int slot = FireLatencyLog.begin(this, atMs);
+        AlarmHistory.fired(this, clusterId, index, toneUri, atMs, System.currentTimeMillis());
+        ring(clusterId, index, toneUri, slot);
+
+        // Cursor and armed window: cancels this member's safety-net alarm and slides the window
+        try {
+            AlarmExecutors.background().execute(() -> {
+                AlarmReceiver.advanceCluster(this, clusterId, index);
+                AlarmEvents.post(this, AlarmEvents.FIRED, clusterId);
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w("AlarmSoundService", "Session: cursor not advanced, the safety net will be dropped as a duplicate.");
+        }
+        continueSession(clusterId, index);
+    }
+
+    private void endSession() {
+        sessionGeneration++;
+        sessionPending = false;
+        AlarmWakeLock.releaseSession();
+        if (!firing) {
+            stopSelf();
+        }
+    }
+
+    /** Dismissed while the session waits: stop the sound, keep the service with a quiet notification. */
+    private void silence() {
+        firing = false;
+        AlarmEvents.postRinging(this, false);
+        if (pcmPlayer != null) {
+            pcmPlayer.stop();
+        } else {
+            players.stop(); // A standby primed for the next member stays prepared
+        }
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        if (notificationManager != null) {
+            notificationManager.notify(1, buildSessionNotification(sessionNextAtMs));
+        }
+        Log.d("AlarmSoundService", "Session: silenced, next member at " + sessionNextAtMs);
+    }
+
+    private Notification buildSessionNotification(long nextAtMs) {
+        Intent stopIntent = new Intent(this, AlarmSoundService.class);
+        stopIntent.setAction(ACTION_DISMISS);
+        PendingIntent stopPendingIntent = PendingIntent.getService(
+                this,
+                1,
+                stopIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.button_stop_alarm)
+                .setContentTitle("Siguiente alarma a las " + DateFormat.getTimeInstance(DateFormat.SHORT).format(new Date(nextAtMs)))
+                .setContentText("El clúster sigue activo")
+                .setCategory(Notification.CATEGORY_ALARM)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setOnlyAlertOnce(true)
+                .setSilent(true)
+                .addAction(R.drawable.button_stop_alarm, "DETENER", stopPendingIntent)
+                .build();
+    }
+
+    /**
+     * Warm-up alarm, a few seconds before a cluster head: prepares the player for its tone and
+     * builds the notification now, so the fire that follows only has to start both. If no fire
+     * comes (cluster cancelled or moved) the service stops itself after a grace period.
+     */
+    private void warmUp(String toneUriString, String clusterId, int alarmIndex) {
+        if (firing) {
+            return; // Already ringing (a late warm-up, e.g. deferred by Doze)
+        }
+        Uri toneUri = toneUriOf(toneUriString);
+        long startNs = System.nanoTime();
+
+        warmNotification = buildNotification(-1, clusterId, alarmIndex, toneUriString);
+        warmToneUri = toneUri.toString();
+        warmClusterId = clusterId;
+        warmAlarmIndex = alarmIndex;
+
+        primeTone(toneUri);
+
+        handler.removeCallbacks(warmUpExpiry);
+        handler.postDelayed(warmUpExpiry, AlarmSettings.warmUpSeconds(this) * 1000L + WARM_UP_GRACE_MS);
+        Log.d("AlarmSoundService", "Warm-up done in " + (System.nanoTime() - startNs) / 1000 + " µs: " + toneUri);
+    }
+
+    /** Prepares a tone ahead of its fire: decode cache for AudioTrack, standby player for MediaPlayer. */
+    private void primeTone(Uri toneUri) {
+        if (pcmPlayer != null) {
+            pcmPlayer.prime(this, toneUri);
+        } else if (players != null) {
+            players.prime(toneUri);
+        }
+    }
+
+    /**
+     * Intent of the alarm dismissal UI, carrying the fire's latency record (-1 if not known yet)
+     * and the member that rings, for the snooze and stop-cluster buttons.
+     */
+    private Intent alarmScreenIntent(int slot, String clusterId, int alarmIndex, String toneUri) {
+        Intent fullScreenIntent = new Intent(this, AlarmScreenActivity.class);
+        // Flags to ensure the Activity launches correctly over other screens
+        fullScreenIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_NO_USER_ACTION);
+        fullScreenIntent.putExtra(FireLatencyLog.EXTRA_LATENCY_SLOT, slot);
+        fullScreenIntent.putExtra(AlarmArmer.EXTRA_CLUSTER_ID, clusterId);
+        fullScreenIntent.putExtra(AlarmArmer.EXTRA_ALARM_INDEX, alarmIndex);
+        fullScreenIntent.putExtra(AlarmArmer.EXTRA_TONE_URI, toneUri);
+        return fullScreenIntent;
+    }
+
+    /** Snooze / stop-cluster action, handled by AlarmActionReceiver without starting the app. */
+    private PendingIntent actionPendingIntent(String action, int requestCode, String clusterId, int alarmIndex,
+                                              String toneUri) {
+        return PendingIntent.getBroadcast(
+                this,
+                requestCode,
+                AlarmActionReceiver.intent(this, action, clusterId, alarmIndex, toneUri, AlarmHistory.DISMISS_NOTIFICATION),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private Notification buildNotification(int slot, String clusterId, int alarmIndex, String toneUri) {
+        // ------------------ 1. CHANNEL CREATION ------------------
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
                     CHANNEL_ID,
@@ -70,16 +444,11 @@ public class AlarmSoundService extends Service {
 
         // ------------------ 2. NOTIFICATION AND ALARM SCREEN (Full Screen Intent) ------------------
 
-        // The Intent we want to execute in full screen (our alarm dismissal UI)
-        Intent fullScreenIntent = new Intent(this, AlarmScreenActivity.class);
-        // Flags to ensure the Activity launches correctly over other screens
-        fullScreenIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_NO_USER_ACTION);
-
         // PendingIntent: Allows the operating system to launch the Activity
         PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
                 this,
                 0,
-                fullScreenIntent,
+                alarmScreenIntent(slot, clusterId, alarmIndex, toneUri),
                 // FLAG_IMMUTABLE is required on Android 12 (API 31) and higher
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
@@ -87,6 +456,7 @@ public class AlarmSoundService extends Service {
         // To allow the MediaPlayer stop
         Intent dismissIntent = new Intent(this, AlarmSoundService.class);
         dismissIntent.setAction(ACTION_DISMISS); // Usamos la constante que definiste arriba
+        dismissIntent.putExtra(EXTRA_FROM_NOTIFICATION, true);
 
         PendingIntent dismissPendingIntent = PendingIntent.getService(
                 this,
@@ -96,7 +466,7 @@ public class AlarmSoundService extends Service {
         );
 
         // Build the Notification (the visible message and the invisible wake-up button)
-        @SuppressLint("FullScreenIntentPolicy") Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+        @SuppressLint("FullScreenIntentPolicy") NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
                 // Must have an icon called ic_launcher in your drawables
                 .setSmallIcon(R.drawable.button_stop_alarm)
                 .setContentTitle("ALARMA ACTIVADA")
@@ -107,60 +477,85 @@ public class AlarmSoundService extends Service {
                 // THIS IS WHAT TURNS ON THE SCREEN AND SHOWS IT OVER THE LOCK SCREEN
                 .setFullScreenIntent(fullScreenPendingIntent, true)
 
-                .addAction(R.drawable.button_stop_alarm, "DETENER ALARMA", dismissPendingIntent)
+                .addAction(R.drawable.button_stop_alarm, "DETENER ALARMA", dismissPendingIntent);
 
-                .build();
+        // Snooze and stop-cluster need the member (not known after a sticky restart)
+        if (clusterId != null) {
+            builder.addAction(R.drawable.button_stop_alarm, "POSPONER " + AlarmSettings.snoozeMinutes(this) + " MIN",
+                            actionPendingIntent(AlarmActionReceiver.ACTION_SNOOZE, 2, clusterId, alarmIndex, toneUri))
+                    .addAction(R.drawable.button_stop_alarm, "DETENER CLÚSTER",
+                            actionPendingIntent(AlarmActionReceiver.ACTION_STOP_CLUSTER, 3, clusterId, alarmIndex, toneUri));
+        }
+        return builder.build();
+    }
 
-        // ------------------ 3. FOREGROUND SERVICE LAUNCH ------------------
-        // Calls this method and attaches the notification. This is what prevents Android from killing the service!
-        startForeground(1, notification);
+    private void startMediaPlayback(Uri toneUri) {
+        players.play(toneUri, new TonePlayerPair.Listener() {
+            @Override
+            public void onFirstAudio(boolean primed) {
+                logTimeToFirstAudio(AlarmSettings.ENGINE_MEDIA_PLAYER + (primed ? ", warm" : ""));
+            }
 
-        try {
-            startActivity(fullScreenIntent);
-        } catch (Exception e) {
-            Log.e("AlarmSoundService", "Fallo al forzar activity: " + e.getMessage());
-        }
+            @Override
+            public void onError(Exception e) {
+                Log.e("AlarmSoundService", "Error in media playback: " + e.getMessage());
+                AlarmHistory.failed(AlarmSoundService.this, AlarmHistory.FAILURE_PLAYBACK, String.valueOf(toneUri));
+                AlarmWakeLock.release(AlarmSoundService.this, "playback error");
+            }
+        });
+    }
 
-        // ------------------ 4. MEDIA PLAYBACK START (Media Player) ------------------
-        try {
-            if (mediaPlayer != null) {
-                // Retrieve the URI that AlarmReceiver passed from the Intent
-                String toneUriString = intent.getStringExtra("TONE_URI");
-
-                Uri toneUri = null;
-                // If the URI is not null, we load the audio from the user's path
-                if (toneUriString != null && !toneUriString.isEmpty()) {
-                    toneUri = Uri.parse(toneUriString);
-
-                } else {
-                    toneUri = Settings.System.DEFAULT_ALARM_ALERT_URI;
-                    Log.e("AlarmSoundService", "TONE_URI is null. Cannot play tone. Fallback to default tone");
-                }
-
-                mediaPlayer.setDataSource(this, toneUri);
-                mediaPlayer.setLooping(true);
-
-                // Prepare and then start (asynchronous to not block the main thread)
-                mediaPlayer.prepareAsync();
-                mediaPlayer.setOnPreparedListener(MediaPlayer::start);
-                
+    private void startPcmPlayback(Uri toneUri) {
+        pcmPlayer.start(this, toneUri, new PcmAlarmPlayer.Listener() {
+            @Override
+            public void onFirstAudio() {
+                logTimeToFirstAudio(AlarmSettings.ENGINE_AUDIO_TRACK);
             }
-        } catch (Exception e) {
-            Log.e("AlarmSoundService", "Error in media playback: " + e.getMessage());
-        }
 
-        // START_STICKY: Tells Android that, if the system kills the service, try to restart it
-        return START_STICKY;
+            @Override
+            public void onError(Exception e) {
+                AlarmHistory.failed(AlarmSoundService.this, AlarmHistory.FAILURE_ENGINE_FALLBACK, toneUri.toString());
+                // Formats MediaCodec cannot stream still play through MediaPlayer
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    if (pcmPlayer == null) {
+                        return; // Service already destroyed
+                    }
+                    pcmPlayer.release();
+                    pcmPlayer = null;
+                    players = new TonePlayerPair(AlarmSoundService.this);
+                    startMediaPlayback(toneUri);
+                });
+            }
+        });
+    }
+
+    private void logTimeToFirstAudio(String engine) {
+        long elapsed = SystemClock.elapsedRealtime() - startCommandAtMs;
+        Log.i("AlarmSoundService", "Time to first audio (" + engine + "): " + elapsed + " ms");
+        FireLatencyLog.mark(this, latencySlot, FireLatencyRing.STAGE_AUDIO);
+        AlarmStartupTrace.firstAudio(this, engine);
+        // Audio is out: the foreground service keeps the device awake from here
+        AlarmWakeLock.release(this, "playback " + engine);
     }
 
     @Override
     public void onDestroy() {
-        if (mediaPlayer != null) {
-            if (mediaPlayer.isPlaying()) {
-                mediaPlayer.stop();
-            }
-            mediaPlayer.release();
-            mediaPlayer = null;
+        handler.removeCallbacks(warmUpExpiry);
+        sessionGeneration++;
+        sessionPending = false;
+        markFiredInSession(null, 0L);
+        AlarmWakeLock.releaseSession();
+        if (firing) {
+            AlarmEvents.postRinging(this, false);
+        }
+        AlarmWakeLock.release(this, "service destroyed");
+        if (pcmPlayer != null) {
+            pcmPlayer.release();
+            pcmPlayer = null;
+        }
+        if (players != null) {
+            players.release();
+            players = null;
         }
         super.onDestroy();
     }
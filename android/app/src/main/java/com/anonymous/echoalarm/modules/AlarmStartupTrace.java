@@ -0,0 +1,66 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Process-start-to-first-audio trace of the process that plays the fires: process start, end of
+ * Application.onCreate, first fire reaching AlarmReceiver and first audio, all on the
+ * elapsedRealtime clock. One line is logged per process, at its first audio, tagged with the
+ * process name, so the dedicated {@link AlarmProcess#ALARM_PROCESS_SUFFIX} process and a
+ * single-process build can be compared with {@code adb logcat -s AlarmStartupTrace}.
+ *
+ * A fire that arrives more than {@link #COLD_START_WINDOW_MS} after the process started found
+ * it already running and is reported as such: its numbers say nothing about startup.
+ */
+public final class AlarmStartupTrace {
+
+    static final long COLD_START_WINDOW_MS = 10000;
+
+    private static long applicationCreatedAtMs = -1;
+    private static long firstFireAtMs = -1;
+    private static boolean reported;
+
+    private AlarmStartupTrace() {
+    }
+
+    /** End of Application.onCreate, in either process. */
+    public static synchronized void applicationCreated() {
+        if (applicationCreatedAtMs < 0) {
+            applicationCreatedAtMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /** A fire reached AlarmReceiver. */
+    static synchronized void fired() {
+        if (firstFireAtMs < 0) {
+            firstFireAtMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /** The first fire is audible; logs the trace once per process. */
+    static void firstAudio(Context context, String engine) {
+        long nowMs = SystemClock.elapsedRealtime();
+        long appMs;
+        long fireMs;
+        synchronized (AlarmStartupTrace.class) {
+            if (reported) {
+                return;
+            }
+            reported = true;
+            appMs = applicationCreatedAtMs;
+            fireMs = firstFireAtMs;
+        }
+        long startMs = Process.getStartElapsedRealtime();
+        boolean cold = fireMs >= 0 && fireMs - startMs <= COLD_START_WINDOW_MS;
+        Log.i("AlarmStartupTrace", AlarmProcess.name(context) + (cold ? " cold start" : " already running")
+                + " (" + engine + "): application " + since(startMs, appMs) + ", fire " + since(startMs, fireMs)
+                + ", first audio " + since(startMs, nowMs) + " after process start");
+    }
+
+    private static String since(long startMs, long atMs) {
+        return atMs < 0 ? "-" : (atMs - startMs) + " ms";
+    }
+}
@@ -0,0 +1,83 @@
+package com.anonymous.echoalarm.modules;
+
+/**
+ * Persisted state of one alarm cluster as stored in {@link AlarmJournal}: profile, precomputed
+ * fire plan, tone table and the next-index cursor. Pure Java.
+ */
+public final class AlarmState {
+
+    /** Cluster used when JS does not name one (the original single-cluster profile). */
+    public static final String DEFAULT_CLUSTER_ID = "default";
+
+    public String clusterId = DEFAULT_CLUSTER_ID;
+    /** Stable small number identifying the cluster in {@link ClusterIndex} and request-code keys. */
+    public int slot;
+
+    public boolean active;
+    public boolean chainedMode;
+    public long baseTimeMs;
+    public int interval;
+    public int alarmCount;
+
+    public long[] fireTimes = new long[0];
+    public int[] toneIndices = new int[0];
+
+    public String[] toneUris = new String[0];
+    public String[] toneNames = new String[0];
+
+    /** Index of the next member that has not fired yet. */
+    public int nextIndex;
+
+    /** How the cluster repeats once its last member is past; null for a one-off cluster. */
+    public RecurrenceRule recurrence;
+    /** Next base times of {@link #recurrence}, materialized by {@link OccurrenceWindow}. */
+    public long[] upcoming = new long[0];
+
+    /** Builds an active state for a freshly computed plan. */
+    public static AlarmState of(String clusterId, int slot, ClusterPlan plan, long baseTimeMs,
+                                int interval, int alarmCount, String[] toneUris, String[] toneNames,
+                                boolean chainedMode) {
+        AlarmState state = new AlarmState();
+        state.clusterId = clusterId;
+        state.slot = slot;
+        state.active = true;
+        state.chainedMode = chainedMode;
+        state.baseTimeMs = baseTimeMs;
+        state.interval = interval;
+        state.alarmCount = alarmCount;
+        state.fireTimes = plan.copyFireTimes();
+        state.toneIndices = plan.copyToneIndices();
+        state.toneUris = toneUris;
+        state.toneNames = toneNames;
+        state.nextIndex = 0;
+        return state;
+    }
+
+    /**
+     * Identifies the fire plan (not the cursor or tones), so a cursor computed against an older
+     * plan of the cluster can be told apart from one for the current plan.
+     */
+    public int planStamp() {
+        int stamp = Long.hashCode(baseTimeMs);
+        stamp = 31 * stamp + interval;
+        stamp = 31 * stamp + alarmCount;
+        stamp = 31 * stamp + fireTimes.length;
+        if (fireTimes.length > 0) {
+            stamp = 31 * stamp + Long.hashCode(fireTimes[0]);
+            stamp = 31 * stamp + Long.hashCode(fireTimes[fireTimes.length - 1]);
+        }
+        return stamp;
+    }
+
+    public ClusterPlan plan() {
+        return new ClusterPlan(fireTimes, toneIndices);
+    }
+
+    public String toneUriAt(int memberIndex) {
+        int toneIndex = toneIndices[memberIndex];
+        if (toneIndex == ClusterPlan.NO_TONE || toneIndex >= toneUris.length) {
+            return "";
+        }
+        return toneUris[toneIndex];
+    }
+}
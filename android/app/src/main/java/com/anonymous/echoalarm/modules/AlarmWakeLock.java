@@ -0,0 +1,89 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Partial wake lock handed from AlarmReceiver to AlarmSoundService: acquired in onReceive, so
+ * the CPU stays up until the service reaches playback, and released as soon as the first audio
+ * is out (or the service stops). Capped by {@link #TIMEOUT_MS} in case the service never gets
+ * there. Each release is recorded in the fire's {@link FireLatencyRing} record, so hold times
+ * show up in the latency stats.
+ *
+ * A second lock covers cluster sessions: it keeps the CPU up between a member and the next one
+ * that AlarmSoundService fires from its own timer, and is released when the session ends.
+ */
+final class AlarmWakeLock {
+
+    static final long TIMEOUT_MS = 30000;
+    private static final String TAG = "EchoAlarm:fire";
+    private static final String SESSION_TAG = "EchoAlarm:session";
+
+    private static PowerManager.WakeLock wakeLock;
+    private static long acquiredAtMs;
+    private static int latencySlot = -1;
+    private static PowerManager.WakeLock sessionLock;
+
+    private AlarmWakeLock() {
+    }
+
+    static synchronized void acquire(Context context, int slot) {
+        if (wakeLock == null) {
+            PowerManager powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+            if (powerManager == null) {
+                return;
+            }
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+            wakeLock.setReferenceCounted(false);
+        }
+        // A new fire while one is still held restarts the timeout under the new record
+        wakeLock.acquire(TIMEOUT_MS);
+        acquiredAtMs = SystemClock.elapsedRealtime();
+        latencySlot = slot;
+    }
+
+    /** Releases the lock if held and records how long it was held. Safe to call repeatedly. */
+    static synchronized void release(Context context, String reason) {
+        if (acquiredAtMs == 0L) {
+            return;
+        }
+        long heldMs = SystemClock.elapsedRealtime() - acquiredAtMs;
+        boolean timedOut = wakeLock == null || !wakeLock.isHeld();
+        if (!timedOut) {
+            wakeLock.release();
+        } else {
+            heldMs = Math.min(heldMs, TIMEOUT_MS);
+        }
+
+        // Stored as a wall-clock mark so it lines up with the other stages of the fire
+        FireLatencyLog.mark(context, latencySlot, FireLatencyRing.STAGE_WAKE_RELEASE,
+                System.currentTimeMillis() - (SystemClock.elapsedRealtime() - acquiredAtMs - heldMs));
+        Log.d("AlarmWakeLock", "Wake lock liberado (" + reason + ") tras " + heldMs + " ms"
+                + (timedOut ? " por timeout" : ""));
+
+        acquiredAtMs = 0L;
+        latencySlot = -1;
+    }
+
+    /** Holds the session lock for up to {@code timeoutMs}; each call restarts the timeout. */
+    static synchronized void holdSession(Context context, long timeoutMs) {
+        if (sessionLock == null) {
+            PowerManager powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+            if (powerManager == null) {
+                return;
+            }
+            sessionLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, SESSION_TAG);
+            sessionLock.setReferenceCounted(false);
+        }
+        sessionLock.acquire(timeoutMs);
+    }
+
+    static synchronized void releaseSession() {
+        if (sessionLock != null && sessionLock.isHeld()) {
+            sessionLock.release();
+            Log.d("AlarmWakeLock", "Wake lock de sesión liberado");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.anonymous.echoalarm.modules;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decision core of {@link AlarmCoordinator#rearm}, without Android types: from the stored
+ * clusters and what is currently armed it cancels codes that left the window and arms the
+ * nearest {@code window} members, skipping those already armed with the same trigger time and
+ * {@link #signatureOf signature}. The app drives it against AlarmManager and the registry; the
+ * JVM simulator drives the same code against a fake AlarmManager.
+ */
+public final class ArmedWindowPlanner {
+
+    /** What is armed right now, and how to change it. */
+    public interface Target {
+        int[] liveCodes();
+
+        /** Member key armed under a code, or -1 if unknown. */
+        long memberKeyOf(int code);
+
+        long triggerTimeOf(int code);
+
+        int signatureOf(int code);
+
+        void cancel(int code);
+
+        void arm(int code, long triggerAtMs, AlarmState cluster, int memberIndex);
+    }
+
+    /** Outcome of one pass; the window arrays are kept for follow-up passes such as warm-ups. */
+    public static final class Result {
+        public final ClusterIndex index;
+        public final AlarmState[] bySlot;
+        public final long[] times;
+        public final int[] slots;
+        public final int[] members;
+        public final int wanted;
+        public final int armed;
+        public final int cancelled;
+
+        Result(ClusterIndex index, AlarmState[] bySlot, long[] times, int[] slots, int[] members,
+               int wanted, int armed, int cancelled) {
+            this.index = index;
+            this.bySlot = bySlot;
+            this.times = times;
+            this.slots = slots;
+            this.members = members;
+            this.wanted = wanted;
+            this.armed = armed;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private ArmedWindowPlanner() {
+    }
+
+    /**
+     * Builds the index over every stored cluster, starting at each one's first member that has
+     * not fired and is still {@link ClusterPlan#firstDueIndex due}.
+     */
+    public static ClusterIndex buildIndex(Map<String, AlarmState> clusters, long nowMs) {
+        ClusterIndex index = new ClusterIndex();
+        for (AlarmState state : clusters.values()) {
+            int from = Math.max(state.nextIndex, state.plan().firstDueIndex(nowMs));
+            index.put(state.slot, state.fireTimes, from, state.chainedMode);
+        }
+        return index;
+    }
+
+    /**
+     * Hash of the extras an armed intent carries besides the trigger time. An armed code with
+     * the same trigger time and signature does not need to be set again.
+     */
+    public static int signatureOf(AlarmState cluster, int alarmIndex) {
+        int signature = 31 * cluster.clusterId.hashCode() + cluster.toneUriAt(alarmIndex).hashCode();
+        return 31 * signature + alarmIndex;
+    }
+
+    public static Result plan(Map<String, AlarmState> clusters, long nowMs, int window,
+                              RequestCodeAllocator allocator, Target target) {
+        AlarmState[] bySlot = new AlarmState[clusters.size() + 1];
+        for (AlarmState state : clusters.values()) {
+            if (state.slot >= bySlot.length) {
+                AlarmState[] grown = new AlarmState[state.slot + 1];
+                System.arraycopy(bySlot, 0, grown, 0, bySlot.length);
+                bySlot = grown;
+            }
+            bySlot[state.slot] = state;
+        }
+
+        // 1. Nearest fires across all clusters
+        ClusterIndex index = buildIndex(clusters, nowMs);
+        long[] times = new long[window];
+        int[] slots = new int[window];
+        int[] members = new int[window];
+        int wanted = index.nearest(window, times, slots, members);
+
+        Set<Long> wantedKeys = new HashSet<>();
+        for (int i = 0; i < wanted; i++) {
+            wantedKeys.add(RequestCodeAllocator.memberKey(slots[i], members[i]));
+        }
+
+        // 2. Cancel whatever is live but no longer in the window (or has no known member). A code
+        //    whose time just passed already went off: its broadcast may still be on the way, and
+        //    releasing its member would let a later pass arm it a second time
+        int cancelled = 0;
+        for (int code : target.liveCodes()) {
+            long key = target.memberKeyOf(code);
+            long triggerAtMs = target.triggerTimeOf(code);
+            if (key != -1L && triggerAtMs <= nowMs && nowMs - triggerAtMs < ClusterPlan.DUE_GRACE_MS) {
+                continue; // Dropped by its receiver
+            }
+            if (key == -1L || !wantedKeys.contains(key)) {
+                target.cancel(code);
+                if (key != -1L) {
+                    allocator.release(key);
+                }
+                cancelled++;
+            }
+        }
+
+        // 3. Arm the window; members already armed keep their code and are only set if they changed
+        int armed = 0;
+        for (int i = 0; i < wanted; i++) {
+            AlarmState cluster = bySlot[slots[i]];
+            long key = RequestCodeAllocator.memberKey(slots[i], members[i]);
+            int existing = allocator.codeOf(key);
+            if (existing != -1
+                    && target.triggerTimeOf(existing) == times[i]
+                    && target.signatureOf(existing) == signatureOf(cluster, members[i])) {
+                continue;
+            }
+            int code = allocator.acquire(key);
+            target.arm(code, times[i], cluster, members[i]);
+            armed++;
+        }
+        return new Result(index, bySlot, times, slots, members, wanted, armed, cancelled);
+    }
+}
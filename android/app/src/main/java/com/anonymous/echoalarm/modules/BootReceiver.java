@@ -6,91 +6,80 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.time.Instant;
+import java.util.Map;
+import java.util.TimeZone;
 
 public class BootReceiver extends BroadcastReceiver {
 
     // Definimos una acción personalizada para pruebas
     private static final String ACTION_TEST_BOOT = "com.anonymous.echoalarm.TEST_BOOT";
 
+    // Reintento de una restauración cortada por el plazo (o rechazada por el pool lleno)
+    private static final String ACTION_RETRY_RESTORE = "com.anonymous.echoalarm.RETRY_RESTORE";
+    private static final long RETRY_DELAY_MS = 30 * 1000L;
+
+    // Plazo duro de la restauración desde el onReceive (cola incluida), muy por debajo del timeout del broadcast
+    static final long RESTORE_DEADLINE_MS = 8000;
+
     @Override
     public void onReceive(Context context, Intent intent) {
-        // 1. Usar goAsync para evitar ANR si el sistema va lento
+        // 1. Usar goAsync para evitar ANR si el sistema va lento; el pool compartido corta al llegar
+        // al plazo y entonces se reintenta con una alarma de un solo disparo
         final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+        AlarmExecutors.runAsync(pendingResult, RESTORE_DEADLINE_MS, "BootReceiver",
+                () -> handleBoot(context, intent), () -> scheduleRetry(appContext));
+    }
 
-        new Thread(() -> {
-            try {
-                handleBoot(context, intent);
-            } finally {
-                // IMPRESCINDIBLE: Avisar que acabamos
-                pendingResult.finish();
-            }
-        }).start();
+    /**
+     * Arma un único reintento de la restauración dentro de {@link #RETRY_DELAY_MS}. No necesita
+     * alarmas exactas; si ya había uno pendiente, lo sustituye. Compartido con TimeChangeReceiver.
+     */
+    static void scheduleRetry(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return;
         }
+        Intent intent = new Intent(context, BootReceiver.class).setAction(ACTION_RETRY_RESTORE);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                0,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + RETRY_DELAY_MS, pendingIntent);
+        Log.w("BootReceiver", "Restauración incompleta, reintento en " + RETRY_DELAY_MS + " ms.");
+    }
 
     private void handleBoot(Context context, Intent intent) {
         String action = intent.getAction();
 
-        // Aceptamos BOOT_COMPLETED (Real) O nuestra señal de prueba (ADB)
-        if (Intent.ACTION_BOOT_COMPLETED.equals(action) || ACTION_TEST_BOOT.equals(action)) {
+        // Aceptamos BOOT_COMPLETED (Real), nuestra señal de prueba (ADB) o el reintento
+        boolean retry = ACTION_RETRY_RESTORE.equals(action);
+        if (Intent.ACTION_BOOT_COMPLETED.equals(action) || ACTION_TEST_BOOT.equals(action) || retry) {
             Log.d("BootReceiver", "¡Evento de inicio recibido! (" + action + ")");
+            long restoreStartNs = System.nanoTime();
 
-            // 1. LEER LA LIBRETA
-            SharedPreferences prefs = context.getSharedPreferences("EchoAlarmPrefs", Context.MODE_PRIVATE);
-            boolean isActive = prefs.getBoolean("isAlarmActive", false);
+            // 1. LEER LA LIBRETA (journal binario, sin parsear JSON)
+            Map<String, AlarmState> clusters = AlarmProfileStore.loadAll(context);
+            Log.d("BootReceiver", "Estado leído en " + (System.nanoTime() - restoreStartNs) / 1000 + " µs");
 
-            if (!isActive) {
+            if (clusters.isEmpty()) {
                 Log.d("BootReceiver", "No había alarmas activas guardadas.");
                 return;
             }
 
-            String wakeTimeIso = prefs.getString("wakeTime", null);
-            int interval = prefs.getInt("interval", 1);
-            int alarmCount = prefs.getInt("alarmCount", 1);
-            String tonePoolJson = prefs.getString("tonePool", "[]"); // Recuperamos el JSON string
-
-            if (wakeTimeIso == null) return;
-
-            // 2. RECALCULAR HORA
-            long triggerTimeMs = 0;
-            try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    triggerTimeMs = Instant.parse(wakeTimeIso).toEpochMilli();
-                } else {
-                    triggerTimeMs = System.currentTimeMillis() + 60000;
-                }
-            } catch (Exception e) {
-                Log.e("BootReceiver", "Error parseando fecha guardada: " + e.getMessage());
-                return;
-            }
-
-            // Si la hora ya pasó, aquí deberías sumar 24h o cancelar.
-            if (triggerTimeMs < System.currentTimeMillis()) {
-                Log.w("BootReceiver", "La hora guardada ya pasó. Reprogramando para mañana (lógica simple).");
-                triggerTimeMs += 86400000; // Sumar 24 horas
-            }
+            // 2. SI LA ZONA HORARIA CAMBIÓ CON EL MÓVIL APAGADO, MOVER LAS HORAS LOCALES
+            clusters = TimeChangeReceiver.applyZoneChange(context, clusters, TimeZone.getDefault().getID());
 
-            // 3. RECUPERAR EL TONO (URI) DEL JSON
-            String savedToneUri = "";
-            try {
-                JSONArray jsonArray = new JSONArray(tonePoolJson);
-                if (jsonArray.length() > 0) {
-                    // Por simplicidad en el reinicio, cogemos el primer tono.
-                    // Si quisieras ser exacto, necesitarías guardar el índice del siguiente tono.
-                    JSONObject firstTone = jsonArray.getJSONObject(0);
-                    if (firstTone.has("uri")) {
-                        savedToneUri = firstTone.getString("uri");
-                    }
-                }
-            } catch (Exception e) {
-                Log.e("BootReceiver", "Error leyendo JSON de tonos: " + e.getMessage());
+            // 3. RETOMAR CADA CLÚSTER DESDE SU CURSOR
+            if (!resumeClusters(context, clusters, System.currentTimeMillis())) {
+                return; // Plazo agotado
             }
 
             // 4. REPROGRAMAR
@@ -103,42 +92,54 @@ public class BootReceiver extends BroadcastReceiver {
                 }
             }
 
-            Intent alarmIntent = new Intent(context, AlarmReceiver.class);
-            // AHORA SÍ PASAMOS LA URI RECUPERADA
-            if (!savedToneUri.isEmpty()) {
-                alarmIntent.putExtra("TONE_URI", savedToneUri);
+            // Tras reiniciar AlarmManager no conserva ninguna alarma: el registro empieza vacío.
+            // En un reintento, lo ya armado sigue en AlarmManager y el registro lo refleja
+            if (!retry) {
+                RequestCodeRegistry.clear(context);
             }
+            AlarmSnoozes.restore(context, System.currentTimeMillis());
+
+            // Solo las alarmas más próximas de todos los clústeres: coste acotado por ARMED_WINDOW
+            int operations = AlarmCoordinator.rearm(context);
+            AlarmEvents.postAll(context, AlarmEvents.RESTORED);
+            Log.i("BootReceiver", "¡Secuencia de alarmas restaurada! " + clusters.size() + " clústeres, "
+                    + operations + " operaciones en " + (System.nanoTime() - restoreStartNs) / 1000000 + " ms");
+        }
+    }
 
-            alarmIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-            // Bucle simple para reprogramar (usando la lógica de intervalo)
-            // Nota: Para ser perfecto, deberías calcular cuál es la siguiente alarma pendiente real.
-            // Aquí reprogramamos la secuencia desde la hora base.
-            for (int i = 0; i < alarmCount; i++) {
-                long currentTriggerTime = triggerTimeMs + ((long) i * interval * 60 * 1000);
-
-                // Si esta iteración específica ya pasó, la saltamos
-                if (currentTriggerTime < System.currentTimeMillis()) continue;
-
-                PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                        context,
-                        i, // ID único por iteración
-                        alarmIntent,
-                        PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-                );
-
-                try {
-                    alarmManager.setExactAndAllowWhileIdle(
-                            AlarmManager.RTC_WAKEUP,
-                            currentTriggerTime,
-                            pendingIntent
-                    );
-                } catch (SecurityException e) {
-                    Log.e("BootReceiver", "Error reprogramando alarma " + i);
+    /**
+     * Lleva el cursor de cada clúster al primer miembro pendiente en {@code now}, y los clústeres
+     * recurrentes que ya pasaron enteros a su siguiente ocurrencia; los de una sola vez quedan
+     * terminados. Compartido con TimeChangeReceiver (saltos de reloj). Devuelve false si se agotó
+     * el plazo del broadcast a mitad.
+     */
+    static boolean resumeClusters(Context context, Map<String, AlarmState> clusters, long now) {
+        for (AlarmState profile : clusters.values()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            ClusterPlan plan = profile.plan();
+            int firstPending = plan.firstPendingIndex(now);
+
+            if (firstPending < plan.size()) {
+                // Quedan miembros: seguimos por el cursor (y su tono), sin reconstruir el plan
+                int resume = Math.max(profile.nextIndex, firstPending);
+                if (resume != profile.nextIndex) {
+                    AlarmProfileStore.saveNextIndex(context, profile, resume);
                 }
+            } else if (profile.recurrence != null) {
+                // El clúster entero ya pasó (móvil apagado o reloj adelantado): siguiente ocurrencia de su regla
+                AlarmState rolled = ClusterScheduleEngine.rollForward(profile, now, TimeZone.getDefault().getID());
+                Log.w("BootReceiver", "El clúster '" + profile.clusterId + "' ya pasó. Reprogramando para "
+                        + rolled.baseTimeMs + ".");
+                // Lo guardamos para que AlarmReceiver avance sobre la misma base
+                AlarmProfileStore.save(context, rolled);
+            } else if (profile.nextIndex < plan.size()) {
+                // Alarma de una sola vez que ya pasó: queda terminada, no se repite al día siguiente
+                Log.w("BootReceiver", "El clúster '" + profile.clusterId + "' ya pasó y no se repite.");
+                AlarmProfileStore.saveNextIndex(context, profile, plan.size());
             }
-            Log.i("BootReceiver", "¡Secuencia de alarmas restaurada!");
-
+        }
+        return true;
     }
 }
-}
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.anonymous.echoalarm.modules;
+
+import java.util.Arrays;
+
+/**
+ * Time-ordered index over many clusters: a primitive binary min-heap with one entry per cluster,
+ * keyed by the fire time of that cluster's next pending member. Clusters are addressed by their
+ * stable slot number.
+ *
+ * <ul>
+ *   <li>{@link #put} / {@link #remove} / {@link #advance}: O(log n)</li>
+ *   <li>{@link #peekTime} / {@link #peekSlot}: O(1)</li>
+ *   <li>{@link #nearest}: the k next fires across all clusters in O(k log n), without
+ *       modifying the index</li>
+ * </ul>
+ *
+ * Pure Java, no Android dependencies.
+ */
+public final class ClusterIndex {
+
+    private long[] heapTimes = new long[8];
+    private int[] heapSlots = new int[8];
+    private int size;
+
+    /** Heap position of each slot, -1 when the slot is not in the heap. */
+    private int[] positions = new int[0];
+    /** Next pending member of each slot. */
+    private int[] cursors = new int[0];
+    /** Whether each slot only contributes its next member to {@link #nearest} (chained mode). */
+    private boolean[] chained = new boolean[0];
+    private long[][] plans = new long[0][];
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds or replaces a cluster. Members before {@code fromIndex} are considered fired.
+     * A cluster with nothing pending is simply not indexed.
+     */
+    public void put(int slot, long[] fireTimes, int fromIndex, boolean chainedMode) {
+        ensureSlot(slot);
+        remove(slot);
+        plans[slot] = fireTimes;
+        cursors[slot] = fromIndex;
+        chained[slot] = chainedMode;
+        if (fromIndex < fireTimes.length) {
+            push(slot, fireTimes[fromIndex]);
+        }
+    }
+
+    public void remove(int slot) {
+        if (slot >= positions.length || positions[slot] < 0) {
+            return;
+        }
+        int position = positions[slot];
+        positions[slot] = -1;
+        size--;
+        if (position == size) {
+            return;
+        }
+        int lastSlot = heapSlots[size];
+        moveTo(position, heapTimes[size], lastSlot);
+        siftDown(position);
+        siftUp(positions[lastSlot]);
+    }
+
+    /** Marks the next member of {@code slot} as fired and re-keys the cluster. */
+    public void advance(int slot) {
+        if (slot >= positions.length || positions[slot] < 0) {
+            return;
+        }
+        int next = ++cursors[slot];
+        if (next >= plans[slot].length) {
+            remove(slot);
+            return;
+        }
+        int position = positions[slot];
+        heapTimes[position] = plans[slot][next];
+        siftDown(position);
+    }
+
+    /** Fire time of the nearest pending member, or {@link Long#MAX_VALUE} if empty. */
+    public long peekTime() {
+        return size == 0 ? Long.MAX_VALUE : heapTimes[0];
+    }
+
+    /** Slot of the nearest pending member, or -1 if empty. */
+    public int peekSlot() {
+        return size == 0 ? -1 : heapSlots[0];
+    }
+
+    /** Next pending member index of a slot. */
+    public int cursorOf(int slot) {
+        return cursors[slot];
+    }
+
+    /**
+     * Writes the {@code k} nearest pending fires into the output arrays (time order) and returns
+     * how many were written. Chained clusters contribute at most their next member.
+     */
+    public int nearest(int k, long[] outTimes, int[] outSlots, int[] outMembers) {
+        ClusterIndex scratch = copy();
+        int count = 0;
+        while (count < k && !scratch.isEmpty()) {
+            int slot = scratch.peekSlot();
+            outTimes[count] = scratch.peekTime();
+            outSlots[count] = slot;
+            outMembers[count] = scratch.cursors[slot];
+            count++;
+            if (chained[slot]) {
+                scratch.remove(slot);
+            } else {
+                scratch.advance(slot);
+            }
+        }
+        return count;
+    }
+
+    private ClusterIndex copy() {
+        ClusterIndex copy = new ClusterIndex();
+        copy.heapTimes = Arrays.copyOf(heapTimes, heapTimes.length);
+        copy.heapSlots = Arrays.copyOf(heapSlots, heapSlots.length);
+        copy.size = size;
+        copy.positions = Arrays.copyOf(positions, positions.length);
+        copy.cursors = Arrays.copyOf(cursors, cursors.length);
+        copy.chained = chained;
+        copy.plans = plans;
+        return copy;
+    }
+
+    private void ensureSlot(int slot) {
+        if (slot < positions.length) {
+            return;
+        }
+        int capacity = Math.max(slot + 1, positions.length * 2);
+        int oldLength = positions.length;
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldLength, capacity, -1);
+        cursors = Arrays.copyOf(cursors, capacity);
+        chained = Arrays.copyOf(chained, capacity);
+        plans = Arrays.copyOf(plans, capacity);
+    }
+
+    private void push(int slot, long time) {
+        if (size == heapTimes.length) {
+            heapTimes = Arrays.copyOf(heapTimes, size * 2);
+            heapSlots = Arrays.copyOf(heapSlots, size * 2);
+        }
+        moveTo(size, time, slot);
+        size++;
+        siftUp(size - 1);
+    }
+
+    private void siftUp(int position) {
+        long time = heapTimes[position];
+        int slot = heapSlots[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heapTimes[parent] <= time) {
+                break;
+            }
+            moveTo(position, heapTimes[parent], heapSlots[parent]);
+            position = parent;
+        }
+        moveTo(position, time, slot);
+    }
+
+    private void siftDown(int position) {
+        long time = heapTimes[position];
+        int slot = heapSlots[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && heapTimes[right] < heapTimes[child]) {
+                child = right;
+            }
+            if (time <= heapTimes[child]) {
+                break;
+            }
+            moveTo(position, heapTimes[child], heapSlots[child]);
+            position = child;
+        }
+        moveTo(position, time, slot);
+    }
+
+    private void moveTo(int position, long time, int slot) {
+        heapTimes[position] = time;
+        heapSlots[position] = slot;
+        positions[slot] = position;
+    }
+}
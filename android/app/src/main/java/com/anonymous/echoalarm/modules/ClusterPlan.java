@@ -0,0 +1,87 @@
+package com.anonymous.echoalarm.modules;
+
+import java.util.Arrays;
+
+/**
+ * Compact, immutable plan of a cluster: one fire time (epoch ms) and one tone index per member.
+ * Built by {@link ClusterScheduleEngine}. Pure Java, no Android dependencies.
+ */
+public final class ClusterPlan {
+
+    /** Tone index used when the pool is empty (the service falls back to the system alarm tone). */
+    public static final int NO_TONE = -1;
+
+    /**
+     * How long a member stays due after its time if it has not fired. Only a window of the
+     * nearest members is armed, and many clusters can share a minute: the members left out of
+     * the window are armed by the re-arm that follows the first fires and go off at once,
+     * instead of being skipped as past. Longer lapses (device off, clock moved) still skip them.
+     */
+    public static final long DUE_GRACE_MS = 60 * 1000L;
+
+    private final long[] fireTimes;
+    private final int[] toneIndices;
+
+    ClusterPlan(long[] fireTimes, int[] toneIndices) {
+        this.fireTimes = fireTimes;
+        this.toneIndices = toneIndices;
+    }
+
+    public int size() {
+        return fireTimes.length;
+    }
+
+    public long fireTimeAt(int index) {
+        return fireTimes[index];
+    }
+
+    public int toneIndexAt(int index) {
+        return toneIndices[index];
+    }
+
+    /**
+     * Index of the first member that fires at or after {@code nowMs}, or {@link #size()} if the
+     * whole cluster is already in the past. Fire times are sorted, so this is a binary search.
+     */
+    public int firstPendingIndex(long nowMs) {
+        int low = 0;
+        int high = fireTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fireTimes[mid] < nowMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Index of the first member still due at {@code nowMs}: at most {@link #DUE_GRACE_MS} old. */
+    public int firstDueIndex(long nowMs) {
+        return firstPendingIndex(nowMs - DUE_GRACE_MS);
+    }
+
+    /**
+     * Member a cluster session fires after {@code firedIndex}: the next pending one, if it is due
+     * within {@code maxGapMs} of {@code nowMs}. -1 hands the rest of the cluster back to
+     * AlarmManager (nothing left, or a gap too long to keep the device awake through).
+     */
+    public int sessionNext(int firedIndex, long nowMs, long maxGapMs) {
+        int next = Math.max(firedIndex + 1, firstPendingIndex(nowMs));
+        if (next >= fireTimes.length || fireTimes[next] - nowMs > maxGapMs) {
+            return -1;
+        }
+        return next;
+    }
+
+    /** Copy of the fire times, for persistence. */
+    public long[] copyFireTimes() {
+        return Arrays.copyOf(fireTimes, fireTimes.length);
+    }
+
+    /** Copy of the tone indices, for persistence. */
+    public int[] copyToneIndices() {
+        return Arrays.copyOf(toneIndices, toneIndices.length);
+    }
+}
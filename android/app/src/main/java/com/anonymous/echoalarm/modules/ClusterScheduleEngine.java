@@ -0,0 +1,143 @@
+package com.anonymous.echoalarm.modules;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Single source of truth for the cluster math: {@code triggerTime = T + i * I} and
+ * {@code tone = pool[i % pool.length]}. Shared by {@link AlarmSchedulerModule} and
+ * {@link BootReceiver}. Pure Java so it can run (and be measured) on a plain JVM.
+ */
+public final class ClusterScheduleEngine {
+
+    public static final long MINUTE_MS = 60L * 1000L;
+    public static final long DAY_MS = 24L * 60L * MINUTE_MS;
+
+    private ClusterScheduleEngine() {
+    }
+
+    /**
+     * Parses the ISO-8601 {@code wakeTime} sent from JS (e.g. {@code 2025-01-01T07:00:00.000Z}).
+     * Requires API 26 (java.time); callers keep their own fallback for older devices.
+     */
+    public static long parseWakeTime(String wakeTimeIso) {
+        return Instant.parse(wakeTimeIso).toEpochMilli();
+    }
+
+    /**
+     * Builds the full plan of a cluster.
+     *
+     * @param baseTimeMs      fire time of the first member (T), epoch ms
+     * @param intervalMinutes minutes between members (I)
+     * @param alarmCount      number of members (N)
+     * @param toneCount       size of the tone pool; 0 means every member uses {@link ClusterPlan#NO_TONE}
+     */
+    public static ClusterPlan buildPlan(long baseTimeMs, int intervalMinutes, int alarmCount, int toneCount) {
+        int count = Math.max(0, alarmCount);
+        long stepMs = (long) Math.max(0, intervalMinutes) * MINUTE_MS;
+
+        long[] fireTimes = new long[count];
+        int[] toneIndices = new int[count];
+
+        long fireTime = baseTimeMs;
+        int toneIndex = 0;
+        for (int i = 0; i < count; i++) {
+            fireTimes[i] = fireTime;
+            fireTime += stepMs;
+
+            if (toneCount > 0) {
+                toneIndices[i] = toneIndex;
+                // Same result as i % toneCount without a division per member
+                if (++toneIndex == toneCount) {
+                    toneIndex = 0;
+                }
+            } else {
+                toneIndices[i] = ClusterPlan.NO_TONE;
+            }
+        }
+        return new ClusterPlan(fireTimes, toneIndices);
+    }
+
+    /**
+     * Base time of a recurring cluster being set: the first occurrence of the rule from
+     * {@code wakeTimeMs}, or, if that whole cluster would already be over, the first one that
+     * still has members pending at {@code nowMs}.
+     */
+    public static long firstOccurrence(RecurrenceRule rule, long wakeTimeMs, long nowMs, int intervalMinutes,
+                                       int alarmCount) {
+        long spanMs = (long) Math.max(0, alarmCount - 1) * Math.max(0, intervalMinutes) * MINUTE_MS;
+        return rule.nextAfter(Math.max(wakeTimeMs, nowMs - spanMs) - 1);
+    }
+
+    /**
+     * The cluster's next occurrence once its members are in the past: same profile and tones,
+     * plan rebuilt on the first base time after {@code nowMs}. Recurring clusters take it from
+     * their {@link OccurrenceWindow}; clusters without a rule move to the same local time on the
+     * next day in {@code defaultTimeZoneId} (the receivers leave finished one-off clusters finished
+     * and only roll recurring ones).
+     */
+    public static AlarmState rollForward(AlarmState state, long nowMs, String defaultTimeZoneId) {
+        long baseTimeMs;
+        long[] upcoming = state.upcoming;
+        if (state.recurrence != null) {
+            long[] window = OccurrenceWindow.advance(state.recurrence, state.upcoming, nowMs);
+            baseTimeMs = window[0];
+            upcoming = Arrays.copyOfRange(window, 1, window.length);
+        } else {
+            baseTimeMs = RecurrenceRule.daily(state.baseTimeMs, defaultTimeZoneId).nextAfter(nowMs);
+        }
+
+        ClusterPlan plan = buildPlan(baseTimeMs, state.interval, state.alarmCount, state.toneUris.length);
+        AlarmState rolled = AlarmState.of(state.clusterId, state.slot, plan, baseTimeMs, state.interval,
+                state.alarmCount, state.toneUris, state.toneNames, state.chainedMode);
+        rolled.recurrence = state.recurrence;
+        rolled.upcoming = upcoming;
+        return rolled;
+    }
+
+    /**
+     * The cluster after the device moved from {@code fromTimeZoneId} to {@code toTimeZoneId}:
+     * clusters that follow the device's wall time (one-offs, and rules set without an explicit
+     * zone) keep their local time in the new zone, with the same tones and cursor; a rule pinned
+     * to its own zone keeps its instants. Returns {@code state} itself when nothing moves, e.g.
+     * between zones with the same offset at that time.
+     */
+    public static AlarmState rezone(AlarmState state, String fromTimeZoneId, String toTimeZoneId) {
+        RecurrenceRule rule = state.recurrence;
+        if (rule != null && !rule.followsDevice) {
+            return state;
+        }
+        long baseTimeMs = sameWallTime(state.baseTimeMs, fromTimeZoneId, toTimeZoneId);
+        if (baseTimeMs == state.baseTimeMs && (rule == null || rule.timeZoneId.equals(toTimeZoneId))) {
+            return state;
+        }
+
+        ClusterPlan plan = buildPlan(baseTimeMs, state.interval, state.alarmCount, state.toneUris.length);
+        AlarmState moved = AlarmState.of(state.clusterId, state.slot, plan, baseTimeMs, state.interval,
+                state.alarmCount, state.toneUris, state.toneNames, state.chainedMode);
+        moved.active = state.active;
+        moved.nextIndex = state.nextIndex;
+        if (rule != null) {
+            moved.recurrence = rule.withTimeZone(toTimeZoneId);
+            moved.upcoming = OccurrenceWindow.fill(moved.recurrence, baseTimeMs);
+        }
+        return moved;
+    }
+
+    /** Instant with the same local date and time in {@code toTimeZoneId} as {@code timeMs} has in {@code fromTimeZoneId}. */
+    public static long sameWallTime(long timeMs, String fromTimeZoneId, String toTimeZoneId) {
+        if (fromTimeZoneId.equals(toTimeZoneId)) {
+            return timeMs;
+        }
+        Calendar from = Calendar.getInstance(TimeZone.getTimeZone(fromTimeZoneId));
+        from.setTimeInMillis(timeMs);
+        Calendar to = Calendar.getInstance(TimeZone.getTimeZone(toTimeZoneId));
+        to.clear();
+        to.set(from.get(Calendar.YEAR), from.get(Calendar.MONTH), from.get(Calendar.DAY_OF_MONTH),
+                from.get(Calendar.HOUR_OF_DAY), from.get(Calendar.MINUTE), from.get(Calendar.SECOND));
+        to.set(Calendar.MILLISECOND, from.get(Calendar.MILLISECOND));
+        return to.getTimeInMillis();
+    }
+}
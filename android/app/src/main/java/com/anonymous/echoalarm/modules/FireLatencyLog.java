@@ -0,0 +1,57 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Android entry point to the {@link FireLatencyRing} in the app's files dir. The slot returned by
+ * {@link #begin} travels with the fire through {@link #EXTRA_LATENCY_SLOT} so each stage marks
+ * the same record.
+ */
+final class FireLatencyLog {
+
+    static final String EXTRA_LATENCY_SLOT = "LATENCY_SLOT";
+    private static final String RING_FILE = "fire_latency.ring";
+
+    private static FireLatencyRing ring;
+    private static boolean unavailable;
+
+    private FireLatencyLog() {
+    }
+
+    /** Opens a record for a fire; returns its slot, or -1 if the ring cannot be used. */
+    static int begin(Context context, long scheduledAtMs) {
+        FireLatencyRing target = ring(context);
+        return target != null ? target.begin(scheduledAtMs) : -1;
+    }
+
+    static void mark(Context context, int slot, int stage) {
+        mark(context, slot, stage, System.currentTimeMillis());
+    }
+
+    static void mark(Context context, int slot, int stage, long atMs) {
+        if (slot < 0) {
+            return;
+        }
+        FireLatencyRing target = ring(context);
+        if (target != null) {
+            target.mark(slot, stage, atMs);
+        }
+    }
+
+    /** The ring, or null if it could not be mapped (latency is best-effort, never blocks a fire). */
+    static synchronized FireLatencyRing ring(Context context) {
+        if (ring == null && !unavailable) {
+            try {
+                ring = new FireLatencyRing(new File(context.getApplicationContext().getFilesDir(), RING_FILE));
+            } catch (IOException e) {
+                Log.e("FireLatencyLog", "Error abriendo el ring de latencias: " + e.getMessage());
+                unavailable = true;
+            }
+        }
+        return ring;
+    }
+}
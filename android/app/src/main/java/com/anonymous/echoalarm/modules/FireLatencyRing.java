@@ -0,0 +1,147 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring of per-fire timestamps: the scheduled time plus the wall-clock time each stage
+ * of the wake-up path was reached. Backed by a memory-mapped file so every process writing to it
+ * sees the same ring and the data survives the service being killed.
+ *
+ * Layout: [int magic][int capacity][int sequence][int recordBytes], then {@link #CAPACITY} records
+ * of {@code 1 + STAGE_COUNT} longs. {@link #begin} and {@link #mark} only do absolute puts into
+ * the mapped buffer, so the recording path does not allocate.
+ */
+public final class FireLatencyRing {
+
+    public static final int STAGE_RECEIVER = 0;
+    public static final int STAGE_SERVICE = 1;
+    public static final int STAGE_AUDIO = 2;
+    public static final int STAGE_SCREEN = 3;
+    /** The fire's wake lock was released (playback started, service stopped or timeout). */
+    public static final int STAGE_WAKE_RELEASE = 4;
+    /** The fire found a player already prepared by the warm-up alarm (a flag, marked with the service stage). */
+    public static final int STAGE_WARMED = 5;
+    public static final int STAGE_COUNT = 6;
+
+    /** Pseudo-stage for {@link #spans}: the scheduled time of the fire. */
+    public static final int SCHEDULED = -1;
+
+    /** Names used in the stats returned to JS, indexed by stage. */
+    public static final String[] STAGE_NAMES = {"receiver", "service", "audio", "screen", "wakeRelease", "warmed"};
+
+    public static final int CAPACITY = 128;
+
+    private static final int MAGIC = 0x45434C52; // "ECLR"
+    private static final int HEADER_BYTES = 16;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int RECORD_BYTES_OFFSET = 12;
+    private static final int RECORD_BYTES = (1 + STAGE_COUNT) * 8;
+
+    private final ByteBuffer buffer;
+
+    public FireLatencyRing(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) CAPACITY * RECORD_BYTES);
+        }
+        initHeader();
+    }
+
+    /** Ring over a caller-provided buffer (heap-backed in the simulator). */
+    public FireLatencyRing(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_BYTES + CAPACITY * RECORD_BYTES) {
+            throw new IllegalArgumentException("Buffer too small for the ring");
+        }
+        this.buffer = buffer;
+        initHeader();
+    }
+
+    private void initHeader() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != CAPACITY
+                || buffer.getInt(RECORD_BYTES_OFFSET) != RECORD_BYTES) {
+            for (int i = 0; i < HEADER_BYTES + CAPACITY * RECORD_BYTES; i += 8) {
+                buffer.putLong(i, 0L);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, CAPACITY);
+            buffer.putInt(RECORD_BYTES_OFFSET, RECORD_BYTES);
+        }
+    }
+
+    /** Starts a record for a fire scheduled at {@code scheduledAtMs}; returns its slot. */
+    public synchronized int begin(long scheduledAtMs) {
+        int sequence = buffer.getInt(SEQUENCE_OFFSET);
+        int slot = (sequence & Integer.MAX_VALUE) % CAPACITY;
+        buffer.putInt(SEQUENCE_OFFSET, sequence + 1);
+
+        int offset = HEADER_BYTES + slot * RECORD_BYTES;
+        buffer.putLong(offset, scheduledAtMs);
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            buffer.putLong(offset + 8 + stage * 8, 0L);
+        }
+        return slot;
+    }
+
+    /** Records the first time a stage was reached for a slot; later marks of the same stage are ignored. */
+    public synchronized void mark(int slot, int stage, long atMs) {
+        if (slot < 0 || slot >= CAPACITY || stage < 0 || stage >= STAGE_COUNT) {
+            return;
+        }
+        int offset = HEADER_BYTES + slot * RECORD_BYTES + 8 + stage * 8;
+        if (buffer.getLong(offset) == 0L) {
+            buffer.putLong(offset, atMs);
+        }
+    }
+
+    /** Sorted delays (stage time minus scheduled time) of every record that reached the stage. */
+    public long[] latencies(int stage) {
+        return spans(SCHEDULED, stage);
+    }
+
+    /**
+     * Sorted time from {@code fromStage} (or {@link #SCHEDULED}) to {@code toStage} of every record
+     * that reached both, e.g. receiver to wake-lock release for the wake lock hold time.
+     */
+    public long[] spans(int fromStage, int toStage) {
+        return spansWhere(fromStage, toStage, -1, false);
+    }
+
+    /**
+     * Like {@link #spans}, restricted to records that did ({@code reached}) or did not reach
+     * {@code flagStage}; e.g. audio latency of warm fires vs. cold ones with {@link #STAGE_WARMED}.
+     * A negative {@code flagStage} keeps every record.
+     */
+    public synchronized long[] spansWhere(int fromStage, int toStage, int flagStage, boolean reached) {
+        long[] values = new long[CAPACITY];
+        int count = 0;
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            int offset = HEADER_BYTES + slot * RECORD_BYTES;
+            if (flagStage >= 0 && (buffer.getLong(offset + 8 + flagStage * 8) != 0L) != reached) {
+                continue;
+            }
+            long from = buffer.getLong(offset + 8 + fromStage * 8);
+            long to = buffer.getLong(offset + 8 + toStage * 8);
+            if (from != 0L && to != 0L) {
+                values[count++] = to - from;
+            }
+        }
+        long[] result = Arrays.copyOf(values, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Nearest-rank percentile of a sorted array; 0 when empty. */
+    public static long percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
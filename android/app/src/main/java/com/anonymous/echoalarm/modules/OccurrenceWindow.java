@@ -0,0 +1,47 @@
+package com.anonymous.echoalarm.modules;
+
+import java.util.Arrays;
+
+/**
+ * Bounded index of a recurring cluster's upcoming base times, kept sorted in
+ * {@link AlarmState#upcoming}. The rule is only evaluated when the window is empty or fully in
+ * the past, {@link #SIZE} occurrences at a time; rolling a finished cluster over to its next
+ * occurrence is otherwise a binary search over at most {@link #SIZE} longs. Pure Java.
+ */
+public final class OccurrenceWindow {
+
+    /** Occurrences materialized per refill (a bit more than a week of daily wake-ups). */
+    public static final int SIZE = 8;
+
+    private OccurrenceWindow() {
+    }
+
+    /** Fills a fresh window with the occurrences after {@code afterMs}. */
+    public static long[] fill(RecurrenceRule rule, long afterMs) {
+        long[] window = new long[SIZE];
+        rule.materialize(afterMs, window);
+        return window;
+    }
+
+    /**
+     * Window starting at the first occurrence strictly after {@code afterMs}: the occurrences it
+     * passes are dropped, and the rule is evaluated again only when none is left.
+     */
+    public static long[] advance(RecurrenceRule rule, long[] window, long afterMs) {
+        int low = 0;
+        int high = window.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (window[mid] <= afterMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == window.length) {
+            // Exhausted (or the clock moved far ahead): evaluate the rule again
+            return fill(rule, afterMs);
+        }
+        return low == 0 ? window : Arrays.copyOfRange(window, low, window.length);
+    }
+}
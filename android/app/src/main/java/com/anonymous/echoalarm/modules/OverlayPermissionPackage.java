@@ -1,29 +1,42 @@
 package com.anonymous.echoalarm.modules;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
-public class OverlayPermissionPackage implements ReactPackage {
+public class OverlayPermissionPackage extends BaseReactPackage {
 
-    @NonNull
+    @Nullable
     @Override
-    public List<ViewManager> createViewManagers(@NonNull ReactApplicationContext reactApplicationContext) {
-        return Collections.emptyList();
+    public NativeModule getModule(@NonNull String name, @NonNull ReactApplicationContext reactContext) {
+        if (OverlayPermissionsModule.NAME.equals(name)) {
+            return new OverlayPermissionsModule(reactContext);
+        }
+        return null;
     }
 
     @NonNull
     @Override
-    public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new OverlayPermissionsModule(reactContext));
-        return modules;
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> modules = new HashMap<>();
+            modules.put(OverlayPermissionsModule.NAME, new ReactModuleInfo(
+                    OverlayPermissionsModule.NAME,
+                    OverlayPermissionsModule.class.getName(),
+                    false, // canOverrideExistingModule
+                    false, // needsEagerInit
+                    false, // isCxxModule
+                    true   // isTurboModule
+            ));
+            return modules;
+        };
     }
 }
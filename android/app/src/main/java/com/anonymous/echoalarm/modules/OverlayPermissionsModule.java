@@ -9,10 +9,10 @@ import androidx.annotation.NonNull;
 
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
-import com.facebook.react.bridge.ReactMethod;
 
-public class OverlayPermissionsModule extends ReactContextBaseJavaModule {
+import com.anonymous.echoalarm.specs.NativeOverlayPermissionModuleSpec;
+
+public class OverlayPermissionsModule extends NativeOverlayPermissionModuleSpec {
 
     private final ReactApplicationContext reactContext;
     public OverlayPermissionsModule(ReactApplicationContext reactContext) {
@@ -23,10 +23,10 @@ public class OverlayPermissionsModule extends ReactContextBaseJavaModule {
     @NonNull
     @Override
     public String getName() {
-        return "OverlayPermissionModule";
+        return NAME;
     }
 
-    @ReactMethod
+    @Override
     public void hasPermission(Promise promise) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             promise.resolve(Settings.canDrawOverlays(reactContext));
@@ -35,7 +35,7 @@ public class OverlayPermissionsModule extends ReactContextBaseJavaModule {
         }
     }
 
-    @ReactMethod
+    @Override
     public void requestPermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             if (!Settings.canDrawOverlays(reactContext)) {
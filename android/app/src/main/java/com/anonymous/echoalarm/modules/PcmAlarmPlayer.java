@@ -0,0 +1,330 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.net.Uri;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Low-latency alarm playback: streams PCM into an AudioTrack (USAGE_ALARM) that is created up
+ * front, in the service's onCreate. The PCM comes from {@link ToneDecodeCache} when the tone was
+ * transcoded ahead of time, and from {@link ToneDecoder} otherwise.
+ *
+ * A decoder thread and a writer thread exchange chunks from a small preallocated pool, so the
+ * track is fed from one buffer while the next one is being decoded and nothing is allocated per
+ * chunk. The tone loops until {@link #stop()}, which returns at once: the writer thread owns the
+ * track while playing and silences it on its way out (see {@link Session}).
+ */
+final class PcmAlarmPlayer {
+
+    interface Listener {
+        /** First PCM frames were handed to the AudioTrack. Called on the writer thread. */
+        void onFirstAudio();
+
+        /** Decoding failed; the caller should fall back to MediaPlayer. Called on the decoder thread. */
+        void onError(Exception e);
+    }
+
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+    private static final int DEFAULT_CHANNELS = 2;
+    private static final int POOL_SIZE = 4;
+    private static final int CHUNK_BYTES = 16 * 1024;
+    private static final int PAGE_BYTES = 4096;
+    /** Cached PCM faulted in by {@link #prime}: the first few seconds are enough to start. */
+    private static final int PRIME_BYTES = 256 * 1024;
+
+    private static final class PcmChunk {
+        final byte[] data = new byte[CHUNK_BYTES];
+        int length;
+        int sampleRate;
+        int channels;
+    }
+
+    // Guarded by this: idle between sessions, null while a session holds them
+    private ArrayBlockingQueue<PcmChunk> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private AudioTrack track;
+    private int trackSampleRate;
+    private int trackChannels;
+    private boolean released;
+
+    private Session session;
+
+    // Cache entry mapped by prime(), handed to the next start() for the same tone
+    private Uri primedUri;
+    private ToneDecodeCache.Entry primedEntry;
+
+    PcmAlarmPlayer() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(new PcmChunk());
+        }
+        // Created now so the first fire does not pay for it
+        track = createTrack(DEFAULT_SAMPLE_RATE, DEFAULT_CHANNELS);
+        trackSampleRate = DEFAULT_SAMPLE_RATE;
+        trackChannels = DEFAULT_CHANNELS;
+    }
+
+    /**
+     * Warm-up ahead of a fire: maps the tone's cached PCM, faults in its first pages and recreates
+     * the track if the tone's format differs, so {@link #start} goes straight to writing. Tones
+     * without a cache entry are decoded at start as usual.
+     */
+    synchronized void prime(Context context, Uri toneUri) {
+        if (session != null || released) {
+            return;
+        }
+        primedUri = null;
+        primedEntry = null;
+        ToneDecodeCache.Entry entry = ToneDecodeCache.open(context, toneUri.toString());
+        if (entry == null) {
+            return;
+        }
+        int touch = Math.min(entry.pcm.limit(), PRIME_BYTES);
+        for (int i = 0; i < touch; i += PAGE_BYTES) {
+            entry.pcm.get(i);
+        }
+        if (track == null || entry.sampleRate != trackSampleRate || entry.channels != trackChannels) {
+            if (track != null) {
+                track.release();
+            }
+            track = createTrack(entry.sampleRate, entry.channels);
+            trackSampleRate = entry.sampleRate;
+            trackChannels = entry.channels;
+        }
+        primedUri = toneUri;
+        primedEntry = entry;
+    }
+
+    synchronized void start(Context context, Uri toneUri, Listener listener) {
+        stop();
+        if (released) {
+            return;
+        }
+
+        ToneDecodeCache.Entry primed = toneUri.equals(primedUri) ? primedEntry : null;
+        primedUri = null;
+        primedEntry = null;
+
+        // The previous session may still be on its way out with the idle track and pool
+        ArrayBlockingQueue<PcmChunk> free = pool;
+        if (free == null) {
+            free = new ArrayBlockingQueue<>(POOL_SIZE);
+            for (int i = 0; i < POOL_SIZE; i++) {
+                free.add(new PcmChunk());
+            }
+        }
+        final Session started = new Session(free, track, trackSampleRate, trackChannels, listener);
+        pool = null;
+        track = null;
+        session = started;
+
+        started.decoderThread = new Thread(() -> started.decodeLoop(context, toneUri, primed), "PcmAlarmDecoder");
+        started.writerThread = new Thread(started::writeLoop, "PcmAlarmWriter");
+        started.writerThread.setPriority(Thread.MAX_PRIORITY);
+        started.writerThread.start();
+        started.decoderThread.start();
+    }
+
+    /**
+     * Stops the current playback without waiting for it: the threads are told to stop and the
+     * writer silences the track on its way out (within one write), so the caller, usually the
+     * main thread, never blocks on a join.
+     */
+    synchronized void stop() {
+        Session stopped = session;
+        if (stopped == null) {
+            return;
+        }
+        session = null;
+        stopped.running = false;
+        stopped.decoderThread.interrupt();
+        stopped.writerThread.interrupt();
+    }
+
+    /** Releases the idle track now, and the one a stopping session still holds once it hands it back. */
+    synchronized void release() {
+        stop();
+        released = true;
+        if (track != null) {
+            track.release();
+            track = null;
+        }
+        pool = null;
+    }
+
+    /** Takes a finished session's track and pool back for the next start, unless a newer session or release() no longer needs them. */
+    private synchronized void handBack(Session finished) {
+        if (!released && track == null && session == null) {
+            track = finished.track;
+            trackSampleRate = finished.trackSampleRate;
+            trackChannels = finished.trackChannels;
+            pool = finished.free;
+        } else if (finished.track != null) {
+            finished.track.release();
+        }
+        finished.track = null;
+    }
+
+    /**
+     * One playback, from {@link #start} until its threads have exited. While it runs, its writer
+     * thread is the only one touching {@link #track}; the track and the chunk pool are taken from
+     * the player at start and handed back by the writer on its way out, under the player's lock.
+     */
+    private final class Session {
+        final ArrayBlockingQueue<PcmChunk> free;
+        final ArrayBlockingQueue<PcmChunk> filled = new ArrayBlockingQueue<>(POOL_SIZE);
+        final Listener listener;
+        volatile boolean running = true;
+        Thread decoderThread;
+        Thread writerThread;
+
+        // Owned by the writer thread
+        AudioTrack track;
+        int trackSampleRate;
+        int trackChannels;
+
+        Session(ArrayBlockingQueue<PcmChunk> free, AudioTrack track, int sampleRate, int channels, Listener listener) {
+            this.free = free;
+            this.track = track;
+            this.trackSampleRate = sampleRate;
+            this.trackChannels = channels;
+            this.listener = listener;
+        }
+
+        void decodeLoop(Context context, Uri toneUri, ToneDecodeCache.Entry primed) {
+            try {
+                ToneDecodeCache.Entry cached = primed != null ? primed : ToneDecodeCache.open(context, toneUri.toString());
+                if (cached != null) {
+                    // Pre-decoded: page the mapped PCM straight into the pool, no codec on this path
+                    while (running) {
+                        ByteBuffer pcm = cached.pcm.duplicate();
+                        enqueue(pcm, cached.sampleRate, cached.channels);
+                    }
+                    return;
+                }
+
+                ToneDecoder.decode(context, toneUri, new ToneDecoder.Sink() {
+                    @Override
+                    public boolean onPcm(ByteBuffer pcm, int sampleRate, int channels) throws InterruptedException {
+                        enqueue(pcm, sampleRate, channels);
+                        return running;
+                    }
+
+                    @Override
+                    public boolean onEndOfStream() {
+                        return running; // Loop the tone
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.e("PcmAlarmPlayer", "Error decoding tone: " + e.getMessage());
+                if (running) {
+                    listener.onError(e);
+                }
+            }
+        }
+
+        /** Copies decoded PCM into pooled chunks; blocks while the writer is behind (backpressure). */
+        private void enqueue(ByteBuffer pcm, int sampleRate, int channels) throws InterruptedException {
+            while (pcm.hasRemaining() && running) {
+                PcmChunk chunk = free.poll(50, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    continue;
+                }
+                int length = Math.min(pcm.remaining(), CHUNK_BYTES);
+                pcm.get(chunk.data, 0, length);
+                chunk.length = length;
+                chunk.sampleRate = sampleRate;
+                chunk.channels = channels;
+                filled.put(chunk);
+            }
+        }
+
+        void writeLoop() {
+            boolean firstAudio = true;
+            try {
+                while (running) {
+                    PcmChunk chunk = filled.poll(50, TimeUnit.MILLISECONDS);
+                    if (chunk == null) {
+                        continue;
+                    }
+                    if (track == null || chunk.sampleRate != trackSampleRate || chunk.channels != trackChannels) {
+                        if (track != null) {
+                            track.release();
+                        }
+                        track = createTrack(chunk.sampleRate, chunk.channels);
+                        trackSampleRate = chunk.sampleRate;
+                        trackChannels = chunk.channels;
+                    }
+                    if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                        track.play();
+                    }
+                    int written = track.write(chunk.data, 0, chunk.length);
+                    free.put(chunk);
+
+                    if (firstAudio && written > 0) {
+                        firstAudio = false;
+                        listener.onFirstAudio();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stopped while waiting for a chunk
+            } finally {
+                finish();
+            }
+        }
+
+        /** Runs on the writer thread once playback is over: silences the track and hands it back. */
+        private void finish() {
+            if (track != null) {
+                track.pause();
+                track.flush();
+            }
+            // The decoder is stopping too (within one poll): once it is out, no chunk is in flight
+            joinQuietly(decoderThread);
+            PcmChunk chunk;
+            while ((chunk = filled.poll()) != null) {
+                free.add(chunk);
+            }
+            handBack(this);
+        }
+    }
+
+    private static AudioTrack createTrack(int sampleRate, int channels) {
+        int channelMask = channels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+
+        return new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .setUsage(AudioAttributes.USAGE_ALARM)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(channelMask)
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .build())
+                .setBufferSizeInBytes(Math.max(minBuffer, 2 * CHUNK_BYTES))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+    }
+
+    /** Waits up to 500 ms for {@code thread}; a late interrupt from stop() does not cut the wait short. */
+    private static void joinQuietly(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        long left;
+        while (thread.isAlive() && (left = deadline - System.nanoTime()) > 0) {
+            try {
+                thread.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(left)));
+            } catch (InterruptedException e) {
+                // Only stop() interrupts the writer, and it is already stopping
+            }
+        }
+    }
+}
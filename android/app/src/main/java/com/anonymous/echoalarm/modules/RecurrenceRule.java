@@ -0,0 +1,159 @@
+package com.anonymous.echoalarm.modules;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * When a cluster repeats: every day, on selected weekdays or every N days, always at the same
+ * local wall time in the profile's time zone. Occurrences are computed with {@link Calendar}
+ * (java.time needs API 26) by setting the local hour and minute on each candidate day, so a DST
+ * change moves the UTC instant and keeps the wall time. A wall time that does not exist on a
+ * spring-forward day fires at the first valid instant after it (02:30 becomes 03:30). A rule
+ * set without an explicit zone {@link #followsDevice follows the device}: it is evaluated in the
+ * zone the device had when it was set and moved with {@link #withTimeZone} when that changes.
+ * Immutable; pure Java.
+ */
+public final class RecurrenceRule {
+
+    public static final int DAILY = 1;
+    public static final int WEEKLY = 2;
+    public static final int EVERY_N_DAYS = 3;
+
+    /** All seven days in {@link #weekdays}; bit {@code d} is {@code Calendar.SUNDAY + d}. */
+    public static final int ALL_WEEKDAYS = 0x7F;
+
+    private static final long DAY_MS = ClusterScheduleEngine.DAY_MS;
+
+    public final int type;
+    /** Local time of the cluster's first member, minutes after midnight. */
+    public final int minuteOfDay;
+    /** WEEKLY: bit mask of the days it fires on, bit 0 = Sunday. */
+    public final int weekdays;
+    /** EVERY_N_DAYS: period in days. */
+    public final int everyDays;
+    /** EVERY_N_DAYS: local day number (days since 1970-01-01 in the zone) of an occurrence. */
+    public final long anchorDay;
+    public final String timeZoneId;
+    /** The zone is the device's, not one the user chose: it moves when the device's zone does. */
+    public final boolean followsDevice;
+
+    private RecurrenceRule(int type, int minuteOfDay, int weekdays, int everyDays, long anchorDay, String timeZoneId,
+                           boolean followsDevice) {
+        this.type = type;
+        this.minuteOfDay = minuteOfDay;
+        this.weekdays = weekdays;
+        this.everyDays = everyDays;
+        this.anchorDay = anchorDay;
+        this.timeZoneId = timeZoneId;
+        this.followsDevice = followsDevice;
+    }
+
+    /** Rebuilds a rule pinned to its zone from its persisted fields. */
+    public static RecurrenceRule of(int type, int minuteOfDay, int weekdays, int everyDays, long anchorDay,
+                                    String timeZoneId) {
+        return of(type, minuteOfDay, weekdays, everyDays, anchorDay, timeZoneId, false);
+    }
+
+    /** Rebuilds a rule from its persisted fields. */
+    public static RecurrenceRule of(int type, int minuteOfDay, int weekdays, int everyDays, long anchorDay,
+                                    String timeZoneId, boolean followsDevice) {
+        if (type != DAILY && type != WEEKLY && type != EVERY_N_DAYS) {
+            throw new IllegalArgumentException("Unknown recurrence type " + type);
+        }
+        if (type == WEEKLY && (weekdays & ALL_WEEKDAYS) == 0) {
+            throw new IllegalArgumentException("Weekly recurrence without weekdays");
+        }
+        return new RecurrenceRule(type, minuteOfDay, weekdays & ALL_WEEKDAYS, Math.max(1, everyDays),
+                anchorDay, timeZoneId, followsDevice);
+    }
+
+    /** Same rule marked as following the device's zone (set without an explicit one). */
+    public RecurrenceRule followingDevice() {
+        return new RecurrenceRule(type, minuteOfDay, weekdays, everyDays, anchorDay, timeZoneId, true);
+    }
+
+    /**
+     * Same local wall time and days in another zone. The anchor of an EVERY_N_DAYS rule is a
+     * local day number, so the same local dates stay in the cycle.
+     */
+    public RecurrenceRule withTimeZone(String zoneId) {
+        return new RecurrenceRule(type, minuteOfDay, weekdays, everyDays, anchorDay, zoneId, followsDevice);
+    }
+
+    /** Every day at the local time of {@code firstFireMs}. */
+    public static RecurrenceRule daily(long firstFireMs, String timeZoneId) {
+        return of(DAILY, localMinuteOfDay(firstFireMs, timeZoneId), ALL_WEEKDAYS, 1, 0, timeZoneId);
+    }
+
+    /** On the {@code weekdays} (bit 0 = Sunday) at the local time of {@code firstFireMs}. */
+    public static RecurrenceRule weekly(int weekdays, long firstFireMs, String timeZoneId) {
+        return of(WEEKLY, localMinuteOfDay(firstFireMs, timeZoneId), weekdays, 1, 0, timeZoneId);
+    }
+
+    /** Every {@code days} days counting from the local day of {@code firstFireMs}, at its local time. */
+    public static RecurrenceRule everyNDays(int days, long firstFireMs, String timeZoneId) {
+        return of(EVERY_N_DAYS, localMinuteOfDay(firstFireMs, timeZoneId), ALL_WEEKDAYS, days,
+                localDay(firstFireMs, TimeZone.getTimeZone(timeZoneId)), timeZoneId);
+    }
+
+    /** First occurrence strictly after {@code afterMs}. */
+    public long nextAfter(long afterMs) {
+        TimeZone zone = TimeZone.getTimeZone(timeZoneId);
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(afterMs);
+        setLocalTime(calendar);
+        if (calendar.getTimeInMillis() <= afterMs) {
+            nextDay(calendar);
+        }
+
+        if (type == EVERY_N_DAYS) {
+            long behind = Math.floorMod(localDay(calendar.getTimeInMillis(), zone) - anchorDay, (long) everyDays);
+            if (behind != 0) {
+                calendar.add(Calendar.DAY_OF_MONTH, (int) (everyDays - behind));
+                setLocalTime(calendar);
+            }
+        } else if (type == WEEKLY) {
+            // At most six days to the next selected weekday
+            while ((weekdays & (1 << (calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY))) == 0) {
+                nextDay(calendar);
+            }
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Writes the next {@code out.length} occurrences after {@code afterMs} into {@code out}, in
+     * order. Used to refill an {@link OccurrenceWindow}.
+     */
+    public void materialize(long afterMs, long[] out) {
+        long t = afterMs;
+        for (int i = 0; i < out.length; i++) {
+            t = nextAfter(t);
+            out[i] = t;
+        }
+    }
+
+    private void setLocalTime(Calendar calendar) {
+        calendar.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        calendar.set(Calendar.MINUTE, minuteOfDay % 60);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+    }
+
+    private void nextDay(Calendar calendar) {
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        // Re-apply: after a gap day the lenient calendar may have shifted the hour
+        setLocalTime(calendar);
+    }
+
+    /** Minutes after local midnight of an instant in a zone. */
+    public static int localMinuteOfDay(long timeMs, String timeZoneId) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(timeZoneId));
+        calendar.setTimeInMillis(timeMs);
+        return calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+    }
+
+    private static long localDay(long timeMs, TimeZone zone) {
+        return Math.floorDiv(timeMs + zone.getOffset(timeMs), DAY_MS);
+    }
+}
@@ -0,0 +1,60 @@
+package com.anonymous.echoalarm.modules;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stable request codes for armed cluster members. A member keeps the same code for as long as it
+ * stays armed, so re-arming it updates the existing PendingIntent instead of creating a second
+ * one; freed codes are reused lowest-first so the code space stays small. Pure Java.
+ */
+public final class RequestCodeAllocator {
+
+    private final BitSet used = new BitSet();
+    private final Map<Long, Integer> codesByMember = new HashMap<>();
+
+    /** Packs a (cluster slot, member index) pair into the key used by the allocator and registry. */
+    public static long memberKey(int slot, int memberIndex) {
+        return ((long) slot << 32) | (memberIndex & 0xFFFFFFFFL);
+    }
+
+    public static int slotOf(long memberKey) {
+        return (int) (memberKey >>> 32);
+    }
+
+    public static int memberOf(long memberKey) {
+        return (int) memberKey;
+    }
+
+    /** Registers a code that is already armed (e.g. when rebuilding from the registry). */
+    public void restore(int code, long memberKey) {
+        used.set(code);
+        codesByMember.put(memberKey, code);
+    }
+
+    /** Code currently held by a member, or -1. */
+    public int codeOf(long memberKey) {
+        Integer code = codesByMember.get(memberKey);
+        return code != null ? code : -1;
+    }
+
+    /** Returns the member's existing code, or allocates the lowest free one. */
+    public int acquire(long memberKey) {
+        Integer existing = codesByMember.get(memberKey);
+        if (existing != null) {
+            return existing;
+        }
+        int code = used.nextClearBit(0);
+        used.set(code);
+        codesByMember.put(memberKey, code);
+        return code;
+    }
+
+    public void release(long memberKey) {
+        Integer code = codesByMember.remove(memberKey);
+        if (code != null) {
+            used.clear(code);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Persisted set of the AlarmReceiver request codes that are currently armed in AlarmManager,
+ * with their trigger time and the cluster member they belong to. Lets cancel/reschedule touch
+ * only live PendingIntents instead of sweeping a fixed range of codes. Kept in a
+ * {@link SharedStateFile}, since both processes arm and fire alarms.
+ */
+final class RequestCodeRegistry {
+
+    private static final String STATE_NAME = "EchoAlarmRegistry";
+    private static final String KEY_PREFIX = "code_";
+    private static final String MEMBER_PREFIX = "member_";
+    private static final String SIGNATURE_PREFIX = "sig_";
+    private static final String WARM_UP_PREFIX = "warm_";
+    private static final String KEY_INITIALIZED = "initialized";
+
+    /** Range swept by the old cancelAllAlarms; only used once to migrate installs without a registry. */
+    static final int LEGACY_SWEEP_SIZE = 50;
+
+    private RequestCodeRegistry() {
+    }
+
+    static void record(Context context, int requestCode, long triggerAtMs, long memberKey, int signature) {
+        edit(context, editor -> editor
+                .putLong(KEY_PREFIX + requestCode, triggerAtMs)
+                .putLong(MEMBER_PREFIX + requestCode, memberKey)
+                .putInt(SIGNATURE_PREFIX + requestCode, signature)
+                .putBoolean(KEY_INITIALIZED, true));
+    }
+
+    static void remove(Context context, int requestCode) {
+        edit(context, editor -> editor
+                .remove(KEY_PREFIX + requestCode)
+                .remove(MEMBER_PREFIX + requestCode)
+                .remove(SIGNATURE_PREFIX + requestCode));
+    }
+
+    /** Sorted request codes currently armed. */
+    static int[] liveCodes(Context context) {
+        return numbered(values(context), KEY_PREFIX);
+    }
+
+    /** Warm-up alarm armed for a cluster slot (one per slot, keyed by slot rather than code). */
+    static void recordWarmUp(Context context, int slot, long triggerAtMs) {
+        edit(context, editor -> editor.putLong(WARM_UP_PREFIX + slot, triggerAtMs));
+    }
+
+    static void removeWarmUp(Context context, int slot) {
+        edit(context, editor -> editor.remove(WARM_UP_PREFIX + slot));
+    }
+
+    /** Sorted slots that have a warm-up alarm armed. */
+    static int[] warmUpSlots(Context context) {
+        return numbered(values(context), WARM_UP_PREFIX);
+    }
+
+    static long warmUpTimeOf(Context context, int slot) {
+        return values(context).getLong(WARM_UP_PREFIX + slot, -1L);
+    }
+
+    /** Trigger time recorded for a code, or -1 if it is not armed. */
+    static long triggerTimeOf(Context context, int requestCode) {
+        return values(context).getLong(KEY_PREFIX + requestCode, -1L);
+    }
+
+    /**
+     * Member key ({@link RequestCodeAllocator#memberKey}) armed under a code, or -1 if the code
+     * is not armed or was armed before clusters had keys.
+     */
+    static long memberKeyOf(Context context, int requestCode) {
+        return values(context).getLong(MEMBER_PREFIX + requestCode, -1L);
+    }
+
+    /** {@link ArmedWindowPlanner#signatureOf} of the intent armed under a code, or 0 if unknown. */
+    static int signatureOf(Context context, int requestCode) {
+        return values(context).getInt(SIGNATURE_PREFIX + requestCode, 0);
+    }
+
+    /** Allocator seeded with every live code that has a known member. */
+    static RequestCodeAllocator loadAllocator(Context context) {
+        SharedStateFile.Values values = values(context);
+        RequestCodeAllocator allocator = new RequestCodeAllocator();
+        for (int code : numbered(values, MEMBER_PREFIX)) {
+            allocator.restore(code, values.getLong(MEMBER_PREFIX + code, -1L));
+        }
+        return allocator;
+    }
+
+    /**
+     * False on installs that armed alarms before the registry existed; their codes are unknown,
+     * so the caller must fall back to the legacy sweep once.
+     */
+    static boolean isInitialized(Context context) {
+        return values(context).getBoolean(KEY_INITIALIZED, false);
+    }
+
+    static void clear(Context context) {
+        edit(context, editor -> editor
+                .clear()
+                .putBoolean(KEY_INITIALIZED, true));
+    }
+
+    /** Sorted numbers of the keys that start with {@code prefix}. */
+    private static int[] numbered(SharedStateFile.Values values, String prefix) {
+        Set<String> keys = values.keys();
+        int[] numbers = new int[keys.size()];
+        int count = 0;
+        for (String key : keys) {
+            if (key.startsWith(prefix)) {
+                numbers[count++] = Integer.parseInt(key.substring(prefix.length()));
+            }
+        }
+        int[] result = Arrays.copyOf(numbers, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static SharedStateFile.Values values(Context context) {
+        try {
+            return state(context).read();
+        } catch (IOException e) {
+            Log.e("RequestCodeRegistry", "Error leyendo el registro: " + e.getMessage());
+            return SharedStateFile.EMPTY;
+        }
+    }
+
+    private static void edit(Context context, Consumer<SharedStateFile.Editor> edit) {
+        try {
+            state(context).edit(edit);
+        } catch (IOException e) {
+            Log.e("RequestCodeRegistry", "Error guardando el registro: " + e.getMessage());
+        }
+    }
+
+    // Not synced: a reboot clears the registry anyway, AlarmManager having dropped every code
+    private static SharedStateFile state(Context context) {
+        return AlarmProcess.sharedState(context, STATE_NAME, false);
+    }
+}
@@ -0,0 +1,322 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Small key-value file that the main and the alarm process both read and write, in place of
+ * SharedPreferences (whose MODE_MULTI_PROCESS is deprecated and loses concurrent writes).
+ *
+ * <pre>
+ * file  : int magic, short version, short reserved, int count, entry*
+ * entry : utf key, byte type ('J' long, 'I' int, 'S' utf, 'Z' boolean), value
+ * </pre>
+ *
+ * An {@link #edit} is a read-modify-write under an exclusive file lock on a side {@code .lock}
+ * file: the current values are read, changed, written to a temporary file and renamed over the
+ * store, so an edit from one process never overwrites one from the other. The lock file also
+ * holds a generation counter, bumped before each rename; readers take the lock shared and only
+ * decode the store again when the generation moved, so repeated lookups cost a lock and an
+ * 8-byte read. One instance per file and process (file locks are per process). Pure Java, no
+ * Android dependencies.
+ */
+public final class SharedStateFile {
+
+    private static final int MAGIC = 0x45435356; // "ECSV"
+    private static final short VERSION = 1;
+
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_BOOLEAN = 'Z';
+
+    /** Read-only view of the stored values. */
+    public static class Values {
+        final Map<String, Object> map;
+
+        Values(Map<String, Object> map) {
+            this.map = map;
+        }
+
+        public long getLong(String key, long fallback) {
+            Object value = map.get(key);
+            return value instanceof Long ? (Long) value : fallback;
+        }
+
+        public int getInt(String key, int fallback) {
+            Object value = map.get(key);
+            return value instanceof Integer ? (Integer) value : fallback;
+        }
+
+        public String getString(String key, String fallback) {
+            Object value = map.get(key);
+            return value instanceof String ? (String) value : fallback;
+        }
+
+        public boolean getBoolean(String key, boolean fallback) {
+            Object value = map.get(key);
+            return value instanceof Boolean ? (Boolean) value : fallback;
+        }
+
+        public boolean contains(String key) {
+            return map.containsKey(key);
+        }
+
+        public Set<String> keys() {
+            return Collections.unmodifiableSet(map.keySet());
+        }
+    }
+
+    /** The values during an {@link #edit}; reads see the changes made so far. */
+    public static final class Editor extends Values {
+        private boolean changed;
+
+        Editor(Map<String, Object> map) {
+            super(map);
+        }
+
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        public Editor putString(String key, String value) {
+            return value != null ? put(key, value) : remove(key);
+        }
+
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        public Editor remove(String key) {
+            changed |= map.remove(key) != null;
+            return this;
+        }
+
+        public Editor clear() {
+            changed |= !map.isEmpty();
+            map.clear();
+            return this;
+        }
+
+        private Editor put(String key, Object value) {
+            changed |= !value.equals(map.put(key, value));
+            return this;
+        }
+    }
+
+    /** No values, e.g. for callers that could not read the file. */
+    public static final Values EMPTY = new Values(Collections.<String, Object>emptyMap());
+
+    private final File file;
+    private final File tmpFile;
+    private final File lockFile;
+    private final boolean sync;
+
+    private RandomAccessFile lock; // Kept open: it carries the generation
+    private Values cached;
+    private long cachedGeneration = -1;
+
+    /**
+     * @param sync whether each edit is synced to disk before the rename; state that is rebuilt
+     *             after a reboot anyway can skip it
+     */
+    public SharedStateFile(File file, boolean sync) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.lockFile = new File(file.getPath() + ".lock");
+        this.sync = sync;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /** The current values, as last written by either process. */
+    public synchronized Values read() throws IOException {
+        FileLock shared = acquire(true);
+        try {
+            return current(lock);
+        } finally {
+            shared.release();
+        }
+    }
+
+    /** Applies {@code edit} to the current values and stores the result if anything changed. */
+    public synchronized void edit(Consumer<Editor> edit) throws IOException {
+        FileLock exclusive = acquire(false);
+        RandomAccessFile raf = lock;
+        try {
+            Editor editor = new Editor(new HashMap<>(current(raf).map));
+            edit.accept(editor);
+            if (!editor.changed) {
+                return;
+            }
+            // Generation first: a crash before the rename only costs readers a needless reload
+            long generation = generationOf(raf) + 1;
+            raf.seek(0);
+            raf.writeLong(generation);
+            write(editor.map);
+            cached = new Values(Collections.unmodifiableMap(editor.map));
+            cachedGeneration = generation;
+        } finally {
+            exclusive.release();
+        }
+    }
+
+    /** The values for the generation in the lock file; the caller holds the lock. */
+    private Values current(RandomAccessFile raf) throws IOException {
+        long generation = generationOf(raf);
+        if (cached == null || generation != cachedGeneration) {
+            cached = load();
+            cachedGeneration = generation;
+        }
+        return cached;
+    }
+
+    /**
+     * Locks the lock file. An interrupt while waiting for it (the receivers' watchdog does that)
+     * closes the channel, and the file with it, for good: it is dropped and opened again, once,
+     * unless the caller is still interrupted.
+     */
+    private FileLock acquire(boolean shared) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return lock().getChannel().lock(0L, Long.MAX_VALUE, shared);
+            } catch (ClosedChannelException | FileLockInterruptionException e) {
+                closeLock();
+                if (attempt > 0 || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void closeLock() {
+        try {
+            lock.close();
+        } catch (IOException ignored) {
+            // Already closed by the interrupt
+        }
+        lock = null;
+    }
+
+    private RandomAccessFile lock() throws IOException {
+        if (lock == null) {
+            File dir = lockFile.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            lock = new RandomAccessFile(lockFile, "rw");
+        }
+        return lock;
+    }
+
+    private static long generationOf(RandomAccessFile raf) throws IOException {
+        if (raf.length() < 8) {
+            return 0L;
+        }
+        raf.seek(0);
+        return raf.readLong();
+    }
+
+    private Values load() throws IOException {
+        if (!file.exists()) {
+            return EMPTY;
+        }
+        Map<String, Object> map = new HashMap<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(StoreFiles.readFully(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a shared state file: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported shared state version " + version);
+            }
+            in.readShort(); // reserved
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                byte type = in.readByte();
+                switch (type) {
+                    case TYPE_LONG:
+                        map.put(key, in.readLong());
+                        break;
+                    case TYPE_INT:
+                        map.put(key, in.readInt());
+                        break;
+                    case TYPE_STRING:
+                        map.put(key, in.readUTF());
+                        break;
+                    case TYPE_BOOLEAN:
+                        map.put(key, in.readBoolean());
+                        break;
+                    default:
+                        throw new IOException("Unknown value type " + type + " in " + file);
+                }
+            }
+        } catch (EOFException e) {
+            // Written by rename, so only a damaged file ends early: keep what was read
+        }
+        return new Values(Collections.unmodifiableMap(map));
+    }
+
+    private void write(Map<String, Object> map) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + map.size() * 24);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                out.writeByte(TYPE_STRING);
+                out.writeUTF((String) value);
+            }
+        }
+        out.flush();
+
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(buffer.toByteArray());
+            if (sync) {
+                fos.getFD().sync();
+            }
+        } finally {
+            fos.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
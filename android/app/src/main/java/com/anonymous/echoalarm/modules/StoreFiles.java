@@ -0,0 +1,29 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** File helpers shared by the binary stores (journal, shared state, history, tone index). Pure Java. */
+final class StoreFiles {
+
+    private StoreFiles() {
+    }
+
+    /** The whole file; shorter than its length if it shrank while being read. */
+    static byte[] readFully(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    return Arrays.copyOf(bytes, read);
+                }
+                read += n;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Reacts to manual clock changes, NTP corrections (ACTION_TIME_CHANGED) and time-zone changes
+ * (ACTION_TIMEZONE_CHANGED) without rebuilding every cluster.
+ *
+ * AlarmManager RTC alarms are absolute instants, so a clock change moves no trigger time: only
+ * cursors that the new time already passed are advanced. A zone change moves the clusters that
+ * follow the device's wall time to the same local time in the new zone
+ * ({@link ClusterScheduleEngine#rezone}); rules pinned to an explicit zone keep their instants.
+ * In both cases the re-arm is the usual diff against {@link RequestCodeRegistry}, so only the
+ * members whose trigger time actually changed are cancelled and set again.
+ */
+public class TimeChangeReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+        // Cut short, the restore path finishes the job: it resumes cursors and re-arms the same way
+        AlarmExecutors.runAsync(pendingResult, BootReceiver.RESTORE_DEADLINE_MS, "TimeChangeReceiver",
+                () -> handleTimeChange(context, intent), () -> BootReceiver.scheduleRetry(appContext));
+    }
+
+    private void handleTimeChange(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_TIME_CHANGED.equals(action) && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            return;
+        }
+        long startNs = System.nanoTime();
+        Map<String, AlarmState> clusters = AlarmProfileStore.loadAll(context);
+        if (clusters.isEmpty()) {
+            return;
+        }
+
+        int moved = 0;
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            String zoneId = intent.getStringExtra(Intent.EXTRA_TIMEZONE);
+            Map<String, AlarmState> rezoned = applyZoneChange(context, clusters,
+                    zoneId != null ? zoneId : TimeZone.getDefault().getID());
+            for (String clusterId : clusters.keySet()) {
+                if (rezoned.get(clusterId) != clusters.get(clusterId)) {
+                    moved++;
+                }
+            }
+            clusters = rezoned;
+        }
+
+        // Members the new time already passed are skipped; only recurring clusters roll forward,
+        // one-off clusters the jump left behind stay finished
+        if (!BootReceiver.resumeClusters(context, clusters, System.currentTimeMillis())) {
+            return; // Deadline reached
+        }
+
+        int operations = AlarmCoordinator.rearm(context);
+        AlarmEvents.postAll(context, AlarmEvents.TIME_CHANGED);
+        Log.i("TimeChangeReceiver", action + ": " + moved + " clústeres movidos, " + operations
+                + " operaciones en " + (System.nanoTime() - startNs) / 1000000 + " ms");
+    }
+
+    /**
+     * Moves the clusters that follow the device's wall time from the zone they were set in to
+     * {@code toTimeZoneId}, saving only those that change, and records the new zone.
+     *
+     * @return the clusters after the move (unchanged ones are the same instances)
+     */
+    static Map<String, AlarmState> applyZoneChange(Context context, Map<String, AlarmState> clusters,
+                                                   String toTimeZoneId) {
+        String fromTimeZoneId = AlarmSettings.deviceTimeZone(context);
+        AlarmSettings.setDeviceTimeZone(context, toTimeZoneId);
+        if (fromTimeZoneId == null || fromTimeZoneId.equals(toTimeZoneId)) {
+            return clusters;
+        }
+
+        Map<String, AlarmState> result = new LinkedHashMap<>();
+        for (AlarmState state : clusters.values()) {
+            AlarmState rezoned = ClusterScheduleEngine.rezone(state, fromTimeZoneId, toTimeZoneId);
+            if (rezoned != state) {
+                AlarmProfileStore.save(context, rezoned);
+                Log.d("TimeChangeReceiver", "Clúster '" + state.clusterId + "' de " + fromTimeZoneId + " a "
+                        + toTimeZoneId + ": " + state.baseTimeMs + " -> " + rezoned.baseTimeMs);
+            }
+            result.put(state.clusterId, rezoned);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,278 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Background analysis of the tone pool: duration, peak/RMS level, codec and whether the tone
+ * decodes cleanly, so broken or silent tones show up in TonePoolScreen long before they ring.
+ *
+ * Tones are decoded in parallel on {@link AlarmExecutors#analysis()} (one worker per core).
+ * Results are cached in "EchoAlarmToneAnalysis" keyed by URI and validated against the source's
+ * size and modification time, so an unchanged tone is never decoded twice.
+ */
+final class ToneAnalyzer {
+
+    private static final String PREFS_NAME = "EchoAlarmToneAnalysis";
+
+    /** Peak below this (about -40 dBFS) is reported as silent. */
+    static final double SILENT_PEAK = 0.01;
+    /** Longest stretch decoded per tone; longer tones are measured on their first minutes. */
+    static final long MAX_ANALYZED_MS = 10L * 60L * 1000L;
+    /** Cached results of older versions are measured again (v1 capped durations at MAX_ANALYZED_MS). */
+    private static final int CACHE_VERSION = 2;
+
+    /** Result for one tone; {@code done == false} while it is still queued or running. */
+    static final class Result {
+        final String uri;
+        boolean done;
+        long size = -1;
+        long modifiedMs = -1;
+        long durationMs = -1;
+        double peak;
+        double rms;
+        String codec = "";
+        boolean decodesCleanly;
+        String error = "";
+
+        Result(String uri) {
+            this.uri = uri;
+        }
+
+        boolean isSilent() {
+            return done && decodesCleanly && peak < SILENT_PEAK;
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("version", CACHE_VERSION)
+                    .put("size", size)
+                    .put("modifiedMs", modifiedMs)
+                    .put("durationMs", durationMs)
+                    .put("peak", peak)
+                    .put("rms", rms)
+                    .put("codec", codec)
+                    .put("decodesCleanly", decodesCleanly)
+                    .put("error", error);
+        }
+
+        static Result fromJson(String uri, JSONObject json) {
+            Result result = new Result(uri);
+            result.done = true;
+            result.size = json.optLong("size", -1);
+            result.modifiedMs = json.optLong("modifiedMs", -1);
+            result.durationMs = json.optLong("durationMs", -1);
+            result.peak = json.optDouble("peak", 0);
+            result.rms = json.optDouble("rms", 0);
+            result.codec = json.optString("codec", "");
+            result.decodesCleanly = json.optBoolean("decodesCleanly", false);
+            result.error = json.optString("error", "");
+            return result;
+        }
+    }
+
+    private static final Map<String, Result> results = new ConcurrentHashMap<>();
+    /** Order of the last requested pool; pages are taken from it. */
+    private static volatile List<String> requested = Collections.emptyList();
+
+    private ToneAnalyzer() {
+    }
+
+    /** Queues every tone of the pool that has no valid cached result. Returns immediately. */
+    static void analyze(Context context, List<String> toneUris) {
+        final Context appContext = context.getApplicationContext();
+        requested = Collections.unmodifiableList(new ArrayList<>(toneUris));
+
+        for (final String uri : toneUris) {
+            Result existing = results.get(uri);
+            if (existing != null && !existing.done) {
+                continue; // Already queued
+            }
+            results.put(uri, new Result(uri));
+            try {
+                AlarmExecutors.analysis().execute(() -> results.put(uri, analyzeOne(appContext, uri)));
+            } catch (RejectedExecutionException e) {
+                Result rejected = new Result(uri);
+                rejected.done = true;
+                rejected.error = "Cola de análisis llena";
+                results.put(uri, rejected);
+            }
+        }
+    }
+
+    /** Page of the last requested pool, in pool order. */
+    static List<Result> page(int offset, int limit) {
+        List<String> uris = requested;
+        int from = Math.max(0, Math.min(offset, uris.size()));
+        int to = Math.max(from, Math.min(uris.size(), from + Math.max(0, limit)));
+        List<Result> page = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Result result = results.get(uris.get(i));
+            page.add(result != null ? result : new Result(uris.get(i)));
+        }
+        return page;
+    }
+
+    static int requestedCount() {
+        return requested.size();
+    }
+
+    private static Result analyzeOne(Context context, String toneUri) {
+        Uri uri = Uri.parse(toneUri);
+        long[] stat = statOf(context, uri);
+
+        // Cached and the source has not changed
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String cached = prefs.getString(toneUri, null);
+        if (cached != null) {
+            try {
+                JSONObject json = new JSONObject(cached);
+                Result result = Result.fromJson(toneUri, json);
+                if (result.size == stat[0] && result.modifiedMs == stat[1] && stat[0] >= 0
+                        && json.optInt("version", 1) == CACHE_VERSION) {
+                    return result;
+                }
+            } catch (JSONException e) {
+                Log.w("ToneAnalyzer", "Caché de análisis corrupta para " + toneUri);
+            }
+        }
+
+        final Result result = new Result(toneUri);
+        result.size = stat[0];
+        result.modifiedMs = stat[1];
+        long start = System.currentTimeMillis();
+        try {
+            // Audio actually decoded: the container may state a duration it does not hold
+            result.decodesCleanly = measure(context, uri, result) > 0 && result.durationMs > 0;
+            if (!result.decodesCleanly) {
+                result.error = "Sin audio decodificado";
+            }
+        } catch (Exception e) {
+            result.decodesCleanly = false;
+            result.error = String.valueOf(e.getMessage());
+        }
+        result.done = true;
+        Log.d("ToneAnalyzer", toneUri + " analizado en " + (System.currentTimeMillis() - start) + " ms");
+
+        try {
+            prefs.edit().putString(toneUri, result.toJson().toString()).apply();
+        } catch (JSONException e) {
+            Log.e("ToneAnalyzer", "Error guardando el análisis: " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the tone once, accumulating peak and RMS over every 16-bit sample. The duration is
+     * the container's; the decoded frames only stand in for it when the container has none, since
+     * decoding stops at {@link #MAX_ANALYZED_MS}.
+     *
+     * @return the frames decoded
+     */
+    private static long measure(Context context, Uri uri, final Result result) throws Exception {
+        final long[] containerUs = {-1L};
+        final long[] frames = new long[1];
+        final int[] rate = new int[1];
+        final double[] sumSquares = new double[1];
+        final long[] samples = new long[1];
+        final int[] peak = new int[1];
+
+        ToneDecoder.decode(context, uri, new ToneDecoder.Sink() {
+            @Override
+            public void onFormat(String mime, long durationUs) {
+                result.codec = mime;
+                containerUs[0] = durationUs;
+            }
+
+            @Override
+            public boolean onPcm(ByteBuffer pcm, int sampleRate, int channels) {
+                ShortBuffer shorts = pcm.order(ByteOrder.nativeOrder()).asShortBuffer();
+                int count = shorts.remaining();
+                for (int i = 0; i < count; i++) {
+                    int sample = shorts.get(i);
+                    int magnitude = sample < 0 ? -sample : sample;
+                    if (magnitude > peak[0]) {
+                        peak[0] = magnitude;
+                    }
+                    sumSquares[0] += (double) sample * sample;
+                }
+                samples[0] += count;
+                frames[0] += count / Math.max(1, channels);
+                rate[0] = sampleRate;
+                return frames[0] * 1000L / Math.max(1, sampleRate) < MAX_ANALYZED_MS;
+            }
+
+            @Override
+            public boolean onEndOfStream() {
+                return false;
+            }
+        });
+
+        if (containerUs[0] > 0) {
+            result.durationMs = containerUs[0] / 1000L;
+        } else {
+            result.durationMs = rate[0] > 0 ? frames[0] * 1000L / rate[0] : 0;
+        }
+        result.peak = peak[0] / 32768.0;
+        result.rms = samples[0] > 0 ? Math.sqrt(sumSquares[0] / samples[0]) / 32768.0 : 0;
+        return frames[0];
+    }
+
+    /** {size, modifiedMs} of the tone's source, -1 where the source does not tell. */
+    private static long[] statOf(Context context, Uri uri) {
+        long[] stat = {-1, -1};
+        String scheme = uri.getScheme();
+        try {
+            if (ContentResolver.SCHEME_FILE.equals(scheme) && uri.getPath() != null) {
+                File file = new File(uri.getPath());
+                stat[0] = file.length();
+                stat[1] = file.lastModified();
+            } else if (ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+                try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        int sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+                        int modifiedColumn = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                        if (sizeColumn >= 0 && !cursor.isNull(sizeColumn)) {
+                            stat[0] = cursor.getLong(sizeColumn);
+                        }
+                        if (modifiedColumn >= 0 && !cursor.isNull(modifiedColumn)) {
+                            stat[1] = cursor.getLong(modifiedColumn);
+                        }
+                    }
+                }
+            } else if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
+                // Bundled tone: changes only with an app update
+                try (AssetFileDescriptor fd = context.getContentResolver().openAssetFileDescriptor(uri, "r")) {
+                    if (fd != null) {
+                        stat[0] = fd.getLength();
+                    }
+                }
+                stat[1] = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            }
+        } catch (Exception e) {
+            Log.w("ToneAnalyzer", "Sin metadatos para " + uri + ": " + e.getMessage());
+        }
+        return stat;
+    }
+}
@@ -0,0 +1,246 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Tones transcoded ahead of time to raw 16-bit PCM in the app cache dir, so the AudioTrack engine
+ * can play a fire from a memory-mapped file instead of decoding the mp3 on the wake-up path.
+ *
+ * File layout: [int magic][int sampleRate][int channels][int dataLength][PCM...]. Files are
+ * written to a .tmp and renamed, so a present .pcm is always complete. Each tone is capped at
+ * {@link #MAX_SECONDS} (the player loops it), about {@link #MAX_TONE_BYTES} at 48 kHz stereo, so
+ * the {@link #BUDGET_BYTES} directory holds {@link #MAX_CACHED_TONES} tones. A prefetch transcodes
+ * at most that many tones of the pool, in pool order, and the directory is kept under budget by
+ * evicting the least recently used files (by last-modified time, which is touched on every hit).
+ * Tones past the cap are decoded at fire time, as with an empty cache.
+ */
+final class ToneDecodeCache {
+
+    static final long BUDGET_BYTES = 64L * 1024 * 1024;
+    static final int MAX_SECONDS = 20;
+    static final long MAX_TONE_BYTES = (long) MAX_SECONDS * 48000 * 2 * 2;
+    static final int MAX_CACHED_TONES = (int) (BUDGET_BYTES / MAX_TONE_BYTES);
+
+    private static final String DIR_NAME = "tone_pcm";
+    private static final int MAGIC = 0x4543504D; // "ECPM"
+    private static final int HEADER_BYTES = 16;
+
+    /** A cached tone mapped read-only; {@link #pcm} covers the PCM data only. */
+    static final class Entry {
+        final ByteBuffer pcm;
+        final int sampleRate;
+        final int channels;
+
+        Entry(ByteBuffer pcm, int sampleRate, int channels) {
+            this.pcm = pcm;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+    }
+
+    private ToneDecodeCache() {
+    }
+
+    /**
+     * Transcodes, in one background task, the tones of the pool that are not cached yet, up to
+     * {@link #MAX_CACHED_TONES}; duplicates and empty URIs are skipped.
+     */
+    static void prefetch(Context context, String[] toneUris) {
+        final Context appContext = context.getApplicationContext();
+        final Set<String> uris = new LinkedHashSet<>();
+        for (String uri : toneUris) {
+            if (uri != null && !uri.isEmpty()) {
+                uris.add(uri);
+            }
+        }
+        if (uris.isEmpty()) {
+            return;
+        }
+        try {
+            AlarmExecutors.background().execute(() -> prefetchNow(appContext, uris));
+        } catch (RejectedExecutionException e) {
+            // Nothing lost: uncached tones are decoded when they ring
+            Log.w("ToneDecodeCache", "Cola llena, " + uris.size() + " tonos sin cachear");
+        }
+    }
+
+    private static void prefetchNow(Context appContext, Set<String> uris) {
+        int kept = 0;
+        for (String uri : uris) {
+            if (kept == MAX_CACHED_TONES) {
+                Log.w("ToneDecodeCache", (uris.size() - kept) + " tonos no caben en la caché; se decodifican al sonar");
+                break;
+            }
+            kept++;
+            File file = fileFor(appContext, uri);
+            if (file.exists()) {
+                file.setLastModified(System.currentTimeMillis());
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                transcode(appContext, uri, file);
+                Log.d("ToneDecodeCache", "Tono cacheado en " + (System.currentTimeMillis() - start)
+                        + " ms (" + file.length() + " bytes): " + uri);
+            } catch (Exception e) {
+                Log.e("ToneDecodeCache", "Error transcodificando " + uri + ": " + e.getMessage());
+            }
+        }
+        evict(appContext);
+    }
+
+    /** Maps the cached PCM for a tone, or returns null if it is not cached (or unreadable). */
+    static Entry open(Context context, String toneUri) {
+        File file = fileFor(context, toneUri);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < HEADER_BYTES || mapped.getInt() != MAGIC) {
+                return null;
+            }
+            int sampleRate = mapped.getInt();
+            int channels = mapped.getInt();
+            int dataLength = mapped.getInt();
+            if (dataLength <= 0 || dataLength > mapped.remaining()) {
+                return null;
+            }
+            ByteBuffer pcm = mapped.slice();
+            pcm.limit(dataLength);
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(pcm, sampleRate, channels);
+        } catch (IOException e) {
+            Log.e("ToneDecodeCache", "Error abriendo la caché: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void transcode(Context context, String toneUri, File out) throws Exception {
+        File tmp = new File(out.getPath() + ".tmp");
+        final int[] format = new int[2]; // sampleRate, channels
+        final long[] written = new long[1];
+        final byte[] copy = new byte[16 * 1024];
+
+        try (final RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(0);
+            raf.seek(HEADER_BYTES);
+
+            ToneDecoder.decode(context, Uri.parse(toneUri), new ToneDecoder.Sink() {
+                @Override
+                public boolean onPcm(ByteBuffer pcm, int sampleRate, int channels) throws IOException {
+                    if (written[0] == 0) {
+                        format[0] = sampleRate;
+                        format[1] = channels;
+                    } else if (format[0] != sampleRate || format[1] != channels) {
+                        throw new IOException("Formato cambiado a mitad del tono");
+                    }
+                    int frameBytes = channels * 2;
+                    // Above 48 kHz stereo the byte cap wins, so a tone never exceeds its budget share
+                    long maxBytes = Math.min((long) MAX_SECONDS * sampleRate * frameBytes,
+                            MAX_TONE_BYTES - MAX_TONE_BYTES % frameBytes);
+                    while (pcm.hasRemaining() && written[0] < maxBytes) {
+                        int length = (int) Math.min(Math.min(pcm.remaining(), copy.length), maxBytes - written[0]);
+                        pcm.get(copy, 0, length);
+                        raf.write(copy, 0, length);
+                        written[0] += length;
+                    }
+                    return written[0] < maxBytes;
+                }
+
+                @Override
+                public boolean onEndOfStream() {
+                    return false;
+                }
+            });
+
+            if (written[0] == 0) {
+                throw new IOException("Sin audio decodificado");
+            }
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(format[0]);
+            raf.writeInt(format[1]);
+            raf.writeInt((int) written[0]);
+        } catch (Exception e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+    }
+
+    /** Deletes least recently used files until the directory fits in {@link #BUDGET_BYTES}. */
+    private static void evict(Context context) {
+        File[] files = dir(context).listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= BUDGET_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= BUDGET_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                Log.d("ToneDecodeCache", "Evictado " + file.getName() + " (" + length + " bytes)");
+            }
+        }
+    }
+
+    private static File dir(Context context) {
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    private static File fileFor(Context context, String toneUri) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(toneUri.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + 4);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(dir(context), name.append(".pcm").toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MediaExtractor/MediaCodec loop shared by {@link PcmAlarmPlayer} (streaming at fire time),
+ * {@link ToneDecodeCache} (transcoding ahead of time) and {@link ToneAnalyzer}. Output is 16-bit
+ * PCM handed to a {@link Sink}.
+ */
+final class ToneDecoder {
+
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    interface Sink {
+        /** Track picked for decoding: its MIME type and declared duration (-1 if unknown). */
+        default void onFormat(String mime, long durationUs) {
+        }
+
+        /**
+         * Decoded PCM between the buffer's position and limit. Only valid during the call.
+         *
+         * @return false to stop decoding
+         */
+        boolean onPcm(ByteBuffer pcm, int sampleRate, int channels) throws Exception;
+
+        /** @return true to seek back to the start and keep decoding (looping), false to finish */
+        boolean onEndOfStream();
+    }
+
+    private ToneDecoder() {
+    }
+
+    static void decode(Context context, Uri toneUri, Sink sink) throws Exception {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, toneUri, null);
+            int trackIndex = selectAudioTrack(extractor);
+            if (trackIndex < 0) {
+                throw new IllegalStateException("No audio track in " + toneUri);
+            }
+            MediaFormat format = extractor.getTrackFormat(trackIndex);
+            extractor.selectTrack(trackIndex);
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            sink.onFormat(mime, format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : -1L);
+
+            codec = MediaCodec.createDecoderByType(mime);
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+
+            while (true) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inIndex);
+                        int size = input != null ? extractor.readSampleData(input, 0) : -1;
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outFormat = codec.getOutputFormat();
+                    sampleRate = outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (outIndex >= 0) {
+                    ByteBuffer output = codec.getOutputBuffer(outIndex);
+                    boolean keepGoing = true;
+                    if (output != null && info.size > 0) {
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        keepGoing = sink.onPcm(output, sampleRate, channels);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if (!keepGoing) {
+                        return;
+                    }
+
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        if (!sink.onEndOfStream()) {
+                            return;
+                        }
+                        extractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                        codec.flush();
+                        inputDone = false;
+                    }
+                }
+            }
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                    // Already stopped or never started
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static int selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,165 @@
+package com.anonymous.echoalarm.modules;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Android entry point to the {@link ToneLibraryIndex} of the device's audio, kept in the app's
+ * files dir and refreshed from MediaStore.
+ *
+ * A refresh walks MediaStore in pages of {@link #PAGE_SIZE} rows ordered by _ID, each page
+ * starting after the last id of the previous one, with only _ID and DATE_MODIFIED in the
+ * projection. Title and duration are then queried, {@link #DETAIL_BATCH} ids at a time, only for
+ * the files that are new or were modified since the last refresh, so an unchanged library costs
+ * one narrow pass and no write.
+ *
+ * Loading the index and refreshing it take separate locks: a search only waits for the first
+ * load, never for a scan, which touches the index a row at a time.
+ */
+final class ToneLibrary {
+
+    static final int PAGE_SIZE = 500;
+    private static final int DETAIL_BATCH = 200; // Well under SQLite's 999 bound parameters
+
+    private static final String INDEX_FILE = "tone_library.index";
+    private static final Uri AUDIO = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+    private static final String[] SCAN_PROJECTION = {
+            MediaStore.Audio.Media._ID, MediaStore.Audio.Media.DATE_MODIFIED};
+    private static final String[] DETAIL_PROJECTION = {
+            MediaStore.Audio.Media._ID, MediaStore.Audio.Media.DATE_MODIFIED,
+            MediaStore.Audio.Media.DURATION, MediaStore.Audio.Media.TITLE};
+
+    private static final Object INDEX_LOCK = new Object();
+    private static final Object REFRESH_LOCK = new Object();
+    private static volatile ToneLibraryIndex index;
+
+    private ToneLibrary() {
+    }
+
+    static boolean hasPermission(Context context) {
+        String permission = Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                ? Manifest.permission.READ_MEDIA_AUDIO : Manifest.permission.READ_EXTERNAL_STORAGE;
+        return context.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /** The index as last saved; loaded on first use. */
+    static ToneLibraryIndex index(Context context) {
+        ToneLibraryIndex loaded = index;
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (INDEX_LOCK) {
+            if (index == null) {
+                loaded = new ToneLibraryIndex(new File(context.getApplicationContext().getFilesDir(), INDEX_FILE));
+                try {
+                    loaded.load();
+                } catch (IOException e) {
+                    Log.e("ToneLibrary", "Error leyendo el índice: " + e.getMessage());
+                }
+                index = loaded;
+            }
+            return index;
+        }
+    }
+
+    /** Content URI of an indexed file, playable and analyzable like any picked tone. */
+    static String uriOf(long id) {
+        return ContentUris.withAppendedId(AUDIO, id).toString();
+    }
+
+    /**
+     * Brings the index up to date with MediaStore.
+     *
+     * @return entries added, updated or removed
+     * @throws IOException if MediaStore could not be queried; the index is left as it was
+     */
+    static int refresh(Context context) throws IOException {
+        synchronized (REFRESH_LOCK) {
+            return refresh(context, index(context));
+        }
+    }
+
+    /** One scan at a time (the caller holds {@link #REFRESH_LOCK}); searches go on meanwhile. */
+    private static int refresh(Context context, ToneLibraryIndex target) throws IOException {
+        ToneLibraryIndex.Scan scan = target.beginScan();
+        ContentResolver resolver = context.getContentResolver();
+
+        // 1. Which ids exist and when they changed
+        List<Long> changed = new ArrayList<>();
+        long lastId = -1;
+        int rows;
+        do {
+            rows = 0;
+            try (Cursor cursor = queryPage(resolver, lastId)) {
+                if (cursor == null) {
+                    throw new IOException("MediaStore no disponible");
+                }
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    if (scan.seen(lastId, cursor.getLong(1))) {
+                        changed.add(lastId);
+                    }
+                    rows++;
+                }
+            }
+        } while (rows == PAGE_SIZE);
+
+        // 2. Details of the new and modified ones only
+        for (int from = 0; from < changed.size(); from += DETAIL_BATCH) {
+            List<Long> batch = changed.subList(from, Math.min(changed.size(), from + DETAIL_BATCH));
+            StringBuilder selection = new StringBuilder(MediaStore.Audio.Media._ID).append(" IN (");
+            String[] args = new String[batch.size()];
+            for (int i = 0; i < args.length; i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                args[i] = Long.toString(batch.get(i));
+            }
+            selection.append(')');
+            try (Cursor cursor = resolver.query(AUDIO, DETAIL_PROJECTION, selection.toString(), args, null)) {
+                if (cursor == null) {
+                    throw new IOException("MediaStore no disponible");
+                }
+                while (cursor.moveToNext()) {
+                    scan.put(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2), cursor.getString(3));
+                }
+            }
+        }
+
+        int changes = scan.finish();
+        if (changes > 0) {
+            target.save();
+        }
+        return changes;
+    }
+
+    /** Up to {@link #PAGE_SIZE} rows with an id above {@code afterId}, in id order. */
+    private static Cursor queryPage(ContentResolver resolver, long afterId) {
+        String selection = MediaStore.Audio.Media._ID + " > ?";
+        String[] args = {Long.toString(afterId)};
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, args);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SORT_COLUMNS, new String[]{MediaStore.Audio.Media._ID});
+            queryArgs.putInt(ContentResolver.QUERY_ARG_SORT_DIRECTION, ContentResolver.QUERY_SORT_DIRECTION_ASCENDING);
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, PAGE_SIZE);
+            return resolver.query(AUDIO, SCAN_PROJECTION, queryArgs, null);
+        }
+        // Before R, MediaProvider appends the sort order to its SQL, so the limit goes there
+        return resolver.query(AUDIO, SCAN_PROJECTION, selection, args,
+                MediaStore.Audio.Media._ID + " ASC LIMIT " + PAGE_SIZE);
+    }
+}
@@ -0,0 +1,291 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local index of the device's audio library (id, title, duration, modification time), so the
+ * tone browser pages and searches thousands of files without a MediaStore query per keystroke.
+ *
+ * <pre>
+ * file  : int magic, short version, short reserved, int count, entry*
+ * entry : long id, long modifiedSec, long durationMs, utf title
+ * </pre>
+ *
+ * A refresh is a {@link Scan}: every (id, modifiedSec) still in the library is reported, only
+ * new or modified ids need their details put again, and ids that were not reported are dropped
+ * at the end. Search matches a prefix of any word of the title, ignoring case and accents;
+ * results are ordered by title, and the last search is kept so paging through it costs only the
+ * page. Saved to a temporary file and renamed over the index. Pure Java, no Android dependencies.
+ */
+public final class ToneLibraryIndex {
+
+    private static final int MAGIC = 0x4543544C; // "ECTL"
+    private static final short VERSION = 1;
+
+    /** One audio file of the library. */
+    public static final class Entry {
+        public final long id;
+        public final long modifiedSec;
+        public final long durationMs;
+        public final String title;
+        final String key; // Normalized title, the sort key
+
+        Entry(long id, long modifiedSec, long durationMs, String title) {
+            this.id = id;
+            this.modifiedSec = modifiedSec;
+            this.durationMs = durationMs;
+            this.title = title;
+            this.key = normalize(title);
+        }
+    }
+
+    /** One page of a search: the {@code total} matches and the entries from the requested offset. */
+    public static final class Page {
+        public final int total;
+        public final List<Entry> entries;
+
+        Page(int total, List<Entry> entries) {
+            this.total = total;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * A refresh in progress, see the class comment. Nothing reaches the index before
+     * {@link #finish}, so a scan that is abandoned halfway leaves it as it was.
+     */
+    public final class Scan {
+        private final Set<Long> seen = new HashSet<>();
+        private final Map<Long, Entry> staged = new HashMap<>();
+
+        /** An id still in the library; true if it is new or modified and its details must be {@link #put}. */
+        public boolean seen(long id, long modifiedSec) {
+            seen.add(id);
+            synchronized (ToneLibraryIndex.this) {
+                Entry entry = byId.get(id);
+                return entry == null || entry.modifiedSec != modifiedSec;
+            }
+        }
+
+        public void put(long id, long modifiedSec, long durationMs, String title) {
+            staged.put(id, new Entry(id, modifiedSec, durationMs, title != null ? title : ""));
+        }
+
+        /**
+         * Applies the puts and drops what was not seen; returns how many entries the scan added,
+         * updated or dropped.
+         */
+        public int finish() {
+            synchronized (ToneLibraryIndex.this) {
+                byId.putAll(staged);
+                int before = byId.size();
+                byId.keySet().retainAll(seen);
+                int removed = before - byId.size();
+                if (!staged.isEmpty() || removed > 0) {
+                    invalidate();
+                }
+                return staged.size() + removed;
+            }
+        }
+    }
+
+    private static final class Token {
+        final String key; // Title key from the start of one of its words
+        final Entry entry;
+
+        Token(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    private final File file;
+    private final File tmpFile;
+    private final Map<Long, Entry> byId = new HashMap<>();
+
+    // Built on the first search after a change
+    private Entry[] sorted;
+    private Token[] tokens;
+    // Last search, so its following pages are a copy of a range
+    private String lastPrefix;
+    private Entry[] lastMatches;
+
+    public ToneLibraryIndex(File file) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public Scan beginScan() {
+        return new Scan();
+    }
+
+    /** Loads the saved index; a missing, foreign or torn file leaves what could be read (a refresh fixes it). */
+    public synchronized void load() throws IOException {
+        byId.clear();
+        invalidate();
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(StoreFiles.readFully(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return;
+            }
+            in.readShort(); // reserved
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long modifiedSec = in.readLong();
+                long durationMs = in.readLong();
+                byId.put(id, new Entry(id, modifiedSec, durationMs, in.readUTF()));
+            }
+        } catch (EOFException e) {
+            // Torn tail: keep the entries before it
+        }
+    }
+
+    /** Copies the entries under the index lock and writes them without it; one save at a time. */
+    public void save() throws IOException {
+        List<Entry> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(byId.values());
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + entries.size() * 48);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeLong(entry.id);
+            out.writeLong(entry.modifiedSec);
+            out.writeLong(entry.durationMs);
+            out.writeUTF(entry.title);
+        }
+        out.flush();
+
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(buffer.toByteArray());
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /** Entries whose title has a word starting with {@code prefix} (all of them if empty), by title. */
+    public synchronized Page search(String prefix, int offset, int limit) {
+        Entry[] matches = matches(normalize(prefix != null ? prefix : ""));
+        int from = Math.max(0, Math.min(offset, matches.length));
+        int to = Math.min(matches.length, from + Math.max(0, limit));
+        return new Page(matches.length, Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(matches, from, to))));
+    }
+
+    private Entry[] matches(String prefix) {
+        build();
+        if (prefix.isEmpty()) {
+            return sorted;
+        }
+        if (prefix.equals(lastPrefix)) {
+            return lastMatches;
+        }
+        // Tokens are sorted by key: the matches are the run starting at the first key >= prefix
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens[mid].key.compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        Set<Entry> found = new LinkedHashSet<>();
+        for (int i = low; i < tokens.length && tokens[i].key.startsWith(prefix); i++) {
+            found.add(tokens[i].entry);
+        }
+        Entry[] result = found.toArray(new Entry[0]);
+        Arrays.sort(result, (a, b) -> compare(a, b));
+        lastPrefix = prefix;
+        lastMatches = result;
+        return result;
+    }
+
+    private void build() {
+        if (sorted != null) {
+            return;
+        }
+        sorted = byId.values().toArray(new Entry[0]);
+        Arrays.sort(sorted, (a, b) -> compare(a, b));
+        List<Token> list = new ArrayList<>(sorted.length * 3);
+        for (Entry entry : sorted) {
+            String key = entry.key;
+            for (int i = 0; i < key.length(); i++) {
+                if (i == 0 || key.charAt(i - 1) == ' ') {
+                    list.add(new Token(key.substring(i), entry));
+                }
+            }
+        }
+        tokens = list.toArray(new Token[0]);
+        Arrays.sort(tokens, (a, b) -> a.key.compareTo(b.key));
+    }
+
+    private void invalidate() {
+        sorted = null;
+        tokens = null;
+        lastPrefix = null;
+        lastMatches = null;
+    }
+
+    private static int compare(Entry a, Entry b) {
+        int byKey = a.key.compareTo(b.key);
+        return byKey != 0 ? byKey : Long.compare(a.id, b.id);
+    }
+
+    /** Lower case, no accents, words separated by single spaces. */
+    static String normalize(String title) {
+        String decomposed = Normalizer.normalize(title, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        boolean space = true; // Drops leading and repeated separators
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+                space = false;
+            } else if (!space) {
+                key.append(' ');
+                space = true;
+            }
+        }
+        int length = key.length();
+        return length > 0 && key.charAt(length - 1) == ' ' ? key.substring(0, length - 1) : key.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.anonymous.echoalarm.modules;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import com.anonymous.echoalarm.specs.NativeToneLibrarySpec;
+
+import java.util.concurrent.RejectedExecutionException;
+
+public class ToneLibraryModule extends NativeToneLibrarySpec {
+
+    private final ReactApplicationContext reactContext;
+
+    public ToneLibraryModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Pone el índice al día con MediaStore (solo lo nuevo o modificado); resuelve {total, changed}.
+     * Sin permiso de lectura de audio rechaza con E_PERMISSION.
+     */
+    @Override
+    public void refresh(Promise promise) {
+        if (!ToneLibrary.hasPermission(reactContext)) {
+            promise.reject("E_PERMISSION", "Sin permiso para leer el audio del dispositivo");
+            return;
+        }
+        try {
+            AlarmExecutors.background().execute(() -> {
+                try {
+                    int changed = ToneLibrary.refresh(reactContext);
+                    WritableMap result = Arguments.createMap();
+                    result.putInt("total", ToneLibrary.index(reactContext).size());
+                    result.putInt("changed", changed);
+                    promise.resolve(result);
+                } catch (Exception e) {
+                    promise.reject("E_LIBRARY", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            promise.reject("E_LIBRARY", "Cola llena");
+        }
+    }
+
+    /** Página de la búsqueda por prefijo (vacío = todo, por título): {total, items}. */
+    @Override
+    public void search(String prefix, double offset, double limit, Promise promise) {
+        ToneLibraryIndex.Page page = ToneLibrary.index(reactContext).search(prefix, (int) offset, (int) limit);
+        WritableArray items = Arguments.createArray();
+        for (ToneLibraryIndex.Entry entry : page.entries) {
+            WritableMap item = Arguments.createMap();
+            item.putString("uri", ToneLibrary.uriOf(entry.id));
+            item.putString("title", entry.title);
+            item.putDouble("durationMs", entry.durationMs);
+            items.pushMap(item);
+        }
+        WritableMap result = Arguments.createMap();
+        result.putInt("total", page.total);
+        result.putArray("items", items);
+        promise.resolve(result);
+    }
+}
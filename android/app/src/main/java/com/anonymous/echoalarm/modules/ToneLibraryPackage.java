@@ -0,0 +1,42 @@
+package com.anonymous.echoalarm.modules;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.BaseReactPackage;
+import com.facebook.react.bridge.NativeModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ToneLibraryPackage extends BaseReactPackage {
+
+    @Nullable
+    @Override
+    public NativeModule getModule(@NonNull String name, @NonNull ReactApplicationContext reactContext) {
+        if (ToneLibraryModule.NAME.equals(name)) {
+            return new ToneLibraryModule(reactContext);
+        }
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> modules = new HashMap<>();
+            modules.put(ToneLibraryModule.NAME, new ReactModuleInfo(
+                    ToneLibraryModule.NAME,
+                    ToneLibraryModule.class.getName(),
+                    false, // canOverrideExistingModule
+                    false, // needsEagerInit
+                    false, // isCxxModule
+                    true   // isTurboModule
+            ));
+            return modules;
+        };
+    }
+}
@@ -0,0 +1,236 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Two looping MediaPlayers for the MediaPlayer engine, so one tone can hand off to the next
+ * without a gap or a state error.
+ *
+ * The incoming tone is prepared on the standby player while the current one keeps ringing; once
+ * it is prepared the two crossfade over {@link #CROSSFADE_MS} and the old player is reset for
+ * reuse. A tone primed ahead of time (warm-up, or the next member of a ringing cluster) starts
+ * with no prepare at all. A player only gets a new data source after a reset, so back-to-back
+ * fires never hit an already prepared player. {@code setNextMediaPlayer} is no help here: the
+ * tones loop and never complete. Main thread only.
+ */
+final class TonePlayerPair {
+
+    interface Listener {
+        /** The tone is audible; {@code primed} if it was prepared before {@link #play} was called. */
+        void onFirstAudio(boolean primed);
+
+        void onError(Exception e);
+    }
+
+    static final long CROSSFADE_MS = 600;
+    private static final long FADE_STEP_MS = 40;
+
+    private static final class Slot {
+        final MediaPlayer player = new MediaPlayer();
+        Uri uri; // Data source, null while idle
+        boolean prepared;
+        boolean startWhenPrepared;
+        boolean primed;
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Slot[] slots = {new Slot(), new Slot()};
+    // Audible slot (also while fading in) and the one fading out, null when none
+    private Slot playing;
+    private Slot fadingOut;
+    private Runnable fadeStep;
+    private Listener listener;
+
+    TonePlayerPair(Context context) {
+        this.context = context;
+    }
+
+    /** Prepares {@code toneUri} on the standby player, so a later {@link #play} of it starts at once. */
+    void prime(Uri toneUri) {
+        if (playing != null && toneUri.equals(playing.uri)) {
+            return;
+        }
+        try {
+            standbyFor(toneUri);
+        } catch (IOException | RuntimeException e) {
+            Log.w("TonePlayerPair", "Prime failed: " + e.getMessage());
+        }
+    }
+
+    /** Starts {@code toneUri}, crossfading from the tone that is ringing, if any. */
+    void play(Uri toneUri, Listener listener) {
+        this.listener = listener;
+        if (playing != null && fadingOut == null && toneUri.equals(playing.uri) && playing.player.isPlaying()) {
+            listener.onFirstAudio(true); // Same tone already ringing: nothing to hand off
+            return;
+        }
+        Slot next;
+        try {
+            next = standbyFor(toneUri);
+        } catch (IOException | RuntimeException e) {
+            listener.onError(e);
+            return;
+        }
+        if (next.prepared) {
+            start(next);
+        } else {
+            next.startWhenPrepared = true;
+        }
+    }
+
+    /** Silences every audible player; a primed standby stays prepared. */
+    void stop() {
+        handler.removeCallbacks(fadeStep);
+        for (Slot slot : slots) {
+            if (slot == playing || slot == fadingOut || slot.startWhenPrepared) {
+                recycle(slot);
+            }
+        }
+        playing = null;
+        fadingOut = null;
+        listener = null;
+    }
+
+    void release() {
+        stop();
+        for (Slot slot : slots) {
+            slot.player.release();
+        }
+    }
+
+    /** The slot that will carry {@code toneUri}: the standby if already primed for it, else prepared now. */
+    private Slot standbyFor(Uri toneUri) throws IOException {
+        finishFade(); // Frees the player that was fading out
+        Slot standby = null;
+        for (Slot slot : slots) {
+            if (slot == playing) {
+                continue;
+            }
+            if (toneUri.equals(slot.uri)) {
+                slot.primed = true;
+                return slot;
+            }
+            if (standby == null || standby.uri != null) {
+                standby = slot; // Prefer an idle player over one primed for another tone
+            }
+        }
+        final Slot target = standby;
+        recycle(target);
+        target.primed = false;
+        target.uri = toneUri;
+        target.player.setAudioAttributes(new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .setUsage(AudioAttributes.USAGE_ALARM)
+                .build());
+        target.player.setLooping(true);
+        target.player.setOnPreparedListener(player -> onPrepared(target));
+        target.player.setOnErrorListener((player, what, extra) -> {
+            onError(target, "MediaPlayer error " + what + "/" + extra);
+            return true;
+        });
+        try {
+            target.player.setDataSource(context, toneUri);
+            target.player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            recycle(target);
+            throw e;
+        }
+        return target;
+    }
+
+    private void onPrepared(Slot slot) {
+        slot.prepared = true;
+        if (slot.startWhenPrepared) {
+            slot.startWhenPrepared = false;
+            start(slot);
+        }
+    }
+
+    private void onError(Slot slot, String reason) {
+        boolean wanted = slot.startWhenPrepared || slot == playing;
+        Log.e("TonePlayerPair", reason + " (" + slot.uri + ")");
+        recycle(slot);
+        if (slot == playing) {
+            playing = null;
+        }
+        if (wanted && listener != null) {
+            listener.onError(new IOException(reason));
+        }
+    }
+
+    private void start(Slot slot) {
+        Slot previous = playing;
+        playing = slot;
+        if (previous != null && previous.player.isPlaying()) {
+            slot.player.setVolume(0f, 0f);
+            slot.player.start();
+            crossfade(previous, slot);
+        } else {
+            if (previous != null) {
+                recycle(previous);
+            }
+            slot.player.setVolume(1f, 1f);
+            slot.player.start();
+        }
+        if (listener != null) {
+            listener.onFirstAudio(slot.primed);
+        }
+    }
+
+    private void crossfade(Slot from, Slot to) {
+        fadingOut = from;
+        final long startMs = SystemClock.uptimeMillis();
+        fadeStep = new Runnable() {
+            @Override
+            public void run() {
+                float t = Math.min(1f, (SystemClock.uptimeMillis() - startMs) / (float) CROSSFADE_MS);
+                // Equal-power curves keep the loudness steady through the handoff
+                float in = (float) Math.sin(t * Math.PI / 2);
+                float out = (float) Math.cos(t * Math.PI / 2);
+                to.player.setVolume(in, in);
+                from.player.setVolume(out, out);
+                if (t < 1f) {
+                    handler.postDelayed(this, FADE_STEP_MS);
+                } else {
+                    finishFade();
+                }
+            }
+        };
+        handler.post(fadeStep);
+    }
+
+    private void finishFade() {
+        if (fadingOut == null) {
+            return;
+        }
+        handler.removeCallbacks(fadeStep);
+        if (playing != null) {
+            playing.player.setVolume(1f, 1f);
+        }
+        recycle(fadingOut);
+        fadingOut = null;
+    }
+
+    /** Back to Idle, ready for a new data source. */
+    private static void recycle(Slot slot) {
+        try {
+            slot.player.reset();
+        } catch (RuntimeException e) {
+            Log.w("TonePlayerPair", "Reset failed: " + e.getMessage());
+        }
+        slot.uri = null;
+        slot.prepared = false;
+        slot.startWhenPrepared = false;
+        slot.primed = false;
+    }
+}
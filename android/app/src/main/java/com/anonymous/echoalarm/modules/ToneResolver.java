@@ -0,0 +1,248 @@
+package com.anonymous.echoalarm.modules;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pre-flight for a cluster's tone pool, run in the background right after it is saved: every
+ * content:// tone gets its read grant persisted and is copied into an app-private,
+ * content-addressed store (files/tones/&lt;sha256&gt;), so identical files are kept once. The
+ * stored cluster is then switched to the local file:// copies, and at fire time
+ * AlarmSoundService only opens a local file.
+ *
+ * Bundled android.resource:// tones are already local and are left as they are. A tone that
+ * cannot be read keeps its original URI (the service still falls back to the default alarm).
+ */
+final class ToneResolver {
+
+    private static final String STORE_DIR = "tones";
+    private static final String PREFS_NAME = "EchoAlarmTones";
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private ToneResolver() {
+    }
+
+    /**
+     * Resolves the pools of {@code states} on the background pool in one task, swaps each stored
+     * cluster to its local copies (if it was not edited meanwhile), re-arms once if anything was
+     * swapped and then warms the PCM cache with the resolved tones if it is in use.
+     */
+    static void prepareAsync(Context context, final Collection<AlarmState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final List<AlarmState> batch = new ArrayList<>(states);
+        try {
+            AlarmExecutors.background().execute(() -> {
+                synchronized (ToneResolver.class) { // One batch at a time: pruning must not race a copy
+                    resolveAndSwap(appContext, batch);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The clusters keep their original URIs, which AlarmSoundService can still open
+            Log.w("ToneResolver", "Cola llena, " + batch.size() + " pools sin resolver");
+        }
+    }
+
+    private static void resolveAndSwap(Context appContext, List<AlarmState> states) {
+        long start = System.currentTimeMillis();
+        Set<String> localTones = new LinkedHashSet<>();
+        boolean swapped = false;
+
+        for (AlarmState state : states) {
+            String[] resolved = resolvePool(appContext, state.toneUris);
+            localTones.addAll(Arrays.asList(resolved));
+            if (Arrays.equals(resolved, state.toneUris)) {
+                continue;
+            }
+            AlarmState current = AlarmProfileStore.loadAll(appContext).get(state.clusterId);
+            // Only if the cluster still has the pool we resolved. A tone-only record, not the whole
+            // cluster: a fire in the alarm process may move the cursor meanwhile
+            if (current != null && Arrays.equals(current.toneUris, state.toneUris)) {
+                AlarmProfileStore.swapToneUris(appContext, state.clusterId, state.toneUris, resolved);
+                swapped = true;
+            }
+        }
+        if (swapped) {
+            AlarmCoordinator.rearm(appContext);
+        }
+        pruneStore(appContext);
+        Log.d("ToneResolver", states.size() + " pools resueltos en "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        if (AlarmSettings.ENGINE_AUDIO_TRACK.equals(AlarmSettings.playbackEngine(appContext))) {
+            ToneDecodeCache.prefetch(appContext, localTones.toArray(new String[0]));
+        }
+    }
+
+    /** Local URI for every tone of the pool; unresolvable tones keep their original URI. */
+    static String[] resolvePool(Context context, String[] toneUris) {
+        String[] resolved = new String[toneUris.length];
+        for (int i = 0; i < toneUris.length; i++) {
+            resolved[i] = resolve(context, toneUris[i]);
+        }
+        return resolved;
+    }
+
+    private static String resolve(Context context, String toneUri) {
+        if (toneUri == null || toneUri.isEmpty()) {
+            return toneUri;
+        }
+        Uri uri = Uri.parse(toneUri);
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return toneUri; // android.resource:// (bundled) or an already local file
+        }
+
+        ContentResolver resolver = context.getContentResolver();
+        try {
+            resolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            // Not a document URI that offers persistable grants; the copy below still works while we can read it
+            Log.w("ToneResolver", "Sin permiso persistible para " + toneUri);
+        }
+
+        // Same source and size as last time: reuse the copy without reading it again
+        long size = sizeOf(resolver, uri);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String known = prefs.getString(toneUri, null);
+        if (known != null && size >= 0) {
+            int separator = known.indexOf('|');
+            File cached = new File(storeDir(context), known.substring(0, separator));
+            if (cached.exists() && Long.parseLong(known.substring(separator + 1)) == size) {
+                return Uri.fromFile(cached).toString();
+            }
+        }
+
+        try {
+            File local = copyToStore(context, resolver, uri);
+            prefs.edit().putString(toneUri, local.getName() + "|" + local.length()).apply();
+            return Uri.fromFile(local).toString();
+        } catch (IOException | SecurityException e) {
+            Log.e("ToneResolver", "Tono no accesible, se mantiene la URI original: " + toneUri + " (" + e.getMessage() + ")");
+            return toneUri;
+        }
+    }
+
+    /** Streams the tone into the store while hashing it; an existing file with the same hash is reused. */
+    private static File copyToStore(Context context, ContentResolver resolver, Uri uri) throws IOException {
+        File dir = storeDir(context);
+        File tmp = File.createTempFile("tone", ".tmp", dir);
+        MessageDigest digest = sha256();
+        try (InputStream in = resolver.openInputStream(uri);
+             OutputStream out = new FileOutputStream(tmp)) {
+            if (in == null) {
+                throw new IOException("ContentResolver devolvió un stream nulo");
+            }
+            byte[] buffer = new byte[COPY_BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | SecurityException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        File target = new File(dir, toHex(digest.digest()));
+        if (target.exists()) {
+            tmp.delete(); // Deduplicated: same content already stored
+        } else if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+        return target;
+    }
+
+    /** Deletes stored copies that no saved cluster points to anymore. */
+    private static void pruneStore(Context context) {
+        Set<String> referenced = new HashSet<>();
+        for (AlarmState state : AlarmProfileStore.loadAll(context).values()) {
+            for (String toneUri : state.toneUris) {
+                if (toneUri != null && toneUri.startsWith("file:")) {
+                    referenced.add(Uri.parse(toneUri).getLastPathSegment());
+                }
+            }
+        }
+        File[] files = storeDir(context).listFiles();
+        if (files == null) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = null;
+        for (File file : files) {
+            if (!referenced.contains(file.getName()) && file.delete()) {
+                if (editor == null) {
+                    editor = prefs.edit();
+                }
+                for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                    if (String.valueOf(entry.getValue()).startsWith(file.getName() + "|")) {
+                        editor.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    private static long sizeOf(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.w("ToneResolver", "No se pudo consultar el tamaño de " + uri);
+        }
+        return -1;
+    }
+
+    private static File storeDir(Context context) {
+        File dir = new File(context.getFilesDir(), STORE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
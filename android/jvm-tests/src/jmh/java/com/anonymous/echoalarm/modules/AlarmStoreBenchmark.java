@@ -0,0 +1,207 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The alarm state store: {@link AlarmJournal} against the EchoAlarmPrefs path it replaced, where
+ * saveAlarmData put the tone pool as an org.json string into SharedPreferences and BootReceiver
+ * parsed it back with JSONArray. SharedPreferences is reproduced as SharedPreferencesImpl does it:
+ * the whole map written as XML over a backup of the old file and synced, read back with a pull
+ * parser (StAX here). Each save of either store is synced to disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlarmStoreBenchmark {
+
+    private static final String WAKE_TIME = "2025-01-01T07:00:00.000Z";
+    private static final int INTERVAL_MINUTES = 5;
+    private static final int ALARM_COUNT = 10;
+
+    @Param({"3", "50"})
+    public int tones;
+
+    private File dir;
+    private File prefsFile;
+    private File prefsBackup;
+    private AlarmJournal journal;
+    private AlarmState state;
+    private int cursor;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("alarm-store").toFile();
+        prefsFile = new File(dir, "EchoAlarmPrefs.xml");
+        prefsBackup = new File(dir, "EchoAlarmPrefs.xml.bak");
+        journal = new AlarmJournal(new File(dir, "alarm_journal"));
+
+        String[] uris = new String[tones];
+        String[] names = new String[tones];
+        for (int i = 0; i < tones; i++) {
+            uris[i] = "content://media/external/audio/media/" + (1000 + i);
+            names[i] = "Tone number " + i;
+        }
+        long baseTimeMs = ClusterScheduleEngine.parseWakeTime(WAKE_TIME);
+        state = AlarmState.of("morning", 0, ClusterScheduleEngine.buildPlan(baseTimeMs, INTERVAL_MINUTES, ALARM_COUNT, tones),
+                baseTimeMs, INTERVAL_MINUTES, ALARM_COUNT, uris, names, false);
+
+        journal.writeSnapshot(Collections.singletonList(state));
+        prefsSave();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /** saveAlarmData: tone pool to a JSON string, whole preferences map rewritten. */
+    @Benchmark
+    public void prefsSave() throws IOException {
+        JSONArray jsonArray = new JSONArray();
+        for (int i = 0; i < state.toneUris.length; i++) {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("uri", state.toneUris[i]);
+            jsonObject.put("name", state.toneNames[i]);
+            jsonArray.put(jsonObject);
+        }
+        Map<String, Object> map = new HashMap<>();
+        map.put("wakeTime", WAKE_TIME);
+        map.put("interval", INTERVAL_MINUTES);
+        map.put("alarmCount", ALARM_COUNT);
+        map.put("tonePool", jsonArray.toString());
+        map.put("isAlarmActive", true);
+        writePrefs(map);
+    }
+
+    /** BootReceiver: preferences file parsed, then the tone pool string. */
+    @Benchmark
+    public String prefsBootRead() throws IOException {
+        Map<String, Object> prefs = readPrefs();
+        JSONArray jsonArray = new JSONArray((String) prefs.get("tonePool"));
+        String uri = "";
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject tone = jsonArray.getJSONObject(i);
+            if (i == 0 && tone.has("uri")) {
+                uri = tone.getString("uri");
+            }
+        }
+        return (String) prefs.get("wakeTime") + prefs.get("interval") + prefs.get("alarmCount") + uri;
+    }
+
+    /** Saving a cluster: one CLUSTER record appended (compacted now and then). */
+    @Benchmark
+    public void journalSave() throws IOException {
+        journal.appendCluster(state);
+    }
+
+    /** A fire: one CURSOR record appended. The old store kept no cursor at all. */
+    @Benchmark
+    public void journalFireCursor() throws IOException {
+        journal.appendCursor(state, cursor = (cursor + 1) % ALARM_COUNT);
+    }
+
+    /** Boot and fire time: the whole journal replayed, plans and tone tables included. */
+    @Benchmark
+    public Map<String, AlarmState> journalBootRead() throws IOException {
+        return journal.read();
+    }
+
+    /** As SharedPreferencesImpl.writeToFile: old file to .bak, map to XML, sync, drop the backup. */
+    private void writePrefs(Map<String, Object> map) throws IOException {
+        if (prefsFile.exists() && !prefsBackup.exists() && !prefsFile.renameTo(prefsBackup)) {
+            throw new IOException("Could not back up " + prefsFile);
+        }
+        try (FileOutputStream fos = new FileOutputStream(prefsFile)) {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(fos, "utf-8");
+            xml.writeStartDocument("utf-8", "1.0");
+            xml.writeStartElement("map");
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof String) {
+                    xml.writeStartElement("string");
+                    xml.writeAttribute("name", entry.getKey());
+                    xml.writeCharacters((String) value);
+                    xml.writeEndElement();
+                } else {
+                    xml.writeEmptyElement(value instanceof Integer ? "int" : "boolean");
+                    xml.writeAttribute("name", entry.getKey());
+                    xml.writeAttribute("value", value.toString());
+                }
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+            fos.getFD().sync();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        prefsBackup.delete(); // Absent on the first save
+    }
+
+    private Map<String, Object> readPrefs() throws IOException {
+        Map<String, Object> map = new HashMap<>();
+        try (FileInputStream fis = new FileInputStream(prefsFile)) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(fis, "utf-8");
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = xml.getAttributeValue(null, "name");
+                switch (xml.getLocalName()) {
+                    case "string":
+                        map.put(name, xml.getElementText());
+                        break;
+                    case "int":
+                        map.put(name, Integer.parseInt(xml.getAttributeValue(null, "value")));
+                        break;
+                    case "boolean":
+                        map.put(name, Boolean.parseBoolean(xml.getAttributeValue(null, "value")));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return map;
+    }
+}
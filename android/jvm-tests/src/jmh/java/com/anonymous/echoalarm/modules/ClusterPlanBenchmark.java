@@ -0,0 +1,107 @@
+package com.anonymous.echoalarm.modules;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Plan generation, the work done at boot and on every save: {@link ClusterScheduleEngine#buildPlan}
+ * against the per-member math the module and BootReceiver used to repeat (wakeTime parsed, then
+ * {@code T + i * I * 60 * 1000} and {@code i % pool}), and rolling a recurring cluster over a
+ * long horizon through its {@link OccurrenceWindow}, next to the bare rule evaluation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterPlanBenchmark {
+
+    private static final String WAKE_TIME = "2025-01-01T07:00:00.000Z";
+    private static final String ZONE = "Europe/Madrid";
+    private static final int INTERVAL_MINUTES = 5;
+    private static final int TONES = 7;
+
+    @State(Scope.Thread)
+    public static class Cluster {
+        @Param({"10", "1000", "100000"})
+        public int alarmCount;
+    }
+
+    @State(Scope.Thread)
+    public static class Horizon {
+        @Param({"30", "365"})
+        public int days;
+
+        long baseTimeMs;
+        AlarmState recurring;
+
+        @Setup
+        public void setUp() {
+            baseTimeMs = ClusterScheduleEngine.parseWakeTime(WAKE_TIME);
+            RecurrenceRule rule = RecurrenceRule.weekly(0x3E, baseTimeMs, ZONE); // Monday to Friday
+            recurring = AlarmState.of("weekdays", 0, ClusterScheduleEngine.buildPlan(baseTimeMs, INTERVAL_MINUTES, 10, TONES),
+                    baseTimeMs, INTERVAL_MINUTES, 10, new String[TONES], new String[TONES], false);
+            recurring.recurrence = rule;
+            recurring.upcoming = OccurrenceWindow.fill(rule, baseTimeMs);
+        }
+    }
+
+    @Benchmark
+    public ClusterPlan buildPlan(Cluster cluster) {
+        return ClusterScheduleEngine.buildPlan(ClusterScheduleEngine.parseWakeTime(WAKE_TIME), INTERVAL_MINUTES,
+                cluster.alarmCount, TONES);
+    }
+
+    /** The math both call sites had before the engine, into the same primitive arrays. */
+    @Benchmark
+    public void legacyPerMemberMath(Cluster cluster, Blackhole blackhole) {
+        int alarmCount = cluster.alarmCount;
+        long triggerTimeMs = Instant.parse(WAKE_TIME).toEpochMilli();
+        long[] fireTimes = new long[alarmCount];
+        int[] toneIndices = new int[alarmCount];
+        for (int i = 0; i < alarmCount; i++) {
+            fireTimes[i] = triggerTimeMs + ((long) i * INTERVAL_MINUTES * 60 * 1000);
+            toneIndices[i] = i % TONES;
+        }
+        blackhole.consume(fireTimes);
+        blackhole.consume(toneIndices);
+    }
+
+    /** A recurring cluster finishing once a day over the horizon, as AlarmReceiver rolls it. */
+    @Benchmark
+    public AlarmState rollForwardHorizon(Horizon horizon) {
+        AlarmState state = horizon.recurring;
+        long now = horizon.baseTimeMs;
+        for (int day = 0; day < horizon.days; day++) {
+            now += ClusterScheduleEngine.DAY_MS;
+            state = ClusterScheduleEngine.rollForward(state, now, ZONE);
+        }
+        return state;
+    }
+
+    /** Same horizon, only the rule evaluated once per day, without building plans. */
+    @Benchmark
+    public long nextAfterHorizon(Horizon horizon) {
+        RecurrenceRule rule = horizon.recurring.recurrence;
+        long now = horizon.baseTimeMs;
+        long next = 0;
+        for (int day = 0; day < horizon.days; day++) {
+            now += ClusterScheduleEngine.DAY_MS;
+            next = rule.nextAfter(now);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,100 @@
+package com.anonymous.echoalarm.modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The native side of the synchronous JSI reads, getNextFireTime and isActive: the journal
+ * replayed and the cluster index built on every call, as AlarmSchedulerModule does. Subtracted
+ * from the per-call times of src/dev/benchmarkNativeCalls.js it leaves the JSI crossing itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeReadBenchmark {
+
+    private static final String WAKE_TIME = "2025-01-01T07:00:00.000Z";
+    private static final int INTERVAL_MINUTES = 5;
+    private static final int ALARM_COUNT = 10;
+    private static final int TONES = 3;
+
+    @Param({"1", "8"})
+    public int clusters;
+
+    private File dir;
+    private AlarmJournal journal;
+    private Map<String, AlarmState> stored;
+    private long nowMs;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("native-read").toFile();
+        journal = new AlarmJournal(new File(dir, "alarm_state.journal"));
+
+        long baseTimeMs = ClusterScheduleEngine.parseWakeTime(WAKE_TIME);
+        List<AlarmState> states = new ArrayList<>();
+        for (int slot = 0; slot < clusters; slot++) {
+            long wakeMs = baseTimeMs + slot * ClusterScheduleEngine.DAY_MS;
+            states.add(AlarmState.of("cluster" + slot, slot,
+                    ClusterScheduleEngine.buildPlan(wakeMs, INTERVAL_MINUTES, ALARM_COUNT, TONES),
+                    wakeMs, INTERVAL_MINUTES, ALARM_COUNT, new String[TONES], new String[TONES], false));
+        }
+        journal.writeSnapshot(states);
+        // A few fires since the last compaction, as on a device between saves
+        for (int i = 1; i <= 3; i++) {
+            journal.appendCursor(states.get(0), i);
+        }
+        stored = journal.read();
+        nowMs = baseTimeMs + 12 * 60_000L;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /** getNextFireTime: journal read, index built, nearest time peeked. */
+    @Benchmark
+    public double nextFireTime() throws IOException {
+        ClusterIndex index = ArmedWindowPlanner.buildIndex(journal.read(), nowMs);
+        return index.isEmpty() ? -1 : index.peekTime();
+    }
+
+    /** isActive: the same read, only whether the index is empty. */
+    @Benchmark
+    public boolean isActive() throws IOException {
+        return !ArmedWindowPlanner.buildIndex(journal.read(), nowMs).isEmpty();
+    }
+
+    /** The index alone, from clusters already in memory: what is left besides the file read. */
+    @Benchmark
+    public ClusterIndex indexOnly() {
+        return ArmedWindowPlanner.buildIndex(stored, nowMs);
+    }
+}
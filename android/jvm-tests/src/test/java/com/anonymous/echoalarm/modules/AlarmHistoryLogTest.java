@@ -0,0 +1,129 @@
+package com.anonymous.echoalarm.modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AlarmHistoryLogTest {
+
+    private static final int HEADER_BYTES = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static long[] times(AlarmHistoryLog log) throws IOException {
+        final List<Long> times = new ArrayList<>();
+        log.scan((type, atMs, scheduledAtMs, clusterHash, member, toneHash, detail) -> times.add(atMs));
+        long[] result = new long[times.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = times.get(i);
+        }
+        return result;
+    }
+
+    private static File[] segments(File dir) {
+        return dir.listFiles((parent, name) -> name.startsWith("seg-"));
+    }
+
+    @Test
+    public void recordsAreReadBackInAppendOrder() throws IOException {
+        AlarmHistoryLog log = new AlarmHistoryLog(folder.newFolder("history"));
+        log.append(AlarmHistoryLog.ARM, 1L, 10L, "morning", 0, null, 0);
+        log.append(AlarmHistoryLog.FIRE, 2L, 10L, "morning", 3, "content://a", 42);
+
+        final List<Object[]> records = new ArrayList<>();
+        log.scan((type, atMs, scheduledAtMs, clusterHash, member, toneHash, detail) ->
+                records.add(new Object[]{type, atMs, scheduledAtMs, clusterHash, member, toneHash, detail}));
+        assertEquals(2, records.size());
+        assertArrayEquals(new Object[]{AlarmHistoryLog.FIRE, 2L, 10L, AlarmHistoryLog.hashOf("morning"), 3,
+                AlarmHistoryLog.hashOf("content://a"), 42}, records.get(1));
+        assertEquals(0, records.get(0)[5]);
+    }
+
+    @Test
+    public void tornRecordIsIgnoredAndCutBeforeNextAppend() throws IOException {
+        File dir = folder.newFolder("history");
+        AlarmHistoryLog log = new AlarmHistoryLog(dir);
+        log.append(AlarmHistoryLog.FIRE, 1L, 1L, "morning", 0, null, 0);
+        log.append(AlarmHistoryLog.FIRE, 2L, 2L, "morning", 1, null, 0);
+
+        // A process death mid-append: part of the second record on disk
+        File segment = segments(dir)[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(HEADER_BYTES + AlarmHistoryLog.RECORD_BYTES + 10);
+        }
+        assertArrayEquals(new long[]{1L}, times(log));
+
+        log.append(AlarmHistoryLog.DISMISS, 3L, 3L, "morning", 1, null, 0);
+        assertArrayEquals(new long[]{1L, 3L}, times(log));
+        assertEquals(HEADER_BYTES + 2 * AlarmHistoryLog.RECORD_BYTES, segment.length());
+    }
+
+    @Test
+    public void tornHeaderStartsTheSegmentOver() throws IOException {
+        File dir = folder.newFolder("history");
+        AlarmHistoryLog log = new AlarmHistoryLog(dir);
+        log.append(AlarmHistoryLog.FIRE, 1L, 1L, "morning", 0, null, 0);
+        File segment = segments(dir)[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(HEADER_BYTES / 2);
+        }
+        assertArrayEquals(new long[0], times(log));
+
+        log.append(AlarmHistoryLog.FIRE, 2L, 2L, "morning", 1, null, 0);
+        assertArrayEquals(new long[]{2L}, times(log));
+    }
+
+    @Test
+    public void fullSegmentsRotateAndOnlyTheNewestAreKept() throws IOException {
+        File dir = folder.newFolder("history");
+        // Two records per segment, at most three segments
+        AlarmHistoryLog log = new AlarmHistoryLog(dir, HEADER_BYTES + 2 * AlarmHistoryLog.RECORD_BYTES, 3);
+        for (long atMs = 1; atMs <= 10; atMs++) {
+            log.append(AlarmHistoryLog.FIRE, atMs, atMs, "morning", 0, null, 0);
+        }
+
+        assertEquals(3, segments(dir).length);
+        assertArrayEquals(new long[]{5L, 6L, 7L, 8L, 9L, 10L}, times(log));
+    }
+
+    @Test
+    public void rotationByAnotherWriterIsSeen() throws IOException {
+        File dir = folder.newFolder("history");
+        int segmentBytes = HEADER_BYTES + 2 * AlarmHistoryLog.RECORD_BYTES;
+        // The two app processes, each with its own instance
+        AlarmHistoryLog app = new AlarmHistoryLog(dir, segmentBytes, 2);
+        AlarmHistoryLog receiver = new AlarmHistoryLog(dir, segmentBytes, 2);
+        for (long atMs = 1; atMs <= 6; atMs++) {
+            (atMs % 2 == 0 ? receiver : app).append(AlarmHistoryLog.FIRE, atMs, atMs, "morning", 0, null, 0);
+        }
+
+        assertEquals(2, segments(dir).length);
+        assertArrayEquals(new long[]{3L, 4L, 5L, 6L}, times(app));
+        assertArrayEquals(new long[]{3L, 4L, 5L, 6L}, times(receiver));
+    }
+
+    @Test
+    public void toneUrisAreKeptInTheDictionary() throws IOException {
+        File dir = folder.newFolder("history");
+        AlarmHistoryLog writer = new AlarmHistoryLog(dir);
+        writer.append(AlarmHistoryLog.FIRE, 1L, 1L, "morning", 0, "content://a", 0);
+        writer.append(AlarmHistoryLog.FIRE, 2L, 2L, "morning", 1, "content://a", 0);
+        writer.append(AlarmHistoryLog.FIRE, 3L, 3L, "morning", 2, "content://b", 0);
+
+        AlarmHistoryLog reader = new AlarmHistoryLog(dir);
+        assertEquals("content://a", reader.toneOf(AlarmHistoryLog.hashOf("content://a")));
+        assertEquals("content://b", reader.toneOf(AlarmHistoryLog.hashOf("content://b")));
+        // Each URI written once
+        assertEquals(2 * 4 + 2 * (2 + "content://a".length()), new File(dir, "tones").length());
+    }
+}
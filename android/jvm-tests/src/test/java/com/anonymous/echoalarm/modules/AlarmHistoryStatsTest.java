@@ -0,0 +1,149 @@
+package com.anonymous.echoalarm.modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AlarmHistoryStatsTest {
+
+    private static final long MINUTE = ClusterScheduleEngine.MINUTE_MS;
+    // A Monday, so the whole night falls in one week
+    private static final long T0 = ClusterScheduleEngine.parseWakeTime("2025-01-06T07:00:00.000Z");
+    private static final String A = "content://a";
+    private static final String B = "content://b";
+    private static final String C = "content://c";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AlarmHistoryLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        log = new AlarmHistoryLog(folder.newFolder("history"));
+    }
+
+    private void fire(long atMs, String tone) throws IOException {
+        log.append(AlarmHistoryLog.FIRE, atMs, atMs, "morning", 0, tone, 0);
+    }
+
+    private void answer(byte type, long atMs) throws IOException {
+        log.append(type, atMs, 0L, "morning", 0, null, 0);
+    }
+
+    @Test
+    public void fireReplacedByTheNextOneWasSleptThrough() throws IOException {
+        fire(T0, A);
+        fire(T0 + 5 * MINUTE, B);
+        answer(AlarmHistoryLog.DISMISS, T0 + 7 * MINUTE);
+
+        AlarmHistoryStats.Summary summary = AlarmHistoryStats.summary(log, T0, T0 + 8 * MINUTE);
+        assertEquals(2, summary.fired);
+        assertEquals(1, summary.dismissed);
+        assertEquals(1, summary.sleptThrough);
+        assertEquals(T0, summary.firstFireAtMs);
+        assertEquals(T0 + 7 * MINUTE, summary.lastDismissAtMs);
+
+        // Time to dismiss counts from the first fire of the wake-up
+        List<AlarmHistoryStats.Week> weeks = AlarmHistoryStats.dismissByWeek(log, 2, T0 + 8 * MINUTE, "UTC");
+        assertEquals(AlarmHistoryStats.weekStart(T0, TimeZone.getTimeZone("UTC")), weeks.get(0).startMs);
+        assertArrayEquals(new long[]{7 * MINUTE}, weeks.get(0).dismissMs);
+        assertEquals(2, weeks.get(0).fires);
+        assertArrayEquals(new long[0], weeks.get(1).dismissMs);
+    }
+
+    @Test
+    public void snoozeKeepsTheWakeUpGoing() throws IOException {
+        fire(T0, A);
+        answer(AlarmHistoryLog.SNOOZE, T0 + MINUTE);
+        fire(T0 + 10 * MINUTE, A);
+        answer(AlarmHistoryLog.DISMISS, T0 + 12 * MINUTE);
+
+        AlarmHistoryStats.Summary summary = AlarmHistoryStats.summary(log, T0, T0 + 13 * MINUTE);
+        assertEquals(1, summary.snoozed);
+        assertEquals(1, summary.dismissed);
+        assertEquals(0, summary.sleptThrough);
+
+        AlarmHistoryStats.Week week = AlarmHistoryStats.dismissByWeek(log, 1, T0 + 13 * MINUTE, "UTC").get(0);
+        assertArrayEquals(new long[]{12 * MINUTE}, week.dismissMs);
+        assertEquals(2, week.fires);
+    }
+
+    @Test
+    public void lastFireIsSleptThroughOnlyOnceUnansweredLongEnough() throws IOException {
+        fire(T0, A);
+
+        long soon = T0 + AlarmHistoryStats.UNANSWERED_MS;
+        assertEquals(0, AlarmHistoryStats.summary(log, T0, soon).sleptThrough);
+        assertEquals(1, AlarmHistoryStats.summary(log, T0, soon + 1).sleptThrough);
+    }
+
+    @Test
+    public void repeatedDismissIsOneWakeUp() throws IOException {
+        fire(T0, A);
+        // The alarm screen and the app both report the stop
+        answer(AlarmHistoryLog.DISMISS, T0 + MINUTE);
+        answer(AlarmHistoryLog.DISMISS, T0 + MINUTE + 200);
+
+        assertEquals(1, AlarmHistoryStats.summary(log, T0, T0 + 2 * MINUTE).dismissed);
+    }
+
+    @Test
+    public void longSilenceStartsANewWakeUp() throws IOException {
+        // Yesterday's fire was never answered; today's wake-up is measured from today's first fire
+        fire(T0 - 2 * AlarmHistoryStats.UNANSWERED_MS, A);
+        fire(T0, A);
+        answer(AlarmHistoryLog.DISMISS, T0 + 3 * MINUTE);
+
+        AlarmHistoryStats.Week week = AlarmHistoryStats.dismissByWeek(log, 1, T0 + 4 * MINUTE, "UTC").get(0);
+        assertArrayEquals(new long[]{3 * MINUTE}, week.dismissMs);
+        assertEquals(1, week.fires);
+    }
+
+    @Test
+    public void summaryCountsOnlySinceTheGivenTime() throws IOException {
+        fire(T0 - 10 * MINUTE, A);
+        answer(AlarmHistoryLog.DISMISS, T0 - 9 * MINUTE);
+        log.append(AlarmHistoryLog.FIRE, T0, T0 - 30_000L, "morning", 0, A, 30_000);
+        answer(AlarmHistoryLog.DISMISS, T0 + MINUTE);
+
+        AlarmHistoryStats.Summary summary = AlarmHistoryStats.summary(log, T0, T0 + 2 * MINUTE);
+        assertEquals(1, summary.fired);
+        assertEquals(1, summary.dismissed);
+        assertEquals(T0, summary.firstFireAtMs);
+        assertEquals(30_000L, summary.maxLatenessMs);
+    }
+
+    @Test
+    public void tonesAreRankedBySleptThrough() throws IOException {
+        // Night 1: A and B slept through, C answered
+        fire(T0, A);
+        fire(T0 + 5 * MINUTE, B);
+        fire(T0 + 10 * MINUTE, C);
+        answer(AlarmHistoryLog.DISMISS, T0 + 11 * MINUTE);
+        // Night 2: A slept through again, B answered
+        long night = T0 + ClusterScheduleEngine.DAY_MS;
+        fire(night, A);
+        fire(night + 5 * MINUTE, B);
+        answer(AlarmHistoryLog.DISMISS, night + 6 * MINUTE);
+
+        List<AlarmHistoryStats.ToneCount> tones = AlarmHistoryStats.sleptThrough(log, 10, night + 7 * MINUTE);
+        assertEquals(2, tones.size());
+        assertEquals(AlarmHistoryLog.hashOf(A), tones.get(0).toneHash);
+        assertEquals(2, tones.get(0).sleptThrough);
+        assertEquals(2, tones.get(0).fires);
+        assertEquals(AlarmHistoryLog.hashOf(B), tones.get(1).toneHash);
+        assertEquals(1, tones.get(1).sleptThrough);
+        assertEquals(1, tones.get(1).answered);
+
+        assertEquals(1, AlarmHistoryStats.sleptThrough(log, 1, night + 7 * MINUTE).size());
+    }
+}
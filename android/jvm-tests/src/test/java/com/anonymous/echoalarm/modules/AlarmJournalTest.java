@@ -0,0 +1,149 @@
+package com.anonymous.echoalarm.modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AlarmJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static AlarmState cluster(String clusterId, int slot) {
+        ClusterPlan plan = new ClusterPlan(new long[]{1000L, 61000L, 121000L}, new int[]{0, 1, 0});
+        return AlarmState.of(clusterId, slot, plan, 1000L, 1, 3,
+                new String[]{"content://a", "content://b"}, new String[]{"A", "B"}, false);
+    }
+
+    @Test
+    public void replaysSnapshotAndAppendedRecords() throws IOException {
+        AlarmJournal journal = new AlarmJournal(folder.newFile("journal"));
+        journal.writeSnapshot(Arrays.asList(cluster("morning", 0), cluster("nap", 1)));
+        journal.appendCursor(cluster("morning", 0), 2);
+        journal.appendRemove("nap");
+
+        Map<String, AlarmState> clusters = journal.read();
+        assertEquals(1, clusters.size());
+        assertEquals(2, clusters.get("morning").nextIndex);
+    }
+
+    @Test
+    public void appendAfterTornTailIsReplayed() throws IOException {
+        File file = folder.newFile("journal");
+        AlarmJournal journal = new AlarmJournal(file);
+        journal.writeSnapshot(Arrays.asList(cluster("morning", 0)));
+        journal.appendCursor(cluster("morning", 0), 1);
+        long intact = file.length();
+
+        // A process death mid-append: half a record at the end
+        journal.appendCursor(cluster("morning", 0), 2);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(intact + (file.length() - intact) / 2);
+        }
+        assertEquals(1, journal.read().get("morning").nextIndex);
+
+        journal.appendCursor(cluster("morning", 0), 3);
+        journal.appendCluster(cluster("nap", 1));
+
+        Map<String, AlarmState> clusters = journal.read();
+        assertEquals(3, clusters.get("morning").nextIndex);
+        assertTrue(clusters.containsKey("nap"));
+    }
+
+    @Test
+    public void appendAfterCorruptTailIsReplayed() throws IOException {
+        File file = folder.newFile("journal");
+        AlarmJournal journal = new AlarmJournal(file);
+        journal.writeSnapshot(Arrays.asList(cluster("morning", 0)));
+        long intact = file.length();
+        journal.appendCursor(cluster("morning", 0), 1);
+
+        // Flip a payload byte of the last record so its crc no longer matches
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(intact + 6);
+            int b = raf.read();
+            raf.seek(intact + 6);
+            raf.write(b ^ 0xFF);
+        }
+        assertEquals(0, journal.read().get("morning").nextIndex);
+
+        journal.appendRemove("morning");
+        assertFalse(journal.read().containsKey("morning"));
+    }
+
+    @Test
+    public void compactionAfterTornTailKeepsLaterRecords() throws IOException {
+        File file = folder.newFile("journal");
+        AlarmJournal journal = new AlarmJournal(file);
+        journal.writeSnapshot(Arrays.asList(cluster("morning", 0)));
+        journal.appendCursor(cluster("morning", 0), 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 3);
+        }
+
+        // About 40 KB of cursor records: compacts more than once
+        for (int i = 0; i < 2000; i++) {
+            journal.appendCursor(cluster("morning", 0), i);
+        }
+        assertTrue(file.length() <= AlarmJournal.COMPACT_THRESHOLD_BYTES);
+        assertEquals(1999, journal.read().get("morning").nextIndex);
+    }
+
+    @Test
+    public void toneSwapKeepsTheCursorMovedMeanwhile() throws IOException {
+        AlarmJournal journal = new AlarmJournal(folder.newFile("journal"));
+        AlarmState morning = cluster("morning", 0);
+        journal.writeSnapshot(Arrays.asList(morning));
+
+        // The alarm process fires a member while the main process copies the tones
+        journal.appendCursor(cluster("morning", 0), 2);
+        String[] local = {"file:///tones/a", "file:///tones/b"};
+        journal.appendToneSwap("morning", morning.toneUris, local);
+
+        AlarmState stored = journal.read().get("morning");
+        assertEquals(2, stored.nextIndex);
+        assertArrayEquals(local, stored.toneUris);
+    }
+
+    @Test
+    public void toneSwapIsSkippedIfThePoolChanged() throws IOException {
+        AlarmJournal journal = new AlarmJournal(folder.newFile("journal"));
+        AlarmState morning = cluster("morning", 0);
+        journal.writeSnapshot(Arrays.asList(morning));
+
+        AlarmState edited = cluster("morning", 0);
+        edited.toneUris = new String[]{"content://c", "content://d"};
+        journal.appendCluster(edited);
+        journal.appendToneSwap("morning", morning.toneUris, new String[]{"file:///tones/a", "file:///tones/b"});
+
+        assertArrayEquals(edited.toneUris, journal.read().get("morning").toneUris);
+    }
+
+    @Test
+    public void cursorForAReplacedPlanIsSkipped() throws IOException {
+        AlarmJournal journal = new AlarmJournal(folder.newFile("journal"));
+        AlarmState morning = cluster("morning", 0);
+        journal.writeSnapshot(Arrays.asList(morning));
+
+        // The main process saves a new plan while the alarm process fires a member of the old one
+        AlarmState edited = AlarmState.of("morning", 0, new ClusterPlan(new long[]{5000L, 65000L}, new int[]{0, 1}),
+                5000L, 1, 2, morning.toneUris, morning.toneNames, false);
+        journal.appendCluster(edited);
+        journal.appendCursor(morning, 2);
+        assertEquals(0, journal.read().get("morning").nextIndex);
+
+        journal.appendCursor(edited, 1);
+        assertEquals(1, journal.read().get("morning").nextIndex);
+    }
+}
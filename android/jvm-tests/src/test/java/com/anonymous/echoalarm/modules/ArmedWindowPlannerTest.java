@@ -0,0 +1,130 @@
+package com.anonymous.echoalarm.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class ArmedWindowPlannerTest {
+
+    private static final int WINDOW = 8; // AlarmCoordinator.ARMED_WINDOW
+    private static final int LEGACY_SWEEP_SIZE = 50; // RequestCodeRegistry.LEGACY_SWEEP_SIZE
+    private static final long NOW = 1_000_000L;
+
+    /** AlarmManager plus RequestCodeRegistry: counts the calls that would cross Binder. */
+    private static final class FakeTarget implements ArmedWindowPlanner.Target {
+        final Map<Integer, long[]> registry = new TreeMap<>(); // code -> {triggerAt, memberKey, signature}
+        int armCalls;
+        int cancelCalls;
+
+        @Override
+        public int[] liveCodes() {
+            int[] codes = new int[registry.size()];
+            int i = 0;
+            for (int code : registry.keySet()) {
+                codes[i++] = code;
+            }
+            return codes;
+        }
+
+        @Override
+        public long memberKeyOf(int code) {
+            long[] entry = registry.get(code);
+            return entry != null ? entry[1] : -1L;
+        }
+
+        @Override
+        public long triggerTimeOf(int code) {
+            long[] entry = registry.get(code);
+            return entry != null ? entry[0] : -1L;
+        }
+
+        @Override
+        public int signatureOf(int code) {
+            long[] entry = registry.get(code);
+            return entry != null ? (int) entry[2] : 0;
+        }
+
+        @Override
+        public void cancel(int code) {
+            cancelCalls++;
+            registry.remove(code);
+        }
+
+        @Override
+        public void arm(int code, long triggerAtMs, AlarmState cluster, int memberIndex) {
+            armCalls++;
+            registry.put(code, new long[]{triggerAtMs, RequestCodeAllocator.memberKey(cluster.slot, memberIndex),
+                    ArmedWindowPlanner.signatureOf(cluster, memberIndex)});
+        }
+
+        RequestCodeAllocator allocator() {
+            RequestCodeAllocator allocator = new RequestCodeAllocator();
+            for (Map.Entry<Integer, long[]> entry : registry.entrySet()) {
+                allocator.restore(entry.getKey(), entry.getValue()[1]);
+            }
+            return allocator;
+        }
+    }
+
+    /** {@code count} one-member clusters, a minute apart. */
+    private static Map<String, AlarmState> clusters(int count) {
+        Map<String, AlarmState> clusters = new LinkedHashMap<>();
+        for (int slot = 0; slot < count; slot++) {
+            long at = NOW + (slot + 1) * 60_000L;
+            ClusterPlan plan = new ClusterPlan(new long[]{at}, new int[]{0});
+            clusters.put("c" + slot, AlarmState.of("c" + slot, slot, plan, at, 1, 1,
+                    new String[]{"content://tone"}, new String[]{"Tone"}, false));
+        }
+        return clusters;
+    }
+
+    private static FakeTarget armed(int liveAlarms) {
+        FakeTarget target = new FakeTarget();
+        ArmedWindowPlanner.plan(clusters(liveAlarms), NOW, WINDOW, target.allocator(), target);
+        assertEquals(liveAlarms, target.registry.size());
+        target.armCalls = 0;
+        return target;
+    }
+
+    @Test
+    public void cancellingEverythingCostsOneCallPerLiveAlarm() {
+        for (int live : new int[]{0, 2, WINDOW}) {
+            FakeTarget target = armed(live);
+            ArmedWindowPlanner.Result result = ArmedWindowPlanner.plan(
+                    Collections.<String, AlarmState>emptyMap(), NOW, WINDOW, target.allocator(), target);
+
+            assertEquals(live, target.cancelCalls); // The old sweep made LEGACY_SWEEP_SIZE calls every time
+            assertEquals(live, result.cancelled);
+            assertEquals(0, target.armCalls);
+            assertTrue(target.registry.isEmpty());
+        }
+    }
+
+    @Test
+    public void codesAboveTheLegacySweepAreCancelled() {
+        FakeTarget target = armed(2);
+        int stray = LEGACY_SWEEP_SIZE + 13;
+        target.registry.put(stray, new long[]{NOW + 60_000L, RequestCodeAllocator.memberKey(40, 0), 0});
+
+        ArmedWindowPlanner.plan(clusters(2), NOW, WINDOW, target.allocator(), target);
+
+        assertEquals(1, target.cancelCalls);
+        assertEquals(Arrays.asList(0, 1), Arrays.asList(target.registry.keySet().toArray()));
+    }
+
+    @Test
+    public void unchangedWindowCostsNoCalls() {
+        FakeTarget target = armed(WINDOW);
+        ArmedWindowPlanner.plan(clusters(WINDOW), NOW, WINDOW, target.allocator(), target);
+
+        assertEquals(0, target.armCalls);
+        assertEquals(0, target.cancelCalls);
+    }
+}
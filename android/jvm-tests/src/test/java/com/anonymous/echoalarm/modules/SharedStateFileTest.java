@@ -0,0 +1,148 @@
+package com.anonymous.echoalarm.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedStateFileTest {
+
+    private static final int INCREMENTS = 1000;
+    private static final String HOLD_LOCK = "hold-lock";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void editsArePersistedAndTyped() throws IOException {
+        File file = new File(folder.getRoot(), "settings.state");
+        SharedStateFile state = new SharedStateFile(file, true);
+        state.edit(editor -> editor
+                .putLong("at_1", 1234L)
+                .putInt("member_1", 7)
+                .putString("tone_1", "content://a")
+                .putBoolean("initialized", true));
+        state.edit(editor -> editor.remove("member_1"));
+
+        SharedStateFile.Values values = new SharedStateFile(file, true).read();
+        assertEquals(1234L, values.getLong("at_1", -1L));
+        assertEquals(-1, values.getInt("member_1", -1));
+        assertEquals("content://a", values.getString("tone_1", null));
+        assertTrue(values.getBoolean("initialized", false));
+        assertEquals(-1, values.getInt("at_1", -1)); // Stored as a long
+    }
+
+    @Test
+    public void unchangedEditDoesNotWrite() throws IOException {
+        File file = new File(folder.getRoot(), "registry.state");
+        SharedStateFile state = new SharedStateFile(file, false);
+        state.edit(editor -> editor.remove("code_3"));
+        assertFalse(file.exists());
+    }
+
+    /** Another process (a child JVM) and this one increment the same counter: no update is lost. */
+    @Test
+    public void concurrentEditsFromTwoProcessesAreAllKept() throws Exception {
+        File file = new File(folder.getRoot(), "counter.state");
+        Process child = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                SharedStateFileTest.class.getName(), file.getPath())
+                .inheritIO()
+                .start();
+
+        // Start once the child is editing, so the two loops overlap
+        SharedStateFile state = new SharedStateFile(file, false);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (state.read().getInt("count", 0) == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        increment(state, INCREMENTS);
+        assertTrue(child.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, child.exitValue());
+
+        SharedStateFile reader = new SharedStateFile(file, false);
+        assertEquals(2 * INCREMENTS, reader.read().getInt("count", 0));
+    }
+
+    /** A read interrupted while another process holds the lock does not break later calls. */
+    @Test
+    public void interruptedLockedReadDoesNotBreakLaterCalls() throws Exception {
+        File file = new File(folder.getRoot(), "registry.state");
+        SharedStateFile state = new SharedStateFile(file, false);
+        state.edit(editor -> editor.putInt("code_3", 3));
+
+        Process child = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                SharedStateFileTest.class.getName(), file.getPath(), HOLD_LOCK)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            BufferedReader childOut = new BufferedReader(new InputStreamReader(child.getInputStream()));
+            assertEquals("locked", childOut.readLine());
+
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    state.read();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            reader.start();
+            Thread.sleep(200); // Blocked on the child's lock
+            reader.interrupt();
+            reader.join(10_000);
+            assertFalse(reader.isAlive());
+            assertTrue(failure.get() instanceof IOException);
+        } finally {
+            child.getOutputStream().close(); // The child releases the lock and exits
+            assertTrue(child.waitFor(30, TimeUnit.SECONDS));
+        }
+
+        assertEquals(3, state.read().getInt("code_3", -1));
+        state.edit(editor -> editor.putInt("code_4", 4));
+        assertEquals(4, new SharedStateFile(file, false).read().getInt("code_4", -1));
+    }
+
+    /**
+     * Entry point of the child processes: increments the counter for
+     * {@link #concurrentEditsFromTwoProcessesAreAllKept}, or holds the lock until its stdin closes
+     * for {@link #interruptedLockedReadDoesNotBreakLaterCalls}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1 && HOLD_LOCK.equals(args[1])) {
+            try (RandomAccessFile raf = new RandomAccessFile(args[0] + ".lock", "rw");
+                 FileLock ignored = raf.getChannel().lock()) {
+                System.out.println("locked");
+                System.out.flush();
+                while (System.in.read() >= 0) {
+                    // Until the parent closes the pipe
+                }
+            }
+            return;
+        }
+        increment(new SharedStateFile(new File(args[0]), false), INCREMENTS);
+    }
+
+    private static void increment(SharedStateFile state, int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            state.edit(editor -> editor.putInt("count", editor.getInt("count", 0) + 1));
+            // Reads between edits go through the generation check
+            state.read().getInt("count", 0);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.anonymous.echoalarm.simulator;
+
+import com.anonymous.echoalarm.modules.FireLatencyRing;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The system side of an alarm going off. At its trigger time (or at once, in a burst, after the
+ * wall clock jumps past it) an alarm leaves the {@link FakeAlarmManager} and its broadcast is
+ * queued; the {@link SimulatedDevice}'s receiver gets it after a small per-alarm delivery
+ * delay. As on a device, cancelling a PendingIntent whose alarm already triggered does not
+ * recall the queued broadcast. Delivery delays are recorded in a heap-backed
+ * {@link FireLatencyRing}, the same ring the app keeps on disk.
+ */
+final class BroadcastDispatcher {
+
+    /** A fire delivered more than this after its trigger time counts as late. */
+    static final long LATE_MS = 60 * 1000L;
+
+    private static final class Queued {
+        final FakeAlarmManager.Alarm alarm;
+        final long deliverAtElapsed;
+
+        Queued(FakeAlarmManager.Alarm alarm, long deliverAtElapsed) {
+            this.alarm = alarm;
+            this.deliverAtElapsed = deliverAtElapsed;
+        }
+    }
+
+    private final VirtualClock clock;
+    private final FakeAlarmManager alarmManager;
+    private final long seed;
+    private final long maxDelayMs;
+    private final PriorityQueue<Queued> queue =
+            new PriorityQueue<>((a, b) -> Long.compare(a.deliverAtElapsed, b.deliverAtElapsed));
+    private final Set<String> deliveredKeys = new HashSet<>();
+    private final FireLatencyRing ring = new FireLatencyRing(ByteBuffer.allocate(64 * 1024));
+
+    private long delivered;
+    private long duplicates;
+    private long late;
+    private long maxLatenessMs;
+
+    BroadcastDispatcher(VirtualClock clock, FakeAlarmManager alarmManager, long seed, long maxDelayMs) {
+        this.clock = clock;
+        this.alarmManager = alarmManager;
+        this.seed = seed;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /** Elapsed time of the next trigger or delivery, or Long.MAX_VALUE if there is none. */
+    long nextElapsed() {
+        long next = queue.isEmpty() ? Long.MAX_VALUE : queue.peek().deliverAtElapsed;
+        FakeAlarmManager.Alarm alarm = alarmManager.earliest();
+        if (alarm != null) {
+            next = Math.min(next, Math.max(clock.elapsed(), clock.elapsedAtWall(alarm.triggerAtMs)));
+        }
+        return next;
+    }
+
+    /** Handles whatever is due at the current time: triggers alarms first, then one delivery. */
+    void step(SimulatedDevice device, FireOracle oracle) {
+        triggerDue();
+        if (!queue.isEmpty() && queue.peek().deliverAtElapsed <= clock.elapsed()) {
+            deliver(queue.poll().alarm, device, oracle);
+        }
+    }
+
+    /** Moves every alarm whose trigger time has passed into the delivery queue. */
+    void triggerDue() {
+        FakeAlarmManager.Alarm alarm;
+        while ((alarm = alarmManager.earliest()) != null && alarm.triggerAtMs <= clock.wall()) {
+            alarmManager.consume(alarm);
+            queue.add(new Queued(alarm, clock.elapsed() + delayOf(alarm)));
+        }
+    }
+
+    /** The device shut down: queued broadcasts are lost with it. */
+    void reboot() {
+        queue.clear();
+    }
+
+    private void deliver(FakeAlarmManager.Alarm alarm, SimulatedDevice device, FireOracle oracle) {
+        long lateness = clock.wall() - alarm.triggerAtMs;
+        int slot = ring.begin(alarm.triggerAtMs);
+        ring.mark(slot, FireLatencyRing.STAGE_RECEIVER, clock.wall());
+        delivered++;
+        if (!deliveredKeys.add(alarm.clusterId + '@' + alarm.triggerAtMs)) {
+            duplicates++;
+        }
+        if (lateness > LATE_MS) {
+            late++;
+        }
+        maxLatenessMs = Math.max(maxLatenessMs, lateness);
+
+        oracle.fired(alarm.clusterId, alarm.triggerAtMs);
+        device.onAlarm(alarm);
+    }
+
+    long delivered() {
+        return delivered;
+    }
+
+    /** Deliveries of a cluster member that had already been delivered once. */
+    long duplicates() {
+        return duplicates;
+    }
+
+    long late() {
+        return late;
+    }
+
+    long maxLatenessMs() {
+        return maxLatenessMs;
+    }
+
+    /** Delivery delays of the last {@link FireLatencyRing#CAPACITY} fires, sorted. */
+    long[] recentLatencies() {
+        return ring.latencies(FireLatencyRing.STAGE_RECEIVER);
+    }
+
+    /** Deterministic per alarm instance, so runs are reproducible for a seed. */
+    private long delayOf(FakeAlarmManager.Alarm alarm) {
+        if (maxDelayMs <= 0) {
+            return 0;
+        }
+        long h = seed ^ (alarm.code * 0x9E3779B97F4A7C15L) ^ alarm.triggerAtMs;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return Math.floorMod(h, maxDelayMs + 1);
+    }
+}
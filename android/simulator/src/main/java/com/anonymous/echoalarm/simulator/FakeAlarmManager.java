@@ -0,0 +1,79 @@
+package com.anonymous.echoalarm.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AlarmManager stand-in for RTC_WAKEUP one-shot alarms. Alarms are keyed by request code, the
+ * identity AlarmReceiver PendingIntents have on a device: setting a code again replaces it and
+ * cancelling it removes it. Everything is lost on {@link #reboot}.
+ */
+public final class FakeAlarmManager {
+
+    /** An armed PendingIntent and the extras AlarmArmer puts in it. */
+    public static final class Alarm {
+        public final int code;
+        public final long triggerAtMs;
+        public final String clusterId;
+        public final int memberIndex;
+
+        Alarm(int code, long triggerAtMs, String clusterId, int memberIndex) {
+            this.code = code;
+            this.triggerAtMs = triggerAtMs;
+            this.clusterId = clusterId;
+            this.memberIndex = memberIndex;
+        }
+    }
+
+    private final Map<Integer, Alarm> armed = new HashMap<>();
+    private long setCalls;
+    private long cancelCalls;
+    private int peakArmed;
+
+    public void setExactAndAllowWhileIdle(int code, long triggerAtMs, String clusterId, int memberIndex) {
+        setCalls++;
+        armed.put(code, new Alarm(code, triggerAtMs, clusterId, memberIndex));
+        peakArmed = Math.max(peakArmed, armed.size());
+    }
+
+    public void cancel(int code) {
+        cancelCalls++;
+        armed.remove(code);
+    }
+
+    /** Earliest armed alarm, or null. Linear: the app keeps only a small window armed. */
+    public Alarm earliest() {
+        Alarm earliest = null;
+        for (Alarm alarm : armed.values()) {
+            if (earliest == null || alarm.triggerAtMs < earliest.triggerAtMs) {
+                earliest = alarm;
+            }
+        }
+        return earliest;
+    }
+
+    /** The alarm goes off: it is removed, as one-shot alarms are. */
+    public void consume(Alarm alarm) {
+        armed.remove(alarm.code);
+    }
+
+    public void reboot() {
+        armed.clear();
+    }
+
+    public int armedCount() {
+        return armed.size();
+    }
+
+    public long setCalls() {
+        return setCalls;
+    }
+
+    public long cancelCalls() {
+        return cancelCalls;
+    }
+
+    public int peakArmed() {
+        return peakArmed;
+    }
+}
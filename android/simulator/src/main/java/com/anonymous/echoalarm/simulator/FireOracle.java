@@ -0,0 +1,97 @@
+package com.anonymous.echoalarm.simulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Independent record of which fires should have happened: every member of a saved plan whose
+ * time falls while that plan was current and the device was on. Compared against the fires the
+ * dispatcher actually delivered to find the missed ones.
+ */
+final class FireOracle implements SimulatedDevice.PlanListener {
+
+    private static final class Installed {
+        final long[] fireTimes;
+        final long installedAtMs;
+
+        Installed(long[] fireTimes, long installedAtMs) {
+            this.fireTimes = fireTimes;
+            this.installedAtMs = installedAtMs;
+        }
+    }
+
+    private final Map<String, Installed> current = new HashMap<>();
+    private final Set<String> expected = new HashSet<>();
+    private final Set<String> fired = new HashSet<>();
+    private final List<long[]> offIntervals = new ArrayList<>();
+
+    @Override
+    public void onPlanSaved(String clusterId, long[] fireTimes, long wallMs) {
+        retire(clusterId, wallMs);
+        current.put(clusterId, new Installed(fireTimes.clone(), wallMs));
+    }
+
+    @Override
+    public void onClusterRemoved(String clusterId, long wallMs) {
+        retire(clusterId, wallMs);
+    }
+
+    void deviceOff(long fromWallMs, long toWallMs) {
+        offIntervals.add(new long[]{fromWallMs, toWallMs});
+    }
+
+    void fired(String clusterId, long scheduledAtMs) {
+        fired.add(key(clusterId, scheduledAtMs));
+    }
+
+    /** Closes every plan at the end of the run; members after {@code endWallMs} are not due yet. */
+    void finish(long endWallMs) {
+        for (String clusterId : current.keySet().toArray(new String[0])) {
+            retire(clusterId, endWallMs);
+        }
+    }
+
+    int expectedCount() {
+        return expected.size();
+    }
+
+    /** Expected fires that were never delivered. */
+    int missedCount() {
+        int missed = 0;
+        for (String key : expected) {
+            if (!fired.contains(key)) {
+                missed++;
+            }
+        }
+        return missed;
+    }
+
+    private void retire(String clusterId, long wallMs) {
+        Installed installed = current.remove(clusterId);
+        if (installed == null) {
+            return;
+        }
+        for (long t : installed.fireTimes) {
+            if (t >= installed.installedAtMs && t < wallMs && !isOff(t)) {
+                expected.add(key(clusterId, t));
+            }
+        }
+    }
+
+    private boolean isOff(long wallMs) {
+        for (long[] interval : offIntervals) {
+            if (wallMs >= interval[0] && wallMs < interval[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String clusterId, long scheduledAtMs) {
+        return clusterId + '@' + scheduledAtMs;
+    }
+}
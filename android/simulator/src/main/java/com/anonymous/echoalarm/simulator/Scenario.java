@@ -0,0 +1,90 @@
+package com.anonymous.echoalarm.simulator;
+
+/**
+ * Knobs of one simulation run. The named presets cover the cases the scheduler has to scale to;
+ * command-line flags override individual fields.
+ */
+public final class Scenario {
+
+    String name = "baseline";
+    int days = 30;
+    long seed = 1;
+
+    /** Clusters the simulated user keeps, each re-set every evening for the next morning. */
+    int clusters = 3;
+    int minInterval = 5;
+    int maxInterval = 10;
+    int minAlarmCount = 3;
+    int maxAlarmCount = 10;
+    int tonesPerCluster = 3;
+    /** Probability per cluster and day of an extra edit (new interval) during the day. */
+    double editChancePerDay = 0.1;
+    /** Probability per cluster and day of using chained mode instead of the full window. */
+    double chainedChance = 0.2;
+    /** Probability that a cluster is set once with a recurrence rule instead of every evening. */
+    double recurringChance = 0;
+
+    /** Expected reboots per day, and how long the device stays off. */
+    double rebootsPerDay = 0;
+    long maxOffMs = 2 * 60 * 60 * 1000L;
+
+    /** Expected manual clock changes per day and their largest size (either direction). */
+    double clockJumpsPerDay = 0;
+    long maxClockJumpMs = 3 * 60 * 60 * 1000L;
+
+    /** Broadcast delivery delay after the trigger time, uniformly up to this value. */
+    long maxDispatchDelayMs = 500;
+
+    static Scenario preset(String name) {
+        Scenario scenario = new Scenario();
+        scenario.name = name;
+        switch (name) {
+            case "baseline":
+                break;
+            case "many-clusters":
+                scenario.clusters = 200;
+                break;
+            case "dense":
+                scenario.clusters = 10;
+                scenario.minInterval = 1;
+                scenario.maxInterval = 1;
+                scenario.minAlarmCount = 30;
+                scenario.maxAlarmCount = 120;
+                break;
+            case "reboots":
+                scenario.clusters = 10;
+                scenario.rebootsPerDay = 2;
+                break;
+            case "clock-jumps":
+                scenario.clusters = 10;
+                scenario.clockJumpsPerDay = 1;
+                break;
+            case "recurring":
+                scenario.clusters = 10;
+                scenario.recurringChance = 1;
+                scenario.rebootsPerDay = 0.5;
+                break;
+            case "stress":
+                scenario.clusters = 200;
+                scenario.minInterval = 1;
+                scenario.maxInterval = 5;
+                scenario.minAlarmCount = 10;
+                scenario.maxAlarmCount = 60;
+                scenario.rebootsPerDay = 1;
+                scenario.clockJumpsPerDay = 0.5;
+                scenario.editChancePerDay = 0.5;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario: " + name
+                        + " (baseline, many-clusters, dense, reboots, clock-jumps, recurring, stress)");
+        }
+        return scenario;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + days + " days, " + clusters + " clusters, interval " + minInterval + "-" + maxInterval
+                + " min, " + minAlarmCount + "-" + maxAlarmCount + " alarms, " + rebootsPerDay + " reboots/day, "
+                + clockJumpsPerDay + " clock jumps/day, seed " + seed;
+    }
+}
@@ -0,0 +1,264 @@
+package com.anonymous.echoalarm.simulator;
+
+import com.anonymous.echoalarm.modules.ClusterScheduleEngine;
+import com.anonymous.echoalarm.modules.FireLatencyRing;
+import com.anonymous.echoalarm.modules.RecurrenceRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Entry point of the simulator: drives a {@link SimulatedDevice} through a {@link Scenario}
+ * (a user re-setting clusters every evening, edits, reboots, clock changes) on a virtual clock
+ * and prints throughput, the peak number of armed alarms and the missed and late fires.
+ *
+ * <pre>
+ *   ./gradlew :simulator:run --args="stress --days 180 --seed 42"
+ *   ./gradlew :simulator:run --args="all"
+ * </pre>
+ */
+public final class SchedulingSimulator {
+
+    private static final long DAY_MS = ClusterScheduleEngine.DAY_MS;
+    private static final long HOUR_MS = 60 * ClusterScheduleEngine.MINUTE_MS;
+    /** 2025-01-01T00:00:00Z; runs are deterministic for a given scenario and seed. */
+    private static final long START_WALL_MS = 1735689600000L;
+
+    private static final int USER_SET = 0;
+    private static final int USER_EDIT = 1;
+    private static final int REBOOT = 2;
+    private static final int BOOT = 3;
+    private static final int CLOCK_JUMP = 4;
+
+    private static final class Event implements Comparable<Event> {
+        final long atElapsed;
+        final int type;
+        final int cluster;
+
+        Event(long atElapsed, int type, int cluster) {
+            this.atElapsed = atElapsed;
+            this.type = type;
+            this.cluster = cluster;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return Long.compare(atElapsed, other.atElapsed);
+        }
+    }
+
+    private final Scenario scenario;
+    private final Random random;
+    private final VirtualClock clock = new VirtualClock(START_WALL_MS);
+    private final FakeAlarmManager alarmManager = new FakeAlarmManager();
+    private final FireOracle oracle = new FireOracle();
+    private final SimulatedDevice device;
+    private final BroadcastDispatcher dispatcher;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+
+    // What the simulated user last set for each cluster
+    private final long[] wakeTimeOfDayMs;
+    private final long[] baseTimeMs;
+    private final String[][] tones;
+    private final RecurrenceRule[] recurrence;
+
+    private boolean deviceOn = true;
+    private long offSinceWallMs;
+    private long userOps;
+    private long reboots;
+    private long clockJumps;
+    private long timeChangeOps;
+
+    private SchedulingSimulator(Scenario scenario) {
+        this.scenario = scenario;
+        this.random = new Random(scenario.seed);
+        this.device = new SimulatedDevice(clock, alarmManager, oracle);
+        this.dispatcher = new BroadcastDispatcher(clock, alarmManager, scenario.seed, scenario.maxDispatchDelayMs);
+
+        wakeTimeOfDayMs = new long[scenario.clusters];
+        baseTimeMs = new long[scenario.clusters];
+        tones = new String[scenario.clusters][];
+        recurrence = new RecurrenceRule[scenario.clusters];
+        for (int c = 0; c < scenario.clusters; c++) {
+            // Wake-ups spread between 05:00 and 09:00, minute aligned
+            wakeTimeOfDayMs[c] = 5 * HOUR_MS + random.nextInt(4 * 60) * ClusterScheduleEngine.MINUTE_MS;
+            if (random.nextDouble() < scenario.recurringChance) {
+                // Daily, weekdays only, or every other day, at the cluster's wake-up time
+                long firstWakeMs = START_WALL_MS + DAY_MS + wakeTimeOfDayMs[c];
+                int kind = random.nextInt(3);
+                recurrence[c] = kind == 0 ? RecurrenceRule.daily(firstWakeMs, SimulatedDevice.TIME_ZONE)
+                        : kind == 1 ? RecurrenceRule.weekly(0x3E, firstWakeMs, SimulatedDevice.TIME_ZONE)
+                        : RecurrenceRule.everyNDays(2, firstWakeMs, SimulatedDevice.TIME_ZONE);
+            }
+            tones[c] = new String[scenario.tonesPerCluster];
+            for (int t = 0; t < tones[c].length; t++) {
+                tones[c][t] = "file:///tones/cluster" + c + "_" + t + ".mp3";
+            }
+            // Evening routine between 20:00 and 23:00
+            schedule(20 * HOUR_MS + (long) (random.nextDouble() * 3 * HOUR_MS), USER_SET, c);
+        }
+        scheduleNext(REBOOT, scenario.rebootsPerDay);
+        scheduleNext(CLOCK_JUMP, scenario.clockJumpsPerDay);
+    }
+
+    public static void main(String[] args) {
+        List<Scenario> scenarios = new ArrayList<>();
+        String name = args.length > 0 && !args[0].startsWith("--") ? args[0] : "baseline";
+        String[] presets = "all".equals(name)
+                ? new String[]{"baseline", "many-clusters", "dense", "reboots", "clock-jumps", "recurring", "stress"}
+                : new String[]{name};
+        for (String preset : presets) {
+            Scenario scenario = Scenario.preset(preset);
+            for (int i = 0; i < args.length - 1; i++) {
+                switch (args[i]) {
+                    case "--days":
+                        scenario.days = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        scenario.seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--clusters":
+                        scenario.clusters = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            scenarios.add(scenario);
+        }
+        for (Scenario scenario : scenarios) {
+            new SchedulingSimulator(scenario).run();
+        }
+    }
+
+    private void run() {
+        long endElapsed = scenario.days * DAY_MS;
+        long startNs = System.nanoTime();
+
+        while (true) {
+            long nextEvent = events.isEmpty() ? Long.MAX_VALUE : events.peek().atElapsed;
+            long nextFire = deviceOn ? dispatcher.nextElapsed() : Long.MAX_VALUE;
+            long next = Math.min(nextEvent, nextFire);
+            if (next >= endElapsed) {
+                break;
+            }
+            clock.advanceTo(next);
+            if (nextFire <= nextEvent) {
+                dispatcher.step(device, oracle);
+            } else {
+                handle(events.poll());
+            }
+        }
+        clock.advanceTo(endElapsed);
+        if (!deviceOn) {
+            oracle.deviceOff(offSinceWallMs, clock.wall());
+        }
+        oracle.finish(clock.wall());
+
+        report((System.nanoTime() - startNs) / 1e9);
+    }
+
+    private void handle(Event event) {
+        switch (event.type) {
+            case USER_SET:
+            case USER_EDIT:
+                if (!deviceOn) {
+                    // The phone is off: the user tries again a quarter of an hour later
+                    schedule(event.atElapsed + HOUR_MS / 4, event.type, event.cluster);
+                    return;
+                }
+                userEdit(event.cluster, event.type == USER_SET);
+                break;
+            case REBOOT:
+                if (deviceOn) {
+                    deviceOn = false;
+                    offSinceWallMs = clock.wall();
+                    alarmManager.reboot();
+                    dispatcher.reboot();
+                    schedule(clock.elapsed() + 60000 + (long) (random.nextDouble() * scenario.maxOffMs), BOOT, -1);
+                }
+                scheduleNext(REBOOT, scenario.rebootsPerDay);
+                break;
+            case BOOT:
+                deviceOn = true;
+                oracle.deviceOff(offSinceWallMs, clock.wall());
+                device.boot();
+                reboots++;
+                break;
+            case CLOCK_JUMP:
+                long delta = (long) ((random.nextDouble() * 2 - 1) * scenario.maxClockJumpMs);
+                clock.jump(delta);
+                clockJumps++;
+                if (deviceOn) {
+                    // AlarmManager triggers what the jump passed, then TIME_SET reaches the app
+                    dispatcher.triggerDue();
+                    timeChangeOps += device.timeChanged();
+                }
+                scheduleNext(CLOCK_JUMP, scenario.clockJumpsPerDay);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** What the JS side does: a setAlarmCluster for the next wake-up, or an edit of today's one. */
+    private void userEdit(int c, boolean nextMorning) {
+        if (nextMorning) {
+            long dayStart = clock.wall() - Math.floorMod(clock.wall(), DAY_MS);
+            long base = dayStart + wakeTimeOfDayMs[c];
+            baseTimeMs[c] = base > clock.wall() ? base : base + DAY_MS;
+            // Tomorrow evening again (recurring clusters are only set once), and maybe an edit during the day
+            if (recurrence[c] == null) {
+                schedule(clock.elapsed() + DAY_MS + (long) ((random.nextDouble() - 0.5) * HOUR_MS), USER_SET, c);
+            }
+            if (random.nextDouble() < scenario.editChancePerDay) {
+                schedule(clock.elapsed() + (long) (random.nextDouble() * DAY_MS), USER_EDIT, c);
+            }
+        }
+        int interval = scenario.minInterval + random.nextInt(scenario.maxInterval - scenario.minInterval + 1);
+        int count = scenario.minAlarmCount + random.nextInt(scenario.maxAlarmCount - scenario.minAlarmCount + 1);
+        boolean chained = random.nextDouble() < scenario.chainedChance;
+        device.setAlarmCluster("cluster" + c, baseTimeMs[c], interval, count, tones[c], chained, recurrence[c]);
+        userOps++;
+    }
+
+    /** Poisson arrivals: next event of a type after an exponential gap, if the rate is non-zero. */
+    private void scheduleNext(int type, double perDay) {
+        if (perDay > 0) {
+            schedule(clock.elapsed() + (long) (-Math.log(1 - random.nextDouble()) / perDay * DAY_MS), type, -1);
+        }
+    }
+
+    private void schedule(long atElapsed, int type, int cluster) {
+        events.add(new Event(atElapsed, type, cluster));
+    }
+
+    private void report(double seconds) {
+        long fires = dispatcher.delivered();
+        long processed = fires + userOps + reboots + clockJumps;
+        int expected = oracle.expectedCount();
+        int missed = oracle.missedCount();
+        long amCalls = alarmManager.setCalls() + alarmManager.cancelCalls();
+        long[] recent = dispatcher.recentLatencies();
+
+        System.out.println("== " + scenario);
+        System.out.printf(Locale.ROOT, "  run time          %.3f s (%.0f events/s, %.1f simulated days/s)%n",
+                seconds, processed / seconds, scenario.days / seconds);
+        System.out.printf(Locale.ROOT, "  events            %d fires, %d user edits, %d reboots, %d clock jumps%n",
+                fires, userOps, reboots, clockJumps);
+        System.out.printf(Locale.ROOT, "  expected fires    %d, missed %d (%.2f%%), duplicated %d, late >%ds %d%n",
+                expected, missed, expected > 0 ? 100.0 * missed / expected : 0.0, dispatcher.duplicates(),
+                BroadcastDispatcher.LATE_MS / 1000, dispatcher.late());
+        System.out.printf(Locale.ROOT, "  delivery delay    p50 %d ms, p95 %d ms (last %d), max %d ms%n",
+                FireLatencyRing.percentile(recent, 50), FireLatencyRing.percentile(recent, 95),
+                recent.length, dispatcher.maxLatenessMs());
+        System.out.printf(Locale.ROOT, "  AlarmManager      peak armed %d, %d set + %d cancel calls, %.2f per re-arm (%d re-arms)%n",
+                alarmManager.peakArmed(), alarmManager.setCalls(), alarmManager.cancelCalls(),
+                device.rearms() > 0 ? (double) amCalls / device.rearms() : 0.0, device.rearms());
+        System.out.printf(Locale.ROOT, "  clock changes     %d, %.2f AlarmManager calls each%n",
+                clockJumps, clockJumps > 0 ? (double) timeChangeOps / clockJumps : 0.0);
+    }
+}
@@ -0,0 +1,208 @@
+package com.anonymous.echoalarm.simulator;
+
+import com.anonymous.echoalarm.modules.AlarmState;
+import com.anonymous.echoalarm.modules.ArmedWindowPlanner;
+import com.anonymous.echoalarm.modules.ClusterPlan;
+import com.anonymous.echoalarm.modules.ClusterScheduleEngine;
+import com.anonymous.echoalarm.modules.OccurrenceWindow;
+import com.anonymous.echoalarm.modules.RecurrenceRule;
+import com.anonymous.echoalarm.modules.RequestCodeAllocator;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The app's native scheduling side on a fake device: the same steps as AlarmSchedulerModule,
+ * AlarmReceiver and BootReceiver, with the profile journal and the request code registry held
+ * in maps (both survive {@link FakeAlarmManager#reboot}, as SharedPreferences do) and
+ * AlarmCoordinator's pass run through the shared {@link ArmedWindowPlanner}.
+ */
+public final class SimulatedDevice {
+
+    /** Same value as AlarmCoordinator.ARMED_WINDOW. */
+    static final int ARMED_WINDOW = 8;
+    /** Zone of the simulated device; wall times in the simulation are UTC. */
+    static final String TIME_ZONE = "UTC";
+
+    /** Told whenever a cluster's plan (its fire times) is replaced, to keep the oracle in sync. */
+    interface PlanListener {
+        void onPlanSaved(String clusterId, long[] fireTimes, long wallMs);
+
+        void onClusterRemoved(String clusterId, long wallMs);
+    }
+
+    private final VirtualClock clock;
+    private final FakeAlarmManager alarmManager;
+    private final PlanListener listener;
+
+    // AlarmProfileStore / RequestCodeRegistry stand-ins
+    private final Map<String, AlarmState> journal = new LinkedHashMap<>();
+    private final Map<Integer, long[]> registry = new HashMap<>(); // code -> {triggerAt, memberKey, signature}
+
+    private long rearms;
+
+    SimulatedDevice(VirtualClock clock, FakeAlarmManager alarmManager, PlanListener listener) {
+        this.clock = clock;
+        this.alarmManager = alarmManager;
+        this.listener = listener;
+    }
+
+    /** AlarmSchedulerModule.setAlarmCluster; {@code recurrence} may be null for a one-off cluster. */
+    void setAlarmCluster(String clusterId, long baseTimeMs, int interval, int alarmCount, String[] tones,
+                         boolean chainedMode, RecurrenceRule recurrence) {
+        long firstMs = recurrence != null
+                ? ClusterScheduleEngine.firstOccurrence(recurrence, baseTimeMs, clock.wall(), interval, alarmCount)
+                : baseTimeMs;
+        ClusterPlan plan = ClusterScheduleEngine.buildPlan(firstMs, interval, alarmCount, tones.length);
+        AlarmState state = AlarmState.of(clusterId, slotFor(clusterId), plan, firstMs, interval, alarmCount,
+                tones, tones, chainedMode);
+        state.nextIndex = plan.firstPendingIndex(clock.wall()); // As buildState: a new plan skips what passed
+        if (recurrence != null) {
+            state.recurrence = recurrence;
+            state.upcoming = OccurrenceWindow.fill(recurrence, firstMs);
+        }
+        save(state);
+        rearm();
+    }
+
+    /** AlarmSchedulerModule.cancelCluster. */
+    void cancelCluster(String clusterId) {
+        if (journal.remove(clusterId) != null) {
+            listener.onClusterRemoved(clusterId, clock.wall());
+        }
+        rearm();
+    }
+
+    /** AlarmReceiver.onReceive for a regular fire. */
+    void onAlarm(FakeAlarmManager.Alarm alarm) {
+        long[] entry = registry.get(alarm.code);
+        if (entry != null && entry[0] == alarm.triggerAtMs) {
+            registry.remove(alarm.code); // Unless a re-arm already reused the code
+        }
+
+        AlarmState cluster = journal.get(alarm.clusterId);
+        if (cluster != null) {
+            // Skip members that are no longer due (e.g. the device was off or this fire was very late)
+            cluster.nextIndex = Math.max(alarm.memberIndex + 1, cluster.plan().firstDueIndex(clock.wall()));
+            if (cluster.nextIndex >= cluster.fireTimes.length && cluster.recurrence != null) {
+                save(ClusterScheduleEngine.rollForward(cluster, clock.wall(), TIME_ZONE));
+            }
+        }
+        rearm();
+    }
+
+    /** BootReceiver.handleBoot; the fake AlarmManager was already wiped by the reboot. */
+    void boot() {
+        resumeClusters(journal.values().toArray(new AlarmState[0]));
+        registry.clear();
+        rearm();
+    }
+
+    /** TimeChangeReceiver for ACTION_TIME_CHANGED: finished one-off clusters stay finished. */
+    int timeChanged() {
+        resumeClusters(journal.values().toArray(new AlarmState[0]));
+        return rearm();
+    }
+
+    /** BootReceiver.resumeClusters. */
+    private void resumeClusters(AlarmState... clusters) {
+        long now = clock.wall();
+        for (AlarmState profile : clusters) {
+            ClusterPlan plan = profile.plan();
+            int firstPending = plan.firstPendingIndex(now);
+            if (firstPending < plan.size()) {
+                profile.nextIndex = Math.max(profile.nextIndex, firstPending);
+            } else if (profile.recurrence != null) {
+                save(ClusterScheduleEngine.rollForward(profile, now, TIME_ZONE));
+            } else {
+                profile.nextIndex = plan.size(); // One-off: stays finished
+            }
+        }
+    }
+
+    /** AlarmCoordinator.rearm, minus warm-ups. */
+    int rearm() {
+        rearms++;
+        RequestCodeAllocator allocator = new RequestCodeAllocator();
+        for (Map.Entry<Integer, long[]> entry : registry.entrySet()) {
+            allocator.restore(entry.getKey(), entry.getValue()[1]);
+        }
+        ArmedWindowPlanner.Result result = ArmedWindowPlanner.plan(journal, clock.wall(), ARMED_WINDOW, allocator,
+                new ArmedWindowPlanner.Target() {
+                    @Override
+                    public int[] liveCodes() {
+                        int[] codes = new int[registry.size()];
+                        int i = 0;
+                        for (int code : registry.keySet()) {
+                            codes[i++] = code;
+                        }
+                        Arrays.sort(codes);
+                        return codes;
+                    }
+
+                    @Override
+                    public long memberKeyOf(int code) {
+                        long[] entry = registry.get(code);
+                        return entry != null ? entry[1] : -1L;
+                    }
+
+                    @Override
+                    public long triggerTimeOf(int code) {
+                        long[] entry = registry.get(code);
+                        return entry != null ? entry[0] : -1L;
+                    }
+
+                    @Override
+                    public int signatureOf(int code) {
+                        long[] entry = registry.get(code);
+                        return entry != null ? (int) entry[2] : 0;
+                    }
+
+                    @Override
+                    public void cancel(int code) {
+                        alarmManager.cancel(code);
+                        registry.remove(code);
+                    }
+
+                    @Override
+                    public void arm(int code, long triggerAtMs, AlarmState cluster, int memberIndex) {
+                        alarmManager.setExactAndAllowWhileIdle(code, triggerAtMs, cluster.clusterId, memberIndex);
+                        registry.put(code, new long[]{triggerAtMs,
+                                RequestCodeAllocator.memberKey(cluster.slot, memberIndex),
+                                ArmedWindowPlanner.signatureOf(cluster, memberIndex)});
+                    }
+                });
+        return result.armed + result.cancelled;
+    }
+
+    int clusterCount() {
+        return journal.size();
+    }
+
+    long rearms() {
+        return rearms;
+    }
+
+    private void save(AlarmState state) {
+        AlarmState previous = journal.put(state.clusterId, state);
+        if (previous == null || !Arrays.equals(previous.fireTimes, state.fireTimes)) {
+            listener.onPlanSaved(state.clusterId, state.fireTimes, clock.wall());
+        }
+    }
+
+    /** AlarmProfileStore.slotFor: the cluster's slot, or the lowest free one. */
+    private int slotFor(String clusterId) {
+        AlarmState existing = journal.get(clusterId);
+        if (existing != null) {
+            return existing.slot;
+        }
+        BitSet used = new BitSet();
+        for (AlarmState state : journal.values()) {
+            used.set(state.slot);
+        }
+        return used.nextClearBit(0);
+    }
+}
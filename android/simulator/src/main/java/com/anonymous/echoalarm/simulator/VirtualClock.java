@@ -0,0 +1,40 @@
+package com.anonymous.echoalarm.simulator;
+
+/**
+ * Simulated time. {@link #elapsed()} only moves forward (like elapsedRealtime); {@link #wall()}
+ * is elapsed time plus an offset that clock jumps change (like currentTimeMillis), so RTC alarms
+ * can fire early, late or in a burst exactly as they would after a manual time change.
+ */
+public final class VirtualClock {
+
+    private long elapsedMs;
+    private long wallOffsetMs;
+
+    public VirtualClock(long startWallMs) {
+        this.wallOffsetMs = startWallMs;
+    }
+
+    public long elapsed() {
+        return elapsedMs;
+    }
+
+    public long wall() {
+        return elapsedMs + wallOffsetMs;
+    }
+
+    /** Elapsed time at which the wall clock reads {@code wallMs}, with the current offset. */
+    public long elapsedAtWall(long wallMs) {
+        return wallMs - wallOffsetMs;
+    }
+
+    public void advanceTo(long elapsedMs) {
+        if (elapsedMs > this.elapsedMs) {
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    /** Sets the wall clock forward (positive) or back (negative) without elapsed time passing. */
+    public void jump(long deltaMs) {
+        wallOffsetMs += deltaMs;
+    }
+}
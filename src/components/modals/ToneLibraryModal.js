@@ -0,0 +1,318 @@
+import React, { useState, useEffect, useRef, useCallback } from 'react';
+import { Modal, View, Text, TextInput, TouchableOpacity, StyleSheet, FlatList, ActivityIndicator, PermissionsAndroid, Platform } from 'react-native';
+import ToneLibrary from '../../specs/NativeToneLibrary';
+
+const PAGE_SIZE = 50;
+const SEARCH_DEBOUNCE_MS = 150;
+
+const requestAudioPermission = async () => {
+  const permission = Platform.Version >= 33
+    ? PermissionsAndroid.PERMISSIONS.READ_MEDIA_AUDIO
+    : PermissionsAndroid.PERMISSIONS.READ_EXTERNAL_STORAGE;
+  if (await PermissionsAndroid.check(permission)) return true;
+  return (await PermissionsAndroid.request(permission)) === PermissionsAndroid.RESULTS.GRANTED;
+};
+
+const formatDuration = (durationMs) => {
+  const seconds = Math.round(durationMs / 1000);
+  return `${Math.floor(seconds / 60)}:${String(seconds % 60).padStart(2, '0')}`;
+};
+
+// Browses the native index of the device's audio: pages from ToneLibrary, prefix search
+export default function ToneLibraryModal({ visible, onClose, onAdd, excludedUris }) {
+  const [query, setQuery] = useState('');
+  const [items, setItems] = useState([]);
+  const [total, setTotal] = useState(0);
+  const [selected, setSelected] = useState({}); // { [uri]: { uri, name } }
+  const [refreshing, setRefreshing] = useState(false);
+  const [permissionDenied, setPermissionDenied] = useState(false);
+
+  // Only the latest search may write the list; older responses are dropped
+  const searchId = useRef(0);
+  const shownQuery = useRef(''); // Query of the items on screen
+  const typedQuery = useRef('');
+  const loadingMore = useRef(false);
+
+  const loadFirstPage = useCallback(async (prefix) => {
+    const id = ++searchId.current;
+    shownQuery.current = prefix;
+    try {
+      const page = await ToneLibrary.search(prefix, 0, PAGE_SIZE);
+      if (id !== searchId.current) return;
+      setItems(page.items);
+      setTotal(page.total);
+    } catch (error) {
+      console.error("Error searching the audio library: ", error);
+    }
+  }, []);
+
+  const loadMore = async () => {
+    if (loadingMore.current || items.length >= total) return;
+    loadingMore.current = true;
+    const id = searchId.current;
+    try {
+      const page = await ToneLibrary.search(shownQuery.current, items.length, PAGE_SIZE);
+      if (id === searchId.current) {
+        setItems(current => [...current, ...page.items]);
+        setTotal(page.total);
+      }
+    } catch (error) {
+      console.error("Error paging the audio library: ", error);
+    } finally {
+      loadingMore.current = false;
+    }
+  };
+
+  // On open: the saved index is shown at once (first search below), then brought up to date
+  useEffect(() => {
+    if (!visible) return;
+    setQuery('');
+    setSelected({});
+    setPermissionDenied(false);
+
+    let cancelled = false;
+    const refresh = async () => {
+      if (!(await requestAudioPermission())) {
+        if (!cancelled) setPermissionDenied(true);
+        return;
+      }
+      setRefreshing(true);
+      try {
+        const result = await ToneLibrary.refresh();
+        if (!cancelled && result.changed > 0) loadFirstPage(typedQuery.current);
+      } catch (error) {
+        console.error("Error refreshing the audio library: ", error);
+      } finally {
+        if (!cancelled) setRefreshing(false);
+      }
+    };
+    refresh();
+
+    return () => {
+      cancelled = true;
+    };
+  }, [visible, loadFirstPage]);
+
+  useEffect(() => {
+    typedQuery.current = query;
+    if (!visible) return;
+    const timer = setTimeout(() => loadFirstPage(query), SEARCH_DEBOUNCE_MS);
+    return () => clearTimeout(timer);
+  }, [query, visible, loadFirstPage]);
+
+  const toggleSelection = (item) => {
+    setSelected(current => {
+      const next = { ...current };
+      if (next[item.uri]) {
+        delete next[item.uri];
+      } else {
+        next[item.uri] = { uri: item.uri, name: item.title };
+      }
+      return next;
+    });
+  };
+
+  const selectedCount = Object.keys(selected).length;
+
+  return (
+    <Modal
+      animationType="slide"
+      transparent={true}
+      visible={visible}
+      onRequestClose={onClose}
+    >
+      <View style={styles.centeredView}>
+        <View style={styles.modalView}>
+          <Text style={styles.modalTitle}>Biblioteca de audio</Text>
+
+          <TextInput
+            style={styles.searchInput}
+            placeholder="Buscar por título"
+            placeholderTextColor="rgba(255, 255, 255, 0.6)"
+            value={query}
+            onChangeText={setQuery}
+            autoCorrect={false}
+          />
+
+          <Text style={styles.statusText}>
+            {permissionDenied
+              ? 'Sin permiso para leer el audio del móvil'
+              : `${total} resultados${refreshing ? ' · actualizando…' : ''}`}
+          </Text>
+
+          <FlatList
+            data={items}
+            keyExtractor={(item) => item.uri}
+            style={styles.list}
+            onEndReached={loadMore}
+            onEndReachedThreshold={0.5}
+            initialNumToRender={15}
+            windowSize={7}
+            keyboardShouldPersistTaps="handled"
+            ListFooterComponent={refreshing && items.length === 0 ? <ActivityIndicator color="white" /> : null}
+            renderItem={({ item }) => {
+              const inPool = excludedUris.includes(item.uri);
+              const isSelected = !!selected[item.uri];
+              return (
+                <TouchableOpacity
+                  style={[
+                    styles.toneItem,
+                    isSelected && styles.toneItemSelected,
+                    inPool && styles.toneItemDisabled
+                  ]}
+                  onPress={() => toggleSelection(item)}
+                  disabled={inPool}
+                >
+                  <View style={styles.toneTextContainer}>
+                    <Text style={styles.toneItemText} numberOfLines={1}>{item.title}</Text>
+                    <Text style={styles.toneSubText}>
+                      {formatDuration(item.durationMs)}{inPool ? ' · Ya en el pool' : ''}
+                    </Text>
+                  </View>
+                  {isSelected && <Text style={styles.checkmark}>✓</Text>}
+                </TouchableOpacity>
+              );
+            }}
+          />
+
+          <View style={styles.buttonContainer}>
+            <TouchableOpacity
+              style={[styles.modalButton, styles.buttonCancel]}
+              onPress={onClose}>
+              <Text style={styles.modalButtonText}>Cancelar</Text>
+            </TouchableOpacity>
+
+            <TouchableOpacity
+              style={[styles.modalButton, styles.buttonAdd]}
+              onPress={() => onAdd(Object.values(selected))}
+              disabled={selectedCount === 0}
+            >
+              <Text style={[
+                styles.modalButtonText,
+                selectedCount === 0 && styles.disabledText
+              ]}>
+                Añadir ({selectedCount})
+              </Text>
+            </TouchableOpacity>
+          </View>
+        </View>
+      </View>
+    </Modal>
+  );
+}
+
+const styles = StyleSheet.create({
+  centeredView: {
+    flex: 1,
+    justifyContent: 'center',
+    alignItems: 'center',
+    backgroundColor: 'rgba(0, 0, 0, 0.5)',
+  },
+  modalView: {
+    width: '90%',
+    height: '80%',
+    backgroundColor: '#6B5CE7',
+    borderRadius: 20,
+    padding: 20,
+    alignItems: 'center',
+    shadowColor: '#000',
+    shadowOffset: {
+      width: 0,
+      height: 2,
+    },
+    shadowOpacity: 0.25,
+    shadowRadius: 4,
+    elevation: 5,
+    borderWidth: 1,
+    borderColor: 'rgba(255, 255, 255, 0.2)',
+  },
+  modalTitle: {
+    marginBottom: 15,
+    textAlign: 'center',
+    fontSize: 20,
+    fontWeight: 'bold',
+    color: 'white',
+  },
+  searchInput: {
+    width: '100%',
+    backgroundColor: 'rgba(255, 255, 255, 0.15)',
+    borderRadius: 10,
+    borderWidth: 1,
+    borderColor: 'rgba(255, 255, 255, 0.3)',
+    color: 'white',
+    paddingHorizontal: 12,
+    paddingVertical: 10,
+    fontSize: 16,
+  },
+  statusText: {
+    alignSelf: 'flex-start',
+    color: 'rgba(255, 255, 255, 0.7)',
+    fontSize: 12,
+    marginVertical: 8,
+  },
+  list: {
+    width: '100%',
+    marginBottom: 20,
+  },
+  toneItem: {
+    flexDirection: 'row',
+    justifyContent: 'space-between',
+    alignItems: 'center',
+    backgroundColor: 'rgba(255, 255, 255, 0.1)',
+    padding: 12,
+    borderRadius: 10,
+    marginBottom: 8,
+    borderWidth: 1,
+    borderColor: 'rgba(255, 255, 255, 0.1)',
+  },
+  toneItemSelected: {
+    backgroundColor: 'rgba(255, 255, 255, 0.3)',
+    borderColor: '#FFFFFF',
+  },
+  toneItemDisabled: {
+    opacity: 0.5,
+  },
+  toneTextContainer: {
+    flex: 1,
+    marginRight: 8,
+  },
+  toneItemText: {
+    color: 'white',
+    fontSize: 16,
+  },
+  toneSubText: {
+    color: 'rgba(255, 255, 255, 0.6)',
+    fontSize: 11,
+    marginTop: 2,
+  },
+  checkmark: {
+    color: 'white',
+    fontWeight: 'bold',
+    fontSize: 16,
+  },
+  buttonContainer: {
+    flexDirection: 'row',
+    justifyContent: 'space-between',
+    width: '100%',
+  },
+  modalButton: {
+    borderRadius: 10,
+    padding: 12,
+    elevation: 2,
+    width: '48%',
+  },
+  buttonCancel: {
+    backgroundColor: '#FF6B6B',
+  },
+  buttonAdd: {
+    backgroundColor: '#4A90E2',
+  },
+  modalButtonText: {
+    color: 'white',
+    fontWeight: 'bold',
+    textAlign: 'center',
+  },
+  disabledText: {
+    color: 'rgba(255, 255, 255, 0.5)',
+  }
+});
@@ -1,7 +1,7 @@
 import React from 'react';
 import { Modal, View, Text, TouchableOpacity, StyleSheet } from 'react-native';
 
-export default function TonePickerModal({ visible, onClose, onAddDefault, onAddCustom }) {
+export default function TonePickerModal({ visible, onClose, onAddDefault, onAddLibrary, onAddCustom }) {
   return (
     <Modal
       animationType="slide"
@@ -19,10 +19,16 @@ export default function TonePickerModal({ visible, onClose, onAddDefault, onAddC
             <Text style={styles.modalButtonText}>Tonos de la Aplicación (Predeterminados)</Text>
           </TouchableOpacity>
 
+          <TouchableOpacity
+            style={styles.modalButton}
+            onPress={onAddLibrary}>
+            <Text style={styles.modalButtonText}>Biblioteca de Audio del Móvil</Text>
+          </TouchableOpacity>
+
           <TouchableOpacity
             style={styles.modalButton}
             onPress={onAddCustom}>
-            <Text style={styles.modalButtonText}>Tonos Personalizados del Móvil</Text>
+            <Text style={styles.modalButtonText}>Elegir Archivos del Móvil</Text>
           </TouchableOpacity>
 
           <TouchableOpacity
@@ -0,0 +1,68 @@
+// Dev-only benchmark of the per-call cost of the AlarmScheduler native module.
+//
+// Run it from a __DEV__ build (e.g. call benchmarkNativeCalls() from a screen's useEffect) and
+// read the results in Metro's console; the returned object has the same numbers. Each run
+// measures its own baseline next to the JSI reads:
+// - before: how HomeScreen learned whether the cluster was active before the sync reads, an
+//   AsyncStorage read of ALARM_PROFILE plus JSON.parse (it then assumed "active");
+// - floors: an empty JS call and an already-resolved Promise, the least a sync call and an
+//   awaited call can cost on this device and engine;
+// - getFireLatencyStats: a Promise method of the same module, the async native round trip.
+// The native body of the sync reads is measured on the JVM by NativeReadBenchmark
+// (android/jvm-tests); what is left of the JSI numbers once that is subtracted is the crossing.
+
+import AsyncStorage from '@react-native-async-storage/async-storage';
+import AlarmScheduler from '../specs/NativeAlarmScheduler';
+
+const now = () => global.performance?.now?.() ?? Date.now();
+
+const report = (label, iterations, elapsedMs) => {
+  const perCallUs = (elapsedMs * 1000) / iterations;
+  console.log(`[bench] ${label}: ${perCallUs.toFixed(1)} µs/call (${iterations} calls)`);
+  return perCallUs;
+};
+
+const measureSync = (label, iterations, fn) => {
+  fn(); // warm-up (module lookup, first JNI call)
+  const start = now();
+  for (let i = 0; i < iterations; i++) {
+    fn();
+  }
+  return report(label, iterations, now() - start);
+};
+
+const measureAsync = async (label, iterations, fn) => {
+  await fn();
+  const start = now();
+  for (let i = 0; i < iterations; i++) {
+    await fn();
+  }
+  return report(label, iterations, now() - start);
+};
+
+const noop = () => {};
+
+export async function benchmarkNativeCalls(iterations = 500) {
+  const results = {};
+
+  results.jsCallFloor = measureSync('empty JS call (floor)', iterations, noop);
+  results.promiseFloor = await measureAsync('resolved Promise (floor)', iterations, () => Promise.resolve());
+
+  results.isActiveBefore = await measureAsync('isActive before (AsyncStorage + JSON.parse)', iterations,
+    async () => {
+      const perfilJSON = await AsyncStorage.getItem('ALARM_PROFILE');
+      return perfilJSON !== null && JSON.parse(perfilJSON) !== null;
+    });
+  results.latencyStatsAsync = await measureAsync('getFireLatencyStats (Promise)', iterations,
+    () => AlarmScheduler.getFireLatencyStats());
+
+  if (typeof AlarmScheduler.isActive === 'function') {
+    results.isActiveSync = measureSync('isActive (JSI sync)', iterations, () => AlarmScheduler.isActive());
+    results.nextFireTimeSync = measureSync('getNextFireTime (JSI sync)', iterations, () => AlarmScheduler.getNextFireTime());
+    console.log(`[bench] isActive: ${(results.isActiveBefore / results.isActiveSync).toFixed(1)}x faster than before, `
+      + `${(results.latencyStatsAsync / results.isActiveSync).toFixed(1)}x faster than a Promise call`);
+  }
+
+  console.table?.(Object.fromEntries(Object.entries(results).map(([name, us]) => [name, { 'µs/call': +us.toFixed(1) }])));
+  return results;
+}
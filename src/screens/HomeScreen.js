@@ -1,9 +1,11 @@
 import { StatusBar } from 'expo-status-bar';
-import { StyleSheet, Text, View, TouchableOpacity, Platform, Modal, NativeModules, Animated, Alert, PermissionsAndroid } from 'react-native';
+import { StyleSheet, Text, View, TouchableOpacity, Platform, Modal, Animated, Alert, PermissionsAndroid, NativeEventEmitter } from 'react-native';
 import { LinearGradient } from 'react-native-linear-gradient';
 import { useEffect, useState, useRef } from 'react';
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import TimePickerModal from '../components/modals/TimePickerModal';
+import AlarmScheduler from '../specs/NativeAlarmScheduler';
+import OverlayPermissionModule from '../specs/NativeOverlayPermissionModule';
 
 
 
@@ -91,8 +93,6 @@ export default function HomeScreen({ navigation, tonePool, setTonePool }) {
   const incrementAlarmCount = () => setAlarmCount(prev => prev + 1);
   const decrementAlarmCount = () => setAlarmCount(prev => Math.max(1, prev - 1));
 
-  const { AlarmScheduler, OverlayPermissionModule } = NativeModules;
-
   const handleClusterActivation = async () => {
 
     const now = new Date();
@@ -119,7 +119,9 @@ export default function HomeScreen({ navigation, tonePool, setTonePool }) {
       await AsyncStorage.setItem('ALARM_PROFILE', JSON.stringify(alarmProfile));
       console.log("Saving alarm profile, ready to be sent to the native java module: ", alarmProfile);
 
-      AlarmScheduler.setAlarmCluster(alarmProfile);
+      // Lote de un cambio: un solo re-armado, y los errores nativos llegan a este catch
+      const { operations } = await AlarmScheduler.applyClusterChanges([alarmProfile]);
+      console.log(`Cluster applied with ${operations} AlarmManager operations`);
       setIsClusterActive(true);
       
       // Calcular hora de última alarma
@@ -206,13 +208,25 @@ export default function HomeScreen({ navigation, tonePool, setTonePool }) {
         setIntervalValue(perfil.interval);
         setAlarmCount(perfil.alarmCount);
         setTonePool(perfil.tonePool || []);
-        setIsClusterActive(true); // Si hay perfil guardado, hay alarmas activas
+        // Lectura síncrona (JSI): el nativo sabe si al clúster le quedan alarmas pendientes
+        setIsClusterActive(AlarmScheduler.isActive());
       }
     };
 
     fetchAlarmProfile();
   }, []);
 
+  // Cambios empujados desde nativo (disparos, paradas, restauraciones tras reinicio), agrupados en lotes
+  useEffect(() => {
+    const emitter = new NativeEventEmitter(AlarmScheduler);
+    const subscription = emitter.addListener('AlarmStateChanged', (delta) => {
+      setIsClusterActive(delta.active);
+    });
+    // Lo que haya cambiado antes de suscribirnos
+    setIsClusterActive(AlarmScheduler.isActive());
+    return () => subscription.remove();
+  }, []);
+
   // Flujo secuencial de permisos: primero overlay, luego notificaciones
   useEffect(() => {
     const checkNotificationPermission = async () => {
@@ -1,15 +1,42 @@
 import { StatusBar } from 'expo-status-bar';
 import { StyleSheet, Text, View, FlatList, TouchableOpacity, Animated, Dimensions } from 'react-native';
 import { LinearGradient } from 'react-native-linear-gradient';
-import { useState, useRef } from 'react';
+import { useState, useRef, useEffect } from 'react';
 import { pick, types, isCancel } from '@react-native-documents/picker';
 import { DEFAULT_TONES_DATA } from '../resources/ToneCollector';
 import TonePickerModal from '../components/modals/TonePickerModal';
 import DefaultToneSelectionModal from '../components/modals/DefaultToneSelectionModal';
+import ToneLibraryModal from '../components/modals/ToneLibraryModal';
+import AlarmScheduler from '../specs/NativeAlarmScheduler';
 
 const { width } = Dimensions.get('window');
 
-const ToneListItem = ({ item, onDelete }) => {
+const ANALYSIS_PAGE_SIZE = 50;
+const ANALYSIS_POLL_MS = 1000;
+
+// Fetches every page of the native tone analysis into a { [uri]: item } map
+const fetchToneAnalysis = async () => {
+  const byUri = {};
+  let offset = 0;
+  let total = 0;
+  do {
+    const page = await AlarmScheduler.getToneAnalysis(offset, ANALYSIS_PAGE_SIZE);
+    total = page.total;
+    page.items.forEach(item => { byUri[item.uri] = item; });
+    offset += ANALYSIS_PAGE_SIZE;
+  } while (offset < total);
+  return byUri;
+};
+
+const describeAnalysis = (analysis) => {
+  if (!analysis || analysis.status !== 'done') return null;
+  if (!analysis.decodesCleanly) return '⚠️ No se puede reproducir';
+  if (analysis.silent) return '⚠️ Silencioso';
+  return `${Math.round(analysis.durationMs / 1000)} s`;
+};
+
+
+const ToneListItem = ({ item, analysis, onDelete }) => {
   const translateX = useRef(new Animated.Value(0)).current;
   const opacity = useRef(new Animated.Value(1)).current;
   const height = useRef(new Animated.Value(65)).current; // Reduced height
@@ -64,6 +91,7 @@ const ToneListItem = ({ item, onDelete }) => {
           <Text style={styles.listItemText} numberOfLines={1}>{item.name}</Text>
           <Text style={styles.subText}>
             {item.isDefault ? 'Predeterminado' : 'Personalizado'}
+            {describeAnalysis(analysis) ? ` · ${describeAnalysis(analysis)}` : ''}
           </Text>
         </View>
 
@@ -91,6 +119,35 @@ const EmptyState = () => (
 
 export default function TonePoolScreen({ navigation, tonePool, setTonePool }) {
 
+  // Native analysis (duration, level, decodability) of every tone in the pool
+  const [toneAnalysis, setToneAnalysis] = useState({});
+
+  useEffect(() => {
+    if (tonePool.length === 0) return;
+    AlarmScheduler.analyzeTones(tonePool.map(tone => tone.uri));
+
+    let cancelled = false;
+    let timer = null;
+    const poll = async () => {
+      try {
+        const byUri = await fetchToneAnalysis();
+        if (cancelled) return;
+        setToneAnalysis(byUri);
+        if (Object.values(byUri).some(item => item.status === 'pending')) {
+          timer = setTimeout(poll, ANALYSIS_POLL_MS);
+        }
+      } catch (error) {
+        console.error("Error fetching tone analysis: ", error);
+      }
+    };
+    poll();
+
+    return () => {
+      cancelled = true;
+      clearTimeout(timer);
+    };
+  }, [tonePool]);
+
   const addCustomTones = async () => {
     try {
       const results = await pick({
@@ -122,6 +179,7 @@ export default function TonePoolScreen({ navigation, tonePool, setTonePool }) {
 
   const [isModalVisible, setIsModalVisible] = useState(false); // Modal to pick app tones or user tones
   const [isDefaultSelectionModalVisible, setIsDefaultSelectionModalVisible] = useState(false);
+  const [isLibraryModalVisible, setIsLibraryModalVisible] = useState(false);
 
   const openDefaultToneSelection = () => {
     setIsModalVisible(false);
@@ -141,6 +199,20 @@ export default function TonePoolScreen({ navigation, tonePool, setTonePool }) {
     setIsDefaultSelectionModalVisible(false);
   }
 
+  const openLibrary = () => {
+    setIsModalVisible(false);
+    setIsLibraryModalVisible(true);
+  }
+
+  const handleConfirmLibraryTones = (selectedTones) => {
+    setTonePool(tonePool => ([
+      ...tonePool,
+      ...selectedTones.filter(tone => !tonePool.some(tp => tp.uri === tone.uri)),
+    ]));
+    console.log("Added library tones: ", selectedTones);
+    setIsLibraryModalVisible(false);
+  }
+
   const availableDefaultTones = DEFAULT_TONES_DATA.filter(tone => {
     const alreadyInPool = tonePool.some(tp => tp.id === tone.id);
     return !alreadyInPool;
@@ -175,6 +247,7 @@ export default function TonePoolScreen({ navigation, tonePool, setTonePool }) {
           renderItem={({ item }) => (
             <ToneListItem 
               item={item} 
+              analysis={toneAnalysis[item.uri]}
               onDelete={toneDeletion} 
             />
           )}
@@ -190,6 +263,7 @@ export default function TonePoolScreen({ navigation, tonePool, setTonePool }) {
           visible={isModalVisible}
           onClose={() => setIsModalVisible(false)}
           onAddDefault={openDefaultToneSelection}
+          onAddLibrary={openLibrary}
           onAddCustom={addCustomTones}
         />
 
@@ -200,6 +274,13 @@ export default function TonePoolScreen({ navigation, tonePool, setTonePool }) {
           availableTones={availableDefaultTones}
         />
 
+        <ToneLibraryModal
+          visible={isLibraryModalVisible}
+          onClose={() => setIsLibraryModalVisible(false)}
+          onAdd={handleConfirmLibraryTones}
+          excludedUris={tonePool.map(tone => tone.uri)}
+        />
+
         <StatusBar style="auto" />
       </View>
 
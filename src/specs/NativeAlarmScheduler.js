@@ -0,0 +1,73 @@
+/**
+ * Codegen spec of the AlarmScheduler TurboModule (android/.../modules/AlarmSchedulerModule.java).
+ *
+ * @flow strict-local
+ * @format
+ */
+
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+export type Tone = {|
+  uri: string,
+  name: string,
+|};
+
+export type Recurrence = {|
+  type: string, // 'daily' | 'weekdays' | 'everyNDays'
+  days?: Array<number>, // 'weekdays': 0 = Sunday ... 6 = Saturday
+  every?: number, // 'everyNDays': period in days
+  timeZone?: string, // IANA id; without it the rule follows the device's zone when it changes
+|};
+
+export type ClusterProfile = {|
+  wakeTime: string, // ISO-8601, e.g. 2025-01-01T07:00:00.000Z
+  interval: number, // minutes between alarms
+  alarmCount: number,
+  tonePool: Array<Tone>,
+  chainedMode?: boolean,
+  clusterId?: string,
+  // Repeats the cluster at the same local time; without it the cluster fires once
+  recurrence?: Recurrence,
+|};
+
+export interface Spec extends TurboModule {
+  +setAlarmCluster: (profile: ClusterProfile) => void;
+  // Each change is a ClusterProfile or {clusterId, cancel: true}; resolves {clusters, operations}
+  +applyClusterChanges: (changes: Array<Object>) => Promise<Object>;
+  +cancelCluster: (clusterId: string) => void;
+  +cancelAllAlarms: () => void;
+  +stopCurrentSound: () => void;
+  +setPlaybackEngine: (engine: string) => void;
+  // Seconds before each cluster head to warm up the player and notification; 0 disables it
+  +setWarmUpSeconds: (seconds: number) => void;
+  // Cluster session: the service stays up and fires members due within this many seconds of the
+  // previous one itself, keeping AlarmManager only as a safety net; 0 disables it
+  +setSessionMaxGapSeconds: (seconds: number) => void;
+  // Minutes the native snooze action (notification and alarm screen) puts a member off
+  +setSnoozeMinutes: (minutes: number) => void;
+  +getFireLatencyStats: () => Promise<Object>;
+  +analyzeTones: (uris: Array<string>) => void;
+  // Resolves {total, items}; each item has uri, status ('pending' | 'done') and, when done,
+  // durationMs, peak, rms, codec, decodesCleanly, silent and error
+  +getToneAnalysis: (offset: number, limit: number) => Promise<Object>;
+  // Alarm history, aggregated natively. Summary since an epoch ms: armed, fired, snoozed,
+  // dismissed, failures, sleptThrough, firstFireAt, lastDismissAt and maxLatenessMs
+  +getHistorySummary: (sinceMs: number) => Promise<Object>;
+  // Resolves {weeks}, newest first: weekStart, p50, p90, max, count and fires of time to dismiss
+  +getDismissStatsByWeek: (weeks: number) => Promise<Object>;
+  // Resolves {tones}, most slept through first: uri, fires, answered and sleptThrough
+  +getSleptThroughTones: (limit: number) => Promise<Object>;
+
+  // NativeEventEmitter contract. 'AlarmStateChanged' carries a coalesced delta:
+  // {reasons, active, nextFireTime, ringing?, clusters: [{clusterId, nextIndex, alarmCount,
+  // nextFireTime} | {clusterId, removed: true}]}
+  +addListener: (eventName: string) => void;
+  +removeListeners: (count: number) => void;
+
+  // Synchronous JSI reads: no bridge round trip, no Promise
+  +getNextFireTime: () => number; // epoch ms, -1 if nothing is pending
+  +isActive: () => boolean;
+}
+
+export default (TurboModuleRegistry.getEnforcing<Spec>('AlarmScheduler'): Spec);
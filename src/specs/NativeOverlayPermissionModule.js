@@ -0,0 +1,16 @@
+/**
+ * Codegen spec of the OverlayPermissionModule TurboModule (android/.../modules/OverlayPermissionsModule.java).
+ *
+ * @flow strict-local
+ * @format
+ */
+
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+export interface Spec extends TurboModule {
+  +hasPermission: () => Promise<boolean>;
+  +requestPermission: () => void;
+}
+
+export default (TurboModuleRegistry.getEnforcing<Spec>('OverlayPermissionModule'): Spec);
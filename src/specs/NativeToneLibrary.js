@@ -0,0 +1,20 @@
+/**
+ * Codegen spec of the ToneLibrary TurboModule (android/.../modules/ToneLibraryModule.java).
+ *
+ * @flow strict-local
+ * @format
+ */
+
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+export interface Spec extends TurboModule {
+  // Brings the native index of the device's audio up to date with MediaStore, touching only
+  // what changed; resolves {total, changed}. Rejects with E_PERMISSION without audio permission
+  +refresh: () => Promise<Object>;
+  // Page of the indexed audio whose title has a word starting with prefix ('' for all), by
+  // title; resolves {total, items: [{uri, title, durationMs}]}
+  +search: (prefix: string, offset: number, limit: number) => Promise<Object>;
+}
+
+export default (TurboModuleRegistry.getEnforcing<Spec>('ToneLibrary'): Spec);